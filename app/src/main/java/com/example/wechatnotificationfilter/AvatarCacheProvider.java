@@ -0,0 +1,141 @@
+package com.example.wechatnotificationfilter;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
+import com.example.wechatnotificationfilter.core.AvatarCache;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Process-wide {@link AvatarCache} of conversation avatars:
+ * {@link WeChatNotificationService} fills it from the large icons the
+ * messaging apps post and attaches the cached {@link Icon} to its reposts,
+ * so a full-size bitmap is never parcelled more than once per conversation.
+ * {@link MainActivity} reads its statistics.
+ */
+public final class AvatarCacheProvider {
+    private static final String AVATAR_DIR = "avatars";
+    // About 25 avatars at 192 x 192 (64dp on an xxhdpi screen)
+    private static final long MEMORY_BYTES = 4L * 1024 * 1024;
+    // Oldest files beyond this many are deleted when a new one is written
+    private static final int DISK_FILES = 200;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static AvatarCache<Icon, Avatar> cache;
+
+    /** A downsampled avatar and the Icon wrapping it, built once. */
+    public static final class Avatar {
+        final Bitmap bitmap;
+        public final Icon icon;
+
+        Avatar(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            this.icon = Icon.createWithBitmap(bitmap);
+        }
+    }
+
+    private AvatarCacheProvider() {
+    }
+
+    public static synchronized AvatarCache<Icon, Avatar> get(Context context) {
+        if (cache == null) {
+            cache = new AvatarCache<>(new BitmapPlatform(context.getApplicationContext()), MEMORY_BYTES);
+        }
+        return cache;
+    }
+
+    private static final class BitmapPlatform implements AvatarCache.Platform<Icon, Avatar> {
+        private final Context context;
+        private final File directory;
+        private final int width;
+        private final int height;
+
+        BitmapPlatform(Context context) {
+            this.context = context;
+            this.directory = new File(context.getCacheDir(), AVATAR_DIR);
+            Resources resources = context.getResources();
+            width = resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+            height = resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+        }
+
+        @Override
+        public Avatar downsample(Icon source) {
+            Drawable drawable = source.loadDrawable(context);
+            if (drawable == null) {
+                return null;
+            }
+            Bitmap scaled;
+            if (drawable instanceof BitmapDrawable && ((BitmapDrawable) drawable).getBitmap() != null) {
+                scaled = Bitmap.createScaledBitmap(((BitmapDrawable) drawable).getBitmap(), width, height, true);
+            } else {
+                scaled = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                drawable.setBounds(0, 0, width, height);
+                drawable.draw(new Canvas(scaled));
+            }
+            return new Avatar(scaled);
+        }
+
+        @Override
+        public int sizeOf(Avatar value) {
+            return value.bitmap.getAllocationByteCount();
+        }
+
+        @Override
+        public Avatar load(String key) {
+            File file = fileFor(key);
+            if (!file.isFile()) {
+                return null;
+            }
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+            return bitmap != null ? new Avatar(bitmap) : null;
+        }
+
+        @Override
+        public void store(String key, Avatar value) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            File file = fileFor(key);
+            File temporary = new File(directory, file.getName() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temporary)) {
+                value.bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Could not rename " + temporary + " to " + file);
+            }
+            prune();
+        }
+
+        private void prune() {
+            File[] files = directory.listFiles();
+            if (files == null || files.length <= DISK_FILES) {
+                return;
+            }
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (int i = 0; i < files.length - DISK_FILES; i++) {
+                files[i].delete();
+            }
+        }
+
+        // Titles can be long and contain any character, so files are named by a 64-bit hash of the key
+        private File fileFor(String key) {
+            long hash = FNV_OFFSET;
+            for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+            }
+            return new File(directory, Long.toHexString(hash) + ".png");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.wechatnotificationfilter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.example.wechatnotificationfilter.core.ContactStore;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Process-wide {@link ContactStore} shared by {@link MainActivity} and
+ * {@link WeChatNotificationService}, so edits in the UI reach the filter
+ * through the store's listener.
+ */
+public final class ContactStoreProvider {
+    private static final String TAG = "WeChatFilter";
+    private static final String STORE_FILE = "contacts.log";
+    // Where contacts and sounds lived before the store
+    private static final String LEGACY_CONTACTS_PREFS = "PriorityContacts";
+    private static final String LEGACY_SOUNDS_PREFS = "ContactSounds";
+
+    private static ContactStore store;
+
+    private ContactStoreProvider() {
+    }
+
+    public static synchronized ContactStore get(Context context) throws IOException {
+        if (store == null) {
+            Context app = context.getApplicationContext();
+            ContactStore opened = ContactStore.open(new File(app.getFilesDir(), STORE_FILE));
+            migrateLegacyPreferences(app, opened);
+            store = opened;
+        }
+        return store;
+    }
+
+    /**
+     * Moves the "contacts" StringSet and the "soundsMap" JSON blob into the
+     * store, then clears them. Safe to repeat if interrupted: adds and sets
+     * of existing values are no-ops.
+     */
+    private static void migrateLegacyPreferences(Context context, ContactStore target) throws IOException {
+        SharedPreferences contactPrefs = context.getSharedPreferences(LEGACY_CONTACTS_PREFS, Context.MODE_PRIVATE);
+        SharedPreferences soundPrefs = context.getSharedPreferences(LEGACY_SOUNDS_PREFS, Context.MODE_PRIVATE);
+        if (!contactPrefs.contains("contacts") && !soundPrefs.contains("soundsMap")) {
+            return;
+        }
+
+        Set<String> contacts = contactPrefs.getStringSet("contacts", new HashSet<>());
+        JSONObject sounds;
+        try {
+            sounds = new JSONObject(soundPrefs.getString("soundsMap", "{}"));
+        } catch (JSONException e) {
+            Log.e(TAG, "Legacy contact sounds unreadable, migrating contacts only", e);
+            sounds = new JSONObject();
+        }
+
+        for (String contact : contacts) {
+            target.add(contact);
+            String sound = sounds.optString(contact, "");
+            if (!sound.isEmpty()) {
+                target.set(contact, ContactStore.SOUND, sound);
+            }
+        }
+
+        contactPrefs.edit().clear().apply();
+        soundPrefs.edit().clear().apply();
+        Log.i(TAG, "Migrated " + contacts.size() + " priority contacts to the contact store");
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.wechatnotificationfilter;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.Objects;
+
+/**
+ * Rows of the priority contact list. {@link ListAdapter} diffs each new
+ * list against the shown one on a background thread, so an edit or a
+ * search keystroke only rebinds the rows that changed.
+ */
+final class ContactsAdapter extends ListAdapter<ContactsAdapter.Row, ContactsAdapter.Holder> {
+
+    interface Callbacks {
+        void onContactClicked(String name);
+
+        void onContactLongClicked(String name);
+    }
+
+    /** What one row shows; compared field by field when diffing. */
+    static final class Row {
+        final String name;
+        final boolean customSound;
+        final int aliases;
+
+        Row(String name, boolean customSound, int aliases) {
+            this.name = name;
+            this.customSound = customSound;
+            this.aliases = aliases;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Row)) {
+                return false;
+            }
+            Row other = (Row) o;
+            return name.equals(other.name) && customSound == other.customSound && aliases == other.aliases;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, customSound, aliases);
+        }
+    }
+
+    private static final DiffUtil.ItemCallback<Row> DIFF = new DiffUtil.ItemCallback<Row>() {
+        @Override
+        public boolean areItemsTheSame(Row oldRow, Row newRow) {
+            return oldRow.name.equals(newRow.name);
+        }
+
+        @Override
+        public boolean areContentsTheSame(Row oldRow, Row newRow) {
+            return oldRow.equals(newRow);
+        }
+    };
+
+    static final class Holder extends RecyclerView.ViewHolder {
+        final TextView name;
+        final TextView detail;
+
+        Holder(View itemView) {
+            super(itemView);
+            name = itemView.findViewById(R.id.contactName);
+            detail = itemView.findViewById(R.id.contactDetail);
+        }
+    }
+
+    private final Callbacks callbacks;
+
+    ContactsAdapter(Callbacks callbacks) {
+        super(DIFF);
+        this.callbacks = callbacks;
+    }
+
+    @Override
+    public Holder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_contact, parent, false);
+        Holder holder = new Holder(view);
+        // Resolve the row at click time: the holder may have been rebound since it was created
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                callbacks.onContactClicked(getItem(position).name);
+            }
+        });
+        view.setOnLongClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                callbacks.onContactLongClicked(getItem(position).name);
+            }
+            return true;
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(Holder holder, int position) {
+        Row row = getItem(position);
+        holder.name.setText(row.name);
+        String detail = row.customSound ? "Custom sound" : "Default sound";
+        if (row.aliases > 0) {
+            detail += " · " + row.aliases + (row.aliases == 1 ? " alias" : " aliases");
+        }
+        holder.detail.setText(detail);
+    }
+}
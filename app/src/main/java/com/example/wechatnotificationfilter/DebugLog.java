@@ -0,0 +1,15 @@
+package com.example.wechatnotificationfilter;
+
+/**
+ * Switch for development logging. Call sites wrap their {@code Log.d}
+ * calls in {@code if (DebugLog.ENABLED)}; because this is a compile-time
+ * constant, release builds drop both the call and the string building.
+ * Per-message diagnostics that should survive in release go to
+ * {@link com.example.wechatnotificationfilter.core.Trace} instead.
+ */
+final class DebugLog {
+    static final boolean ENABLED = BuildConfig.DEBUG;
+
+    private DebugLog() {
+    }
+}
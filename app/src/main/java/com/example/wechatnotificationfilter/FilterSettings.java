@@ -0,0 +1,51 @@
+package com.example.wechatnotificationfilter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.example.wechatnotificationfilter.core.RuleParser;
+import com.example.wechatnotificationfilter.core.RuleTable;
+import java.util.HashSet;
+import java.util.Set;
+
+/** Filter-wide settings edited in {@link MainActivity}, kept in the "FilterSettings" preferences. */
+final class FilterSettings {
+    private static final String TAG = "WeChatFilter";
+    static final String PREFS = "FilterSettings";
+    /** StringSet of words that make a non-priority message alert. */
+    static final String KEYWORDS = "keywords";
+    /** Rules text in the format read by {@link RuleParser}, in precedence order. */
+    static final String RULES = "rules";
+    /** Int messages per minute above which storm mode turns on; 0 turns it off. */
+    static final String STORM_PER_MINUTE = "storm_per_minute";
+    static final int DEFAULT_STORM_PER_MINUTE = 120;
+
+    private FilterSettings() {
+    }
+
+    static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    static String rulesText(Context context) {
+        return prefs(context).getString(RULES, "");
+    }
+
+    /** Compiles the saved rules; a text that no longer parses is logged and ignored. */
+    static RuleTable rules(Context context) {
+        try {
+            return RuleTable.compile(RuleParser.parse(rulesText(context)));
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Ignoring invalid filter rules", e);
+            return RuleTable.EMPTY;
+        }
+    }
+
+    static int stormPerMinute(Context context) {
+        return Math.max(0, prefs(context).getInt(STORM_PER_MINUTE, DEFAULT_STORM_PER_MINUTE));
+    }
+
+    static Set<String> keywords(Context context) {
+        return new HashSet<>(prefs(context).getStringSet(KEYWORDS, new HashSet<>()));
+    }
+}
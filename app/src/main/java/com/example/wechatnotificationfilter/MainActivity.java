@@ -6,39 +6,104 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.graphics.Typeface;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.InputType;
+import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.provider.Settings;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.ListView;
 import android.widget.Toast;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.example.wechatnotificationfilter.core.AppRegistry;
+import com.example.wechatnotificationfilter.core.ContactCsv;
+import com.example.wechatnotificationfilter.core.ContactSearch;
+import com.example.wechatnotificationfilter.core.ContactStore;
+import com.example.wechatnotificationfilter.core.FilterMetrics;
+import com.example.wechatnotificationfilter.core.NotificationHistory;
+import com.example.wechatnotificationfilter.core.RuleParser;
+import com.example.wechatnotificationfilter.core.Trace;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import android.util.Log;
 import android.app.PendingIntent;
 import android.content.Intent;
 
 public class MainActivity extends AppCompatActivity {
     private EditText contactInput;
-    private ListView contactsList;
-    private ArrayList<String> contacts;
-    private ArrayAdapter<String> adapter;
-    private SharedPreferences prefs;
-    private JSONObject contactSounds;
+    private EditText searchInput;
+    private ContactsAdapter adapter;
+    private ContactStore contactStore;
     private static final String TAG = "WeChatFilter";
 
     private static final int PICK_RINGTONE_REQUEST = 1;
+    private static final int IMPORT_CSV_REQUEST = 2;
+    private static final int EXPORT_CSV_REQUEST = 3;
+    // Rows for every contact, and the search over them; rebuilt off the UI thread whenever the store changes
+    private Map<String, ContactsAdapter.Row> rows = new HashMap<>();
+    private ContactSearch search = new ContactSearch(new ArrayList<>(), new HashMap<>());
+    // Import and export read and write files off the UI thread, one at a time
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    // Normalizing every contact for the search takes long after a large import, so it runs here
+    private final ExecutorService contactsLoader = Executors.newSingleThreadExecutor();
+    // A rebuild is queued and has not started yet; further changes are picked up by it
+    private final AtomicBoolean reloadQueued = new AtomicBoolean();
+    // Edits, imports and the service all go through the store, so the list follows it
+    private final ContactStore.Listener contactsListener = change -> reloadContacts();
     private String currentContact;
+    private TextView statsText;
+    private static final long STATS_REFRESH_MS = 1000;
+    private static final int HISTORY_PAGE = 50;
+    private final Handler statsHandler = new Handler(Looper.getMainLooper());
+    // Metrics are process-wide, so the panel sees the listener service's numbers directly
+    private final Runnable statsRefresher = new Runnable() {
+        @Override
+        public void run() {
+            StringWriter stats = new StringWriter();
+            PrintWriter writer = new PrintWriter(stats);
+            FilterMetrics.GLOBAL.dump(writer);
+            AppRegistry.DEFAULT.dump(writer);
+            AvatarCacheProvider.get(MainActivity.this).dump(writer);
+            writer.flush();
+            statsText.setText(stats.toString());
+            statsHandler.postDelayed(this, STATS_REFRESH_MS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -63,102 +128,515 @@ public class MainActivity extends AppCompatActivity {
         contactInput = findViewById(R.id.contactNameInput);
         Button addButton = findViewById(R.id.addButton);
         Button testButton = findViewById(R.id.testButton);
-        contactsList = findViewById(R.id.contactsList);
+        Button keywordsButton = findViewById(R.id.keywordsButton);
+        Button rulesButton = findViewById(R.id.rulesButton);
+        Button stormButton = findViewById(R.id.stormButton);
+        Button historyButton = findViewById(R.id.historyButton);
+        Button traceButton = findViewById(R.id.traceButton);
+        statsText = findViewById(R.id.statsText);
+        searchInput = findViewById(R.id.contactSearch);
+        Button importButton = findViewById(R.id.importButton);
+        Button exportButton = findViewById(R.id.exportButton);
+        RecyclerView contactsList = findViewById(R.id.contactsList);
+
+        // Rows are diffed, so edits and search keystrokes only rebind what changed
+        adapter = new ContactsAdapter(new ContactsAdapter.Callbacks() {
+            @Override
+            public void onContactClicked(String name) {
+                showContactActions(name);
+            }
 
-        // Initialize contacts list
-        prefs = getSharedPreferences("PriorityContacts", MODE_PRIVATE);
-        Set<String> savedContacts = prefs.getStringSet("contacts", new HashSet<>());
-        contacts = new ArrayList<>(savedContacts);
+            @Override
+            public void onContactLongClicked(String name) {
+                removeContact(name);
+            }
+        });
+        contactsList.setLayoutManager(new LinearLayoutManager(this));
+        contactsList.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        contactsList.setAdapter(adapter);
 
-        Log.d(TAG, "Loaded contacts list on app start: " + contacts.toString());
+        try {
+            contactStore = ContactStoreProvider.get(this);
+            contactStore.addListener(contactsListener);
+            reloadContacts();
+            Log.d(TAG, "Loaded " + contactStore.size() + " contacts on app start");
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open contact store", e);
+            Toast.makeText(this, "Could not load contacts", Toast.LENGTH_LONG).show();
+        }
 
-        // Load contact sounds
-        loadContactSounds();
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
 
-        // Set up adapter
-        adapter = new ArrayAdapter<>(this,
-                android.R.layout.simple_list_item_1, contacts);
-        contactsList.setAdapter(adapter);
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                applySearch();
+            }
+        });
 
         // Add button click listener
         addButton.setOnClickListener(v -> {
             String name = contactInput.getText().toString().trim();
             if (!name.isEmpty()) {
-                contacts.add(name);
-                adapter.notifyDataSetChanged();
-                saveContacts();
-                contactInput.setText("");
-                Log.d(TAG, "Added contact to priority list: " + name);
-                Log.d(TAG, "Updated contacts list: " + contacts.toString());
-                Toast.makeText(this, "Added: " + name, Toast.LENGTH_SHORT).show();
-
-                // Restart the service to ensure it picks up the new contact
-                restartNotificationService();
+                saveContact(name);
             }
         });
 
         // Test button click listener
         testButton.setOnClickListener(v -> {
-            if (!contacts.isEmpty()) {
+            List<String> names = contactStore != null ? contactStore.names() : new ArrayList<>();
+            if (!names.isEmpty()) {
                 // Simulate a notification from the first contact in the list
-                String testContact = contacts.get(0);
-                sendTestNotification(testContact);
+                sendTestNotification(names.get(0));
             } else {
                 Toast.makeText(this, "Add a contact first", Toast.LENGTH_SHORT).show();
             }
         });
 
-        // Long press to remove contact
-        contactsList.setOnItemLongClickListener((parent, view, position, id) -> {
-            String removedContact = contacts.get(position);
-            contacts.remove(position);
-            adapter.notifyDataSetChanged();
-            saveContacts();
-            Log.d(TAG, "Removed contact from priority list: " + removedContact);
-            Log.d(TAG, "Updated contacts list: " + contacts.toString());
-            Toast.makeText(MainActivity.this, "Removed: " + removedContact, Toast.LENGTH_SHORT).show();
-
-            // Restart the service to ensure it picks up the removed contact
-            restartNotificationService();
-            return true;
+        // Words that make a message from anyone alert
+        keywordsButton.setOnClickListener(v -> editKeywords());
+
+        // Per-sender, group, keyword and time rules, checked before the contact list
+        rulesButton.setOnClickListener(v -> editRules(FilterSettings.rulesText(this)));
+        stormButton.setOnClickListener(v -> editStormThreshold());
+
+        // Show what the filter service recorded recently
+        traceButton.setOnClickListener(v -> showTrace());
+
+        // What was silenced, dropped or reposted, newest first
+        historyButton.setOnClickListener(v -> showHistory(NotificationHistory.NEWEST));
+
+        // Contacts as CSV: name, sound and aliases per row
+        importButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("*/*");
+            intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[] {"text/csv", "text/comma-separated-values", "text/plain"});
+            startActivityForResult(intent, IMPORT_CSV_REQUEST);
         });
+        exportButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("text/csv");
+            intent.putExtra(Intent.EXTRA_TITLE, "priority_contacts.csv");
+            startActivityForResult(intent, EXPORT_CSV_REQUEST);
+        });
+    }
 
-        // Click to set custom sound
-        contactsList.setOnItemClickListener((parent, view, position, id) -> {
-            currentContact = contacts.get(position);
-            Toast.makeText(MainActivity.this, "Setting sound for: " + currentContact, Toast.LENGTH_SHORT).show();
+    /**
+     * Rebuilds the rows and search from the store on the loader thread,
+     * then shows what the current query matches. Callable from any thread;
+     * a burst of changes costs one rebuild.
+     */
+    private void reloadContacts() {
+        if (contactStore == null || !reloadQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            contactsLoader.execute(this::rebuildContacts);
+        } catch (RejectedExecutionException e) {
+            // A change that raced onDestroy; there is no list left to update
+        }
+    }
 
-            Intent intent = new Intent(RingtoneManager.ACTION_RINGTONE_PICKER);
-            intent.putExtra(RingtoneManager.EXTRA_RINGTONE_TYPE, RingtoneManager.TYPE_NOTIFICATION);
-            intent.putExtra(RingtoneManager.EXTRA_RINGTONE_TITLE, "Select Sound for " + currentContact);
+    // On the loader thread
+    private void rebuildContacts() {
+        // Changes from here on queue another rebuild
+        reloadQueued.set(false);
+        Map<String, Map<String, String>> contacts = contactStore.export();
+        Map<String, List<String>> aliases = new HashMap<>();
+        Map<String, ContactsAdapter.Row> loadedRows = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> contact : contacts.entrySet()) {
+            List<String> names = ContactStore.aliasList(contact.getValue().get(ContactStore.ALIASES));
+            if (!names.isEmpty()) {
+                aliases.put(contact.getKey(), names);
+            }
+            loadedRows.put(contact.getKey(), new ContactsAdapter.Row(contact.getKey(),
+                    contact.getValue().get(ContactStore.SOUND) != null, names.size()));
+        }
+        ContactSearch loadedSearch = new ContactSearch(new ArrayList<>(contacts.keySet()), aliases);
+        // One loader thread, so results arrive in the order the rebuilds ran
+        runOnUiThread(() -> {
+            if (isDestroyed()) {
+                return;
+            }
+            rows = loadedRows;
+            search = loadedSearch;
+            applySearch();
+        });
+    }
 
-            try {
-                if (contactSounds.has(currentContact)) {
-                    String soundUri = contactSounds.getString(currentContact);
-                    if (!soundUri.isEmpty()) {
-                        intent.putExtra(RingtoneManager.EXTRA_RINGTONE_EXISTING_URI, Uri.parse(soundUri));
+    private void applySearch() {
+        List<String> matches = search.filter(searchInput.getText());
+        List<ContactsAdapter.Row> shown = new ArrayList<>(matches.size());
+        for (String name : matches) {
+            shown.add(rows.get(name));
+        }
+        adapter.submitList(shown);
+    }
+
+    // Click to set a custom sound or the contact's other names
+    private void showContactActions(String contact) {
+        new AlertDialog.Builder(this)
+                .setTitle(contact)
+                .setItems(new CharSequence[] {"Set sound", "Edit aliases"}, (dialog, which) -> {
+                    if (which == 0) {
+                        pickSound(contact);
+                    } else {
+                        editAliases(contact);
                     }
+                })
+                .show();
+    }
+
+    private void importContacts(Uri uri) {
+        io.execute(() -> {
+            try (InputStream stream = getContentResolver().openInputStream(uri)) {
+                if (stream == null) {
+                    throw new IOException("Cannot open " + uri);
                 }
-            } catch (JSONException e) {
-                e.printStackTrace();
+                Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+                Map<String, Map<String, String>> imported = ContactCsv.read(reader);
+                // One record for the whole file: the import lands completely or not at all
+                int changed = contactStore.putAll(imported);
+                Log.d(TAG, "Imported " + imported.size() + " contacts, " + changed + " new or changed");
+                showToast("Imported " + changed + " contacts");
+            } catch (IllegalArgumentException e) {
+                showToast("Import failed: " + e.getMessage());
+            } catch (IOException e) {
+                Log.e(TAG, "Error importing contacts", e);
+                showToast("Error importing contacts");
             }
+        });
+    }
 
-            startActivityForResult(intent, PICK_RINGTONE_REQUEST);
+    private void exportContacts(Uri uri) {
+        Map<String, Map<String, String>> contacts = contactStore.export();
+        io.execute(() -> {
+            try (OutputStream stream = getContentResolver().openOutputStream(uri)) {
+                if (stream == null) {
+                    throw new IOException("Cannot open " + uri);
+                }
+                Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+                ContactCsv.write(writer, contacts);
+                Log.d(TAG, "Exported " + contacts.size() + " contacts");
+                showToast("Exported " + contacts.size() + " contacts");
+            } catch (IOException e) {
+                Log.e(TAG, "Error exporting contacts", e);
+                showToast("Error exporting contacts");
+            }
         });
     }
 
-    private void restartNotificationService() {
-        Log.d(TAG, "Restarting notification service to apply changes");
-        // Force reload the service to pick up changes
-        Intent serviceIntent = new Intent(this, WeChatNotificationService.class);
-        stopService(serviceIntent);
-        startService(serviceIntent);
+    private void showToast(String message) {
+        runOnUiThread(() -> Toast.makeText(this, message, Toast.LENGTH_LONG).show());
+    }
+
+    private void pickSound(String contact) {
+        currentContact = contact;
+        Toast.makeText(MainActivity.this, "Setting sound for: " + currentContact, Toast.LENGTH_SHORT).show();
+
+        Intent intent = new Intent(RingtoneManager.ACTION_RINGTONE_PICKER);
+        intent.putExtra(RingtoneManager.EXTRA_RINGTONE_TYPE, RingtoneManager.TYPE_NOTIFICATION);
+        intent.putExtra(RingtoneManager.EXTRA_RINGTONE_TITLE, "Select Sound for " + currentContact);
+
+        String soundUri = contactStore != null ? contactStore.get(currentContact, ContactStore.SOUND) : null;
+        if (soundUri != null && !soundUri.isEmpty()) {
+            intent.putExtra(RingtoneManager.EXTRA_RINGTONE_EXISTING_URI, Uri.parse(soundUri));
+        }
+
+        startActivityForResult(intent, PICK_RINGTONE_REQUEST);
+    }
+
+    private void editAliases(String contact) {
+        if (contactStore == null) {
+            return;
+        }
+        EditText aliasesInput = new EditText(this);
+        aliasesInput.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE);
+        aliasesInput.setMinLines(3);
+        aliasesInput.setHint("One name per line");
+        aliasesInput.setText(TextUtils.join("\n", ContactStore.aliasList(contactStore.get(contact, ContactStore.ALIASES))));
+
+        new AlertDialog.Builder(this)
+                .setTitle("Aliases for " + contact)
+                .setMessage("Other names this contact shows up under in WeChat, such as a remark name or group nickname.")
+                .setView(aliasesInput)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    List<String> aliases = ContactStore.aliasList(aliasesInput.getText().toString());
+                    // The store writes its file; the list follows through the contacts listener
+                    io.execute(() -> {
+                        try {
+                            contactStore.set(contact, ContactStore.ALIASES,
+                                    aliases.isEmpty() ? null : TextUtils.join("\n", aliases));
+                            Log.d(TAG, "Saved " + aliases.size() + " aliases for " + contact);
+                            showToast("Saved " + aliases.size() + " aliases");
+                        } catch (IOException e) {
+                            Log.e(TAG, "Error saving aliases", e);
+                            showToast("Error saving aliases");
+                        }
+                    });
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        statsRefresher.run();
+    }
+
+    @Override
+    protected void onPause() {
+        statsHandler.removeCallbacks(statsRefresher);
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (contactStore != null) {
+            contactStore.removeListener(contactsListener);
+        }
+        // Lets a running import finish; the store outlives the activity
+        io.shutdown();
+        contactsLoader.shutdown();
+        super.onDestroy();
+    }
+
+    private void editRules(String text) {
+        EditText rulesInput = new EditText(this);
+        rulesInput.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE);
+        rulesInput.setTypeface(Typeface.MONOSPACE);
+        rulesInput.setTextSize(13);
+        rulesInput.setMinLines(6);
+        rulesInput.setHint("silent group=公司通知群 time=22:00-07:30\n"
+                + "loud from=妈妈 sound=content://...\n"
+                + "drop group=\"Ads Group\"\n"
+                + "digest keyword=红包,抢 days=mon-fri");
+        rulesInput.setText(text);
+
+        new AlertDialog.Builder(this)
+                .setTitle("Filter Rules")
+                .setMessage("One rule per line, first match wins: loud, silent, drop or digest, "
+                        + "followed by from=, group=, keyword=, time= and days= conditions.")
+                .setView(rulesInput)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    String edited = rulesInput.getText().toString();
+                    try {
+                        int count = RuleParser.parse(edited).size();
+                        FilterSettings.prefs(this).edit().putString(FilterSettings.RULES, edited).apply();
+                        Log.d(TAG, "Saved " + count + " filter rules");
+                        Toast.makeText(this, "Saved " + count + " rules", Toast.LENGTH_SHORT).show();
+                    } catch (IllegalArgumentException e) {
+                        // Keep the user's text and let them fix it
+                        new AlertDialog.Builder(this)
+                                .setTitle("Invalid rule")
+                                .setMessage(e.getMessage())
+                                .setPositiveButton("Edit", (d, w) -> editRules(edited))
+                                .show();
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void editStormThreshold() {
+        EditText thresholdInput = new EditText(this);
+        thresholdInput.setInputType(InputType.TYPE_CLASS_NUMBER);
+        thresholdInput.setText(String.valueOf(FilterSettings.stormPerMinute(this)));
+
+        new AlertDialog.Builder(this)
+                .setTitle("Storm Mode")
+                .setMessage("Above this many messages per minute, messages from non-priority chats are only "
+                        + "counted until the rate falls below half of it; priority contacts still alert. "
+                        + "0 turns storm mode off.")
+                .setView(thresholdInput)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    int threshold;
+                    try {
+                        threshold = Integer.parseInt(thresholdInput.getText().toString().trim());
+                    } catch (NumberFormatException e) {
+                        Toast.makeText(this, "Enter a number of messages per minute", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    FilterSettings.prefs(this).edit().putInt(FilterSettings.STORM_PER_MINUTE, threshold).apply();
+                    Log.d(TAG, "Storm threshold set to " + threshold + " messages per minute");
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void editKeywords() {
+        EditText keywordsInput = new EditText(this);
+        keywordsInput.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE);
+        keywordsInput.setMinLines(4);
+        keywordsInput.setHint("One keyword per line");
+        keywordsInput.setText(TextUtils.join("\n", new TreeSet<>(FilterSettings.keywords(this))));
+
+        new AlertDialog.Builder(this)
+                .setTitle("Alert Keywords")
+                .setMessage("Messages containing any of these words, or mentioning you, alert like a priority contact.")
+                .setView(keywordsInput)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    Set<String> keywords = new HashSet<>();
+                    for (String line : keywordsInput.getText().toString().split("\n")) {
+                        if (!line.trim().isEmpty()) {
+                            keywords.add(line.trim());
+                        }
+                    }
+                    FilterSettings.prefs(this).edit().putStringSet(FilterSettings.KEYWORDS, keywords).apply();
+                    Log.d(TAG, "Saved " + keywords.size() + " alert keywords");
+                    Toast.makeText(this, "Saved " + keywords.size() + " keywords", Toast.LENGTH_SHORT).show();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showTrace() {
+        StringWriter trace = new StringWriter();
+        Trace.RING.dump(new PrintWriter(trace));
+
+        TextView traceText = new TextView(this);
+        traceText.setText(trace.toString());
+        traceText.setTypeface(Typeface.MONOSPACE);
+        traceText.setTextSize(11);
+        traceText.setTextIsSelectable(true);
+        traceText.setPadding(32, 16, 32, 16);
+
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(traceText);
+
+        new AlertDialog.Builder(this)
+                .setTitle("Filter Trace")
+                .setView(scrollView)
+                .setPositiveButton("Close", null)
+                .show();
+    }
+
+    // Reads one page off the UI thread; the first touch of a segment may have to come from disk
+    private void showHistory(long cursor) {
+        io.execute(() -> {
+            List<NotificationHistory.Entry> page;
+            try {
+                page = NotificationHistoryProvider.get(this).page(cursor, HISTORY_PAGE);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open notification history", e);
+                showToast("Could not open notification history");
+                return;
+            }
+            runOnUiThread(() -> showHistoryPage(cursor, page));
+        });
+    }
+
+    private void showHistoryPage(long cursor, List<NotificationHistory.Entry> page) {
+        if (page.isEmpty()) {
+            Toast.makeText(this, cursor == NotificationHistory.NEWEST ? "No notifications recorded yet"
+                    : "No older notifications", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        AlertDialog.Builder dialog = new AlertDialog.Builder(this)
+                .setTitle("Notification History")
+                .setView(historyView(page))
+                .setPositiveButton("Close", null)
+                .setNegativeButton("Search", (d, w) -> searchHistory());
+        if (page.size() == HISTORY_PAGE) {
+            long older = page.get(page.size() - 1).cursor;
+            dialog.setNeutralButton("Older", (d, w) -> showHistory(older));
+        }
+        dialog.show();
+    }
+
+    private void searchHistory() {
+        EditText queryInput = new EditText(this);
+        queryInput.setInputType(InputType.TYPE_CLASS_TEXT);
+        queryInput.setHint("Words or names, e.g. 开会 张三");
+
+        new AlertDialog.Builder(this)
+                .setTitle("Search History")
+                .setView(queryInput)
+                .setPositiveButton("Search", (dialog, which) -> {
+                    String query = queryInput.getText().toString();
+                    // The index is built from the whole history the first time it is used
+                    io.execute(() -> {
+                        List<NotificationHistory.Entry> hits;
+                        try {
+                            long start = System.nanoTime();
+                            hits = NotificationHistoryProvider.index(this).search(query, HISTORY_PAGE);
+                            Log.d(TAG, "History search for " + query + ": " + hits.size() + " hits in "
+                                    + (System.nanoTime() - start) / 1000 + " us");
+                        } catch (IOException e) {
+                            Log.e(TAG, "Could not open notification history", e);
+                            showToast("Could not open notification history");
+                            return;
+                        }
+                        runOnUiThread(() -> showSearchResults(query, hits));
+                    });
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showSearchResults(String query, List<NotificationHistory.Entry> hits) {
+        if (hits.isEmpty()) {
+            Toast.makeText(this, "Nothing found for " + query, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(query)
+                .setView(historyView(hits))
+                .setPositiveButton("Close", null)
+                .setNegativeButton("Search", (d, w) -> searchHistory())
+                .show();
+    }
+
+    private View historyView(List<NotificationHistory.Entry> entries) {
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm", Locale.getDefault());
+        StringBuilder text = new StringBuilder();
+        for (NotificationHistory.Entry entry : entries) {
+            text.append(format.format(new Date(entry.time))).append("  ")
+                    .append(entry.action.name().toLowerCase(Locale.US)).append('\n');
+            if (entry.title != null) {
+                text.append(entry.title);
+                if (entry.sender != null && !entry.sender.equals(entry.title)) {
+                    text.append(" · ").append(entry.sender);
+                }
+                text.append(": ");
+            }
+            text.append(entry.text != null ? entry.text : "").append("\n\n");
+        }
+
+        TextView historyText = new TextView(this);
+        historyText.setText(text);
+        historyText.setTextIsSelectable(true);
+        historyText.setPadding(32, 16, 32, 16);
+
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(historyText);
+        return scrollView;
     }
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
+        if ((requestCode == IMPORT_CSV_REQUEST || requestCode == EXPORT_CSV_REQUEST)
+                && resultCode == Activity.RESULT_OK && data != null && data.getData() != null
+                && contactStore != null) {
+            if (requestCode == IMPORT_CSV_REQUEST) {
+                importContacts(data.getData());
+            } else {
+                exportContacts(data.getData());
+            }
+            return;
+        }
+
         if (requestCode == PICK_RINGTONE_REQUEST) {
             if (resultCode == Activity.RESULT_OK) {
                 Uri ringtoneUri = data.getParcelableExtra(RingtoneManager.EXTRA_RINGTONE_PICKED_URI);
@@ -167,19 +645,18 @@ public class MainActivity extends AppCompatActivity {
                     String uriString = ringtoneUri.toString();
                     Log.d(TAG, "Selected sound URI: " + uriString + " for contact: " + currentContact);
 
-                    // Save the selected sound for this contact
-                    try {
-                        contactSounds.put(currentContact, uriString);
-                        saveContactSounds();
-                        WeChatNotificationService.saveContactSound(this, currentContact, uriString);
-                        Toast.makeText(this, "Sound set for " + currentContact, Toast.LENGTH_SHORT).show();
-
-                        // Restart the service to pick up the new sound
-                        restartNotificationService();
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "Error saving sound", Toast.LENGTH_SHORT).show();
-                    }
+                    // Save the selected sound for this contact, off the UI thread as the store writes its file
+                    String contact = currentContact;
+                    io.execute(() -> {
+                        try {
+                            contactStore.set(contact, ContactStore.SOUND, uriString);
+                            Log.d(TAG, "Saved sound for " + contact + ": " + uriString);
+                            showToast("Sound set for " + contact);
+                        } catch (IOException e) {
+                            Log.e(TAG, "Error saving contact sound", e);
+                            showToast("Error saving sound");
+                        }
+                    });
                 } else {
                     Log.d(TAG, "No ringtone selected (null URI)");
                     Toast.makeText(this, "No sound selected", Toast.LENGTH_SHORT).show();
@@ -247,33 +724,43 @@ public class MainActivity extends AppCompatActivity {
         return false;
     }
 
-    private void saveContacts() {
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putStringSet("contacts", new HashSet<>(contacts));
-        editor.apply();
-        Log.d(TAG, "Saved contacts list to shared preferences: " + contacts.toString());
-    }
-
-    private void loadContactSounds() {
-        SharedPreferences soundPrefs = getSharedPreferences("ContactSounds", MODE_PRIVATE);
-        String soundsJson = soundPrefs.getString("soundsMap", "{}");
-
-        try {
-            contactSounds = new JSONObject(soundsJson);
-            Log.d(TAG, "Loaded contact sounds: " + contactSounds.toString());
-        } catch (JSONException e) {
-            contactSounds = new JSONObject();
-            Log.e(TAG, "Error loading contact sounds", e);
+    // Contact edits write the store's file, so they run on io; the list follows through the contacts listener
+    private void saveContact(String name) {
+        if (contactStore == null) {
+            Toast.makeText(this, "Could not load contacts", Toast.LENGTH_SHORT).show();
+            return;
         }
+        io.execute(() -> {
+            try {
+                if (!contactStore.add(name)) {
+                    showToast(name + " is already a priority contact");
+                    return;
+                }
+                Log.d(TAG, "Added contact to priority list: " + name);
+                runOnUiThread(() -> {
+                    // Unless the user already typed the next name
+                    if (name.equals(contactInput.getText().toString().trim())) {
+                        contactInput.setText("");
+                    }
+                });
+                showToast("Added: " + name);
+            } catch (IOException e) {
+                Log.e(TAG, "Error saving contact " + name, e);
+                showToast("Error saving contact");
+            }
+        });
     }
 
-    private void saveContactSounds() {
-        SharedPreferences soundPrefs = getSharedPreferences("ContactSounds", MODE_PRIVATE);
-        SharedPreferences.Editor editor = soundPrefs.edit();
-        editor.putString("soundsMap", contactSounds.toString());
-        editor.apply();
-
-        // Log the saved sounds for debugging
-        Log.d(TAG, "Saved contact sounds: " + contactSounds.toString());
+    private void removeContact(String name) {
+        io.execute(() -> {
+            try {
+                contactStore.remove(name);
+                Log.d(TAG, "Removed contact from priority list: " + name);
+                showToast("Removed: " + name);
+            } catch (IOException e) {
+                Log.e(TAG, "Error removing contact " + name, e);
+                showToast("Error removing contact");
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package com.example.wechatnotificationfilter;
+
+import android.content.Context;
+import com.example.wechatnotificationfilter.core.HistoryIndex;
+import com.example.wechatnotificationfilter.core.NotificationHistory;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Process-wide {@link NotificationHistory} and its search index:
+ * {@link WeChatNotificationService} appends to both and {@link MainActivity}
+ * pages through and searches them.
+ */
+public final class NotificationHistoryProvider {
+    private static final String HISTORY_DIR = "history";
+    // About 4000 typical messages per segment
+    private static final int SEGMENT_BYTES = 1024 * 1024;
+    private static final long RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static NotificationHistory history;
+    private static HistoryIndex index;
+
+    private NotificationHistoryProvider() {
+    }
+
+    public static synchronized NotificationHistory get(Context context) throws IOException {
+        if (history == null) {
+            File directory = new File(context.getApplicationContext().getFilesDir(), HISTORY_DIR);
+            history = NotificationHistory.open(directory, SEGMENT_BYTES, RETENTION_MS, System::currentTimeMillis);
+        }
+        return history;
+    }
+
+    /** Built from the whole history on first use, so call it off the main thread. */
+    public static synchronized HistoryIndex index(Context context) throws IOException {
+        if (index == null) {
+            index = HistoryIndex.build(get(context));
+        }
+        return index;
+    }
+}
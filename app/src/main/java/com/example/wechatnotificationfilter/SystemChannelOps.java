@@ -0,0 +1,88 @@
+package com.example.wechatnotificationfilter;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.media.AudioAttributes;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+import com.example.wechatnotificationfilter.core.ChannelRegistry;
+import java.util.ArrayList;
+import java.util.List;
+
+/** {@link ChannelRegistry.ChannelOps} backed by the real NotificationManager. */
+@RequiresApi(api = Build.VERSION_CODES.O)
+public class SystemChannelOps implements ChannelRegistry.ChannelOps {
+    private static final String TAG = "WeChatFilter";
+
+    private final NotificationManager notificationManager;
+
+    public SystemChannelOps(NotificationManager notificationManager) {
+        this.notificationManager = notificationManager;
+    }
+
+    @Override
+    public List<String> listChannelIds() {
+        List<NotificationChannel> channels = notificationManager.getNotificationChannels();
+        List<String> ids = new ArrayList<>(channels.size());
+        for (NotificationChannel channel : channels) {
+            ids.add(channel.getId());
+        }
+        return ids;
+    }
+
+    @Override
+    public void createPriorityChannel(String channelId, String contactName, String customSoundUri) {
+        String channelName = "Priority: " + (contactName != null ? contactName : "Unknown");
+        NotificationChannel channel = new NotificationChannel(
+                channelId,
+                channelName,
+                NotificationManager.IMPORTANCE_HIGH
+        );
+
+        // Set custom sound
+        Uri soundUri;
+        if (customSoundUri != null && !customSoundUri.isEmpty()) {
+            soundUri = Uri.parse(customSoundUri);
+        } else {
+            soundUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+        }
+
+        AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .setUsage(AudioAttributes.USAGE_NOTIFICATION)
+                .build();
+
+        channel.setSound(soundUri, audioAttributes);
+        channel.enableVibration(true);
+        notificationManager.createNotificationChannel(channel);
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Created notification channel: " + channelId + " with name: " + channelName);
+        }
+    }
+
+    @Override
+    public void createSilentChannel(String channelId) {
+        NotificationChannel channel = new NotificationChannel(
+                channelId,
+                "Silent WeChat Messages",
+                NotificationManager.IMPORTANCE_DEFAULT
+        );
+        channel.setSound(null, null);
+        channel.enableVibration(false);
+        notificationManager.createNotificationChannel(channel);
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Created silent notification channel");
+        }
+    }
+
+    @Override
+    public void deleteChannel(String channelId) {
+        notificationManager.deleteNotificationChannel(channelId);
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Deleted old channel: " + channelId);
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.example.wechatnotificationfilter;
 
 import android.app.Notification;
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
+import android.app.Person;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.media.AudioAttributes;
+import android.graphics.drawable.Icon;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
@@ -13,335 +15,881 @@ import android.os.Bundle;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
-import androidx.annotation.RequiresApi;
-import org.json.JSONException;
-import org.json.JSONObject;
-import java.util.HashSet;
-import java.util.Set;
+import com.example.wechatnotificationfilter.core.AlertThrottle;
+import com.example.wechatnotificationfilter.core.AppAdapter;
+import com.example.wechatnotificationfilter.core.AppRegistry;
+import com.example.wechatnotificationfilter.core.AvatarCache;
+import com.example.wechatnotificationfilter.core.ChannelRegistry;
+import com.example.wechatnotificationfilter.core.ContactSnapshot;
+import com.example.wechatnotificationfilter.core.ContactStore;
+import com.example.wechatnotificationfilter.core.ConversationAggregator;
+import com.example.wechatnotificationfilter.core.FilterDecision;
+import com.example.wechatnotificationfilter.core.FilterMetrics;
+import com.example.wechatnotificationfilter.core.HistoryIndex;
+import com.example.wechatnotificationfilter.core.IncomingNotification;
+import com.example.wechatnotificationfilter.core.KeywordMatcher;
+import com.example.wechatnotificationfilter.core.LaunchIntentCache;
+import com.example.wechatnotificationfilter.core.MessageTextParser;
+import com.example.wechatnotificationfilter.core.NotificationClassifier;
+import com.example.wechatnotificationfilter.core.NotificationHistory;
+import com.example.wechatnotificationfilter.core.NotificationPipeline;
+import com.example.wechatnotificationfilter.core.PriorityContactCache;
+import com.example.wechatnotificationfilter.core.RecentFingerprints;
+import com.example.wechatnotificationfilter.core.RuleAction;
+import com.example.wechatnotificationfilter.core.StormDetector;
+import com.example.wechatnotificationfilter.core.Trace;
+import com.example.wechatnotificationfilter.core.TraceEvent;
+import com.example.wechatnotificationfilter.core.UnreadTable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import android.app.PendingIntent;
 import android.content.Intent;
 
 public class WeChatNotificationService extends NotificationListenerService {
-    private Set<String> priorityContacts = new HashSet<>();
-    private static final String WECHAT_PACKAGE = "com.tencent.mm";
     private static final String TAG = "WeChatFilter";
+    // Enough to absorb a busy group-chat burst while the worker catches up
+    private static final int PIPELINE_CAPACITY = 64;
+    private static final int LAUNCH_INTENT_SLOTS = 8;
+    // Conversation coalescing: a burst is posted as one notification updated in place
+    private static final int MAX_CONVERSATIONS = 256;
+    private static final int MAX_MESSAGES_PER_CONVERSATION = 20;
+    private static final long FLUSH_DEBOUNCE_MS = 250;
+    private static final long FLUSH_MAX_DELAY_MS = 1000;
+    private static final long ALERT_BURST_GAP_MS = 30_000;
+    // Silenced chats: one notification each in a group under one summary, redrawn at most every few seconds
+    private static final String SILENT_GROUP = "silent_conversations";
+    private static final int SILENT_SUMMARY_ID = 999;
+    private static final int SILENT_SUMMARY_LINES = 5;
+    private static final int MAX_UNREAD_CONVERSATIONS = 200;
+    private static final long SILENT_REFRESH_MS = 5_000;
+    private static final String UNREAD_FILE = "unread.bin";
+    // Storm mode: the average rate follows a burst within about ten seconds
+    private static final long STORM_TAU_NANOS = 10_000_000_000L;
+    // How often the worker checks whether a storm has passed
+    private static final long STORM_CHECK_MS = 1_000;
+    // During a storm the originals are cancelled in bulk, one call per batch
+    private static final long STORM_CANCEL_BATCH_MS = 250;
+    private static final int STORM_CANCEL_BATCH_MAX = 100;
+    // Expired history is dropped at least this often, as a quiet history may never rotate
+    private static final long HISTORY_TRIM_MS = 60 * 60 * 1000;
+    // History records remembered while the index is built; bounded, as the build may fail
+    private static final int UNINDEXED_MAX = 4096;
+    // Aggregator key of the notification collecting digest-rule messages from every chat
+    private static final String DIGEST_KEY = "\u0000digest";
+    // Repeat callbacks for one post, such as those around our own cancel of the original
+    private static final int RECENT_FINGERPRINTS = 256;
+    private static final long REPOST_WINDOW_MS = 60_000;
+    // A priority contact gets three sounds in a row, then one more every two minutes
+    private static final int ALERT_BURST = 3;
+    private static final long ALERT_REFILL_MS = 120_000;
+
+    private ContactStore contactStore;
+    // What happened to each notification, for the history screen; null if it could not be opened
+    private NotificationHistory history;
+    // Replaying the history can take a while, so the index is built on indexLoader and null until then
+    private volatile HistoryIndex historyIndex;
+    private final ExecutorService indexLoader = Executors.newSingleThreadExecutor();
+    // Unread counts of the silenced chats, saved to unreadFile after each refresh
+    private UnreadTable unread;
+    private File unreadFile;
+    // Fed on the listener thread, read on the worker
+    private StormDetector storm;
+    // Downsampled conversation avatars for the reposts
+    private AvatarCache<Icon, AvatarCacheProvider.Avatar> avatars;
+    private PriorityContactCache contactCache;
+    private NotificationPipeline<FilterDecision, ConversationAggregator.Message> pipeline;
+    private FilterStages stages;
+    private ConversationAggregator aggregator;
+    private ChannelRegistry channelRegistry;
+    // The apps filtered, and each one's launch intents by the same index
+    private final AppRegistry apps = AppRegistry.DEFAULT;
+    private final List<LaunchIntentCache<Intent, PendingIntent>> launchIntents = new ArrayList<>();
+    private final RecentFingerprints recentFingerprints = new RecentFingerprints(RECENT_FINGERPRINTS, REPOST_WINDOW_MS);
+    private final AlertThrottle alertThrottle =
+            new AlertThrottle(ALERT_BURST, ALERT_REFILL_MS, NotificationPipeline::nowMillis);
+
+    // Drops an app's cached launch intent when it is installed or updated
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            int app = data != null ? apps.indexOf(data.getSchemeSpecificPart()) : -1;
+            if (app >= 0) {
+                launchIntents.get(app).invalidate();
+                if (DebugLog.ENABLED) {
+                    Log.d(TAG, apps.adapter(app).label + " package changed (" + intent.getAction()
+                            + "), launch intent cache cleared");
+                }
+            }
+        }
+    };
+
+    // Edits from the main screen land here on the editing thread and take effect immediately
+    private final ContactStore.Listener contactsListener = change -> {
+        contactCache.apply(change);
+        FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.CONFIG, System.nanoTime() - change.startNanos);
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Contact " + change.name + " " + change.kind + ", snapshot updated");
+        }
+    };
+
+    // Rule time windows are in local time
+    private final BroadcastReceiver timeZoneReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            stages.classifier.setTimeZone(TimeZone.getDefault());
+        }
+    };
+
+    // Held in a field: SharedPreferences only keeps weak references to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener settingsListener =
+            (sharedPreferences, key) -> {
+                if (FilterSettings.RULES.equals(key)) {
+                    stages.classifier.setRules(FilterSettings.rules(this));
+                    if (DebugLog.ENABLED) {
+                        Log.d(TAG, "Filter rules changed, decision table recompiled");
+                    }
+                } else if (FilterSettings.STORM_PER_MINUTE.equals(key)) {
+                    storm.setThreshold(FilterSettings.stormPerMinute(this));
+                    if (DebugLog.ENABLED) {
+                        Log.d(TAG, "Storm threshold changed to " + storm.threshold() + "/min");
+                    }
+                } else if (FilterSettings.KEYWORDS.equals(key)) {
+                    // The automaton is only rebuilt when the keyword list itself changes
+                    stages.classifier.setKeywords(KeywordMatcher.compile(FilterSettings.keywords(this)));
+                    if (DebugLog.ENABLED) {
+                        Log.d(TAG, "Alert keywords changed, matcher rebuilt");
+                    }
+                }
+            };
 
     @Override
     public void onCreate() {
         super.onCreate();
-        loadPriorityContacts();
-        Log.d(TAG, "Service started with priority contacts: " + priorityContacts.toString());
-    }
-
-    @Override
-    public void onNotificationPosted(StatusBarNotification sbn) {
-        Log.d(TAG, "Notification received from package: " + sbn.getPackageName());
+        try {
+            contactStore = ContactStoreProvider.get(this);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open contact store, filtering everything as silent", e);
+        }
+        contactCache = new PriorityContactCache(contactStore != null ? contactStore : () -> ContactSnapshot.EMPTY);
+        contactCache.refresh();
+        if (contactStore != null) {
+            contactStore.addListener(contactsListener);
+        }
+        try {
+            history = NotificationHistoryProvider.get(this);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open notification history, filtering without it", e);
+        }
+        if (history != null) {
+            indexLoader.execute(() -> {
+                try {
+                    historyIndex = NotificationHistoryProvider.index(this);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not index notification history, searching without it", e);
+                }
+            });
+        }
 
-        // First check if it's from WeChat
-        if (!WECHAT_PACKAGE.equals(sbn.getPackageName())) {
-            Log.d(TAG, "Not a WeChat notification, ignoring");
-            return;
+        avatars = AvatarCacheProvider.get(this);
+        unreadFile = new File(getFilesDir(), UNREAD_FILE);
+        try {
+            unread = UnreadTable.load(unreadFile, MAX_UNREAD_CONVERSATIONS, SILENT_REFRESH_MS);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read unread counts, starting afresh", e);
+            unread = new UnreadTable(MAX_UNREAD_CONVERSATIONS, SILENT_REFRESH_MS);
         }
+        storm = new StormDetector(FilterSettings.stormPerMinute(this), STORM_TAU_NANOS);
 
-        Notification notification = sbn.getNotification();
-        Bundle extras = notification.extras;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            channelRegistry = new ChannelRegistry(new SystemChannelOps(
+                    (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE)));
+        }
 
-        // Log extras to see what's available
-        for (String key : extras.keySet()) {
-            Log.d(TAG, "Notification Extra - Key: " + key + ", Value: " + extras.get(key));
+        for (AppAdapter app : apps.adapters()) {
+            launchIntents.add(new LaunchIntentCache<>(new LaunchIntentCache.Resolver<Intent, PendingIntent>() {
+                @Override
+                public Intent resolve() {
+                    Intent launchApp = getPackageManager().getLaunchIntentForPackage(app.packageName);
+                    if (launchApp != null) {
+                        // Add flags to ensure it launches properly
+                        launchApp.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                    }
+                    return launchApp;
+                }
+
+                @Override
+                public PendingIntent create(Intent launchApp, int slot) {
+                    // The slot is the request code, so at most LAUNCH_INTENT_SLOTS records per app ever exist
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                        return PendingIntent.getActivity(WeChatNotificationService.this, slot,
+                                launchApp, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+                    }
+                    return PendingIntent.getActivity(WeChatNotificationService.this, slot,
+                            launchApp, PendingIntent.FLAG_UPDATE_CURRENT);
+                }
+            }, LAUNCH_INTENT_SLOTS));
         }
 
-        String title = extras.getString(Notification.EXTRA_TITLE);
-        String text = extras.getString(Notification.EXTRA_TEXT);
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        // Package broadcasts are system-only, so no export flag is needed
+        registerReceiver(packageReceiver, packageFilter);
+
+        aggregator = new ConversationAggregator(MAX_CONVERSATIONS, MAX_MESSAGES_PER_CONVERSATION,
+                FLUSH_DEBOUNCE_MS, FLUSH_MAX_DELAY_MS, ALERT_BURST_GAP_MS);
+
+        stages = new FilterStages();
+        stages.classifier.setKeywords(KeywordMatcher.compile(FilterSettings.keywords(this)));
+        stages.classifier.setRules(FilterSettings.rules(this));
+        FilterSettings.prefs(this).registerOnSharedPreferenceChangeListener(settingsListener);
+        registerReceiver(timeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+
+        pipeline = new NotificationPipeline<>(stages, PIPELINE_CAPACITY,
+                NotificationPipeline.OverflowPolicy.COALESCE_BY_KEY);
+        pipeline.start();
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Service started with priority contacts: " + contactCache.get().contacts());
+        }
+    }
 
-        Log.d(TAG, "WeChat notification - Title: " + title);
-        Log.d(TAG, "WeChat notification - Text: " + text);
+    @Override
+    public void onDestroy() {
+        pipeline.shutdown();
+        indexLoader.shutdown();
+        unregisterReceiver(packageReceiver);
+        unregisterReceiver(timeZoneReceiver);
+        FilterSettings.prefs(this).unregisterOnSharedPreferenceChangeListener(settingsListener);
+        if (contactStore != null) {
+            contactStore.removeListener(contactsListener);
+        }
+        super.onDestroy();
+    }
 
-        // Extract sender name
-        String senderName = extractSenderName(text);
-        Log.d(TAG, "Extracted sender name: " + senderName);
+    @Override
+    public void onListenerConnected() {
+        super.onListenerConnected();
+        long connectedNanos = System.nanoTime();
+        if (channelRegistry != null) {
+            // The only time the full channel list is read; afterwards the registry is authoritative
+            channelRegistry.reconcile();
+        }
+        filterBacklog(connectedNanos);
+    }
 
-        // Check if this is a priority contact
-        boolean titleMatch = title != null && isPriorityContact(title);
-        boolean senderMatch = !senderName.isEmpty() && isPriorityContact(senderName);
-        boolean isPriority = titleMatch || senderMatch;
+    /**
+     * Notifications posted while we were not bound (after a reboot, an update or process
+     * death) never reach onNotificationPosted; pick them up once, as one batch.
+     */
+    private void filterBacklog(long connectedNanos) {
+        StatusBarNotification[] active;
+        try {
+            active = getActiveNotifications();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not read active notifications", e);
+            return;
+        }
+        if (active == null) {
+            return;
+        }
+        List<IncomingNotification> backlog = new ArrayList<>();
+        List<StatusBarNotification> accepted = new ArrayList<>();
+        for (StatusBarNotification sbn : active) {
+            AppAdapter app = apps.find(sbn.getPackageName());
+            if (app == null) {
+                continue;
+            }
+            Bundle extras = sbn.getNotification().extras;
+            String title = extras.getString(Notification.EXTRA_TITLE);
+            String text = extras.getString(Notification.EXTRA_TEXT);
+            Trace.record(TraceEvent.INGEST, Trace.hash(sbn.getKey()), sbn.getPostTime());
+            accepted.add(sbn);
+            backlog.add(new IncomingNotification(sbn.getKey(), sbn.getPackageName(), app.conversationTitle(title),
+                    text, sbn.getPostTime(), connectedNanos, sbn.getNotification().getLargeIcon(), true));
+        }
+        if (!backlog.isEmpty()) {
+            FilterMetrics.GLOBAL.add(FilterMetrics.Counter.BACKLOG, backlog.size());
+            if (pipeline.offerBatch(backlog)) {
+                // Remembered so repeat callbacks for the same posts are recognised
+                for (StatusBarNotification sbn : accepted) {
+                    Bundle extras = sbn.getNotification().extras;
+                    recentFingerprints.record(RecentFingerprints.fingerprint(sbn.getKey(), sbn.getPostTime(),
+                            extras.getString(Notification.EXTRA_TITLE), extras.getString(Notification.EXTRA_TEXT)),
+                            sbn.getPostTime());
+                }
+            }
+        }
+        if (DebugLog.ENABLED) {
+            Log.d(TAG, "Listener connected with " + backlog.size() + " filtered notifications showing");
+        }
+    }
 
-        if (titleMatch) {
-            Log.d(TAG, "Title matches priority contact: " + title);
+    /** adb shell dumpsys activity service com.example.wechatnotificationfilter/.WeChatNotificationService */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Pipeline depth: ingest=" + pipeline.depth(NotificationPipeline.Stage.INGEST)
+                + " classify=" + pipeline.depth(NotificationPipeline.Stage.CLASSIFY)
+                + " render=" + pipeline.depth(NotificationPipeline.Stage.RENDER)
+                + " post=" + pipeline.depth(NotificationPipeline.Stage.POST)
+                + ", errors=" + pipeline.errors());
+        FilterMetrics.GLOBAL.dump(writer);
+        apps.dump(writer);
+        if (avatars != null) {
+            avatars.dump(writer);
+        }
+        writer.println(String.format(Locale.US, "Storm mode: %s, %.0f messages/min (threshold %d/min)",
+                storm.isStorm() ? "on" : "off", storm.ratePerMinute(), storm.threshold()));
+        if (unread != null) {
+            writer.println("Silenced chats: " + unread.unreadMessages() + " unread in "
+                    + unread.unreadConversations() + " of " + unread.size() + " chats");
         }
+        writer.println();
+        Trace.RING.dump(writer);
+    }
 
-        if (senderMatch) {
-            Log.d(TAG, "Sender matches priority contact: " + senderName);
+    @Override
+    public void onNotificationRemoved(StatusBarNotification sbn) {
+        // Our own conversation notification was dismissed or opened: start its history afresh
+        if (getPackageName().equals(sbn.getPackageName())) {
+            // Conversations are told apart by tag; the id says which kind of notification it was
+            if (sbn.getId() == SILENT_SUMMARY_ID) {
+                unread.markAllRead();
+            } else if (sbn.getId() == ConversationAggregator.NOTIFICATION_ID) {
+                aggregator.onNotificationRemoved(sbn.getTag());
+            } else {
+                unread.markRead(sbn.getTag());
+            }
         }
+    }
 
-        Log.d(TAG, "Is priority contact? " + isPriority);
+    @Override
+    public void onNotificationPosted(StatusBarNotification sbn) {
+        // Most notifications are from apps we do not filter; the lookup allocates nothing
+        AppAdapter app = apps.find(sbn.getPackageName());
+        if (app == null) {
+            return;
+        }
 
-        // Important: Cancel the original notification to avoid double notification
-        cancelNotification(sbn.getKey());
-        Log.d(TAG, "Original WeChat notification cancelled");
+        Bundle extras = sbn.getNotification().extras;
+        Trace.record(TraceEvent.INGEST, Trace.hash(sbn.getKey()), sbn.getPostTime());
+        FilterMetrics.GLOBAL.increment(FilterMetrics.Counter.RECEIVED);
+        app.increment(FilterMetrics.Counter.RECEIVED);
 
-        // Create custom notification based on priority
-        if (isPriority) {
-            // Get the matched contact name
-            String contactName = titleMatch ? title : senderName;
+        String title = extras.getString(Notification.EXTRA_TITLE);
+        String text = extras.getString(Notification.EXTRA_TEXT);
+        // Same key, post time, title and text means a repeat callback for a post already handled;
+        // the repost still has to go, but skips parsing, classification and the queue
+        long fingerprint = RecentFingerprints.fingerprint(sbn.getKey(), sbn.getPostTime(), title, text);
+        if (recentFingerprints.isDuplicate(fingerprint, sbn.getPostTime())) {
+            FilterMetrics.GLOBAL.increment(FilterMetrics.Counter.DUPLICATE);
+            app.increment(FilterMetrics.Counter.DUPLICATE);
+            Trace.record(TraceEvent.DUPLICATE, Trace.hash(sbn.getKey()), sbn.getPostTime());
+            cancelNotification(sbn.getKey());
+            return;
+        }
 
-            // Get custom sound for this contact
-            String soundUri = getContactSoundUri(contactName);
-            if (soundUri != null && !soundUri.isEmpty()) {
-                Log.d(TAG, "Priority contact - creating notification with sound: " + soundUri);
-                createNotificationWithSound(title, text, contactName, soundUri, null);
-            } else {
-                Log.d(TAG, "Priority contact - creating notification with default sound");
-                createNotificationWithSound(title, text, contactName, null, null);
+        // Dumping every extra stringifies bitmaps and parcelables, so only do it on request:
+        // adb shell setprop log.tag.WeChatFilter VERBOSE
+        if (DebugLog.ENABLED && Log.isLoggable(TAG, Log.VERBOSE)) {
+            for (String key : extras.keySet()) {
+                Log.v(TAG, "Notification Extra - Key: " + key + ", Value: " + extras.get(key));
             }
-        } else {
-            Log.d(TAG, "Non-priority contact - creating silent notification");
-            createSilentNotification(title, text, null);
+        }
+
+        storm.onMessage(System.nanoTime());
+        // Hand off to the worker; everything else happens off the listener thread
+        boolean accepted = pipeline.offer(new IncomingNotification(
+                sbn.getKey(),
+                sbn.getPackageName(),
+                app.conversationTitle(title),
+                text,
+                sbn.getPostTime(),
+                System.nanoTime(),
+                // Just the reference; it is only downsampled if the conversation has no cached avatar
+                sbn.getNotification().getLargeIcon()));
+        if (accepted) {
+            recentFingerprints.record(fingerprint, sbn.getPostTime());
         }
     }
 
-    private void createSilentNotification(String title, String text, PendingIntent originalPendingIntent) {
-        NotificationManager notificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+    private final class FilterStages
+            implements NotificationPipeline.Stages<FilterDecision, ConversationAggregator.Message> {
+        // Originals of storm-suppressed messages waiting for one bulk cancel
+        private final List<String> stormCancels = new ArrayList<>();
+        private long stormCancelsSince;
+        private long historyTrimmedAt = Long.MIN_VALUE / 2;
+        // History records appended before the index was built, added once it is
+        private final List<Long> unindexed = new ArrayList<>();
+        // Conversations the connect backlog being rendered has buffered messages in
+        private final List<String> backlogConversations = new ArrayList<>();
+        // Holds a reusable parse result; only touched on the pipeline worker
+        private final NotificationClassifier classifier =
+                new NotificationClassifier(contactCache, MessageTextParser.withDefaultFormats());
+
+        @Override
+        public FilterDecision classify(IncomingNotification incoming) {
+            FilterDecision decision = classifier.classify(appOf(incoming), incoming.title, incoming.text,
+                    incoming.postTime);
+            Trace.record(TraceEvent.CLASSIFY, Trace.hash(incoming.key), traceCode(decision));
+
+            if (DebugLog.ENABLED) {
+                MessageTextParser.Result parsed = classifier.lastParse();
+                Log.d(TAG, appOf(incoming).label + " notification - Title: " + incoming.title + ", Text: " + incoming.text
+                        + ", sender: " + parsed.sender() + " (group: " + parsed.isGroup()
+                        + ", unread: " + parsed.unreadCount() + "), priority: " + decision.priority
+                        + (decision.priority ? " (" + decision.contactName + ")" : "")
+                        + (decision.escalatedBy != null ? ", escalated by: " + decision.escalatedBy : "")
+                        + (decision.rule >= 0 ? ", rule " + (decision.rule + 1) + ": " + decision.action : ""));
+            }
+            return decision;
+        }
 
-        String channelId = "silent_channel";
+        // Only registered apps are offered to the pipeline
+        private AppAdapter appOf(IncomingNotification incoming) {
+            AppAdapter app = apps.find(incoming.packageName);
+            return app != null ? app : AppRegistry.WECHAT;
+        }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            if (notificationManager.getNotificationChannel(channelId) == null) {
-                NotificationChannel channel = new NotificationChannel(
-                        channelId,
-                        "Silent WeChat Messages",
-                        NotificationManager.IMPORTANCE_DEFAULT
-                );
-                channel.setSound(null, null);
-                channel.enableVibration(false);
-                notificationManager.createNotificationChannel(channel);
-                Log.d(TAG, "Created silent notification channel");
+        private int traceCode(FilterDecision decision) {
+            switch (decision.action) {
+                case LOUD:
+                    return decision.escalatedBy != null ? 2 : 1;
+                case DROP:
+                    return 3;
+                case DIGEST:
+                    return 4;
+                default:
+                    return 0;
             }
         }
 
-        Notification.Builder builder;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            builder = new Notification.Builder(this, channelId);
-        } else {
-            builder = new Notification.Builder(this)
-                    .setPriority(Notification.PRIORITY_DEFAULT)
-                    .setSound(null)
-                    .setVibrate(null);
+        /**
+         * Buffers the message in its conversation; the repost happens when the conversation flushes.
+         * Runs right after classify() for the same notification, so the classifier's parse is still its own.
+         */
+        @Override
+        public ConversationAggregator.Message render(IncomingNotification incoming, FilterDecision decision) {
+            // The sender and body strings are first created here, for the repost and the history
+            MessageTextParser.Result parsed = classifier.lastParse();
+            String sender = parsed.hasSender() ? parsed.sender() : incoming.title;
+            ConversationAggregator.Message message =
+                    new ConversationAggregator.Message(sender, parsed.body(), incoming.postTime);
+            if (!decision.priority && storm.isStorm()) {
+                // Only counted with the silenced chats; post() cancels the original in bulk
+                FilterMetrics.GLOBAL.increment(FilterMetrics.Counter.STORM_SUPPRESSED);
+                if (decision.action != RuleAction.DROP) {
+                    unread.record(appOf(incoming).conversationKey(incoming.title), incoming.title, sender,
+                            message.text, incoming.postTime);
+                }
+                return null;
+            }
+            if (decision.action == RuleAction.DROP) {
+                // Cancelled in post() and never shown again
+                return message;
+            }
+            if (decision.action == RuleAction.DIGEST) {
+                // One silent notification collects digest messages from every chat
+                String from = incoming.title == null || incoming.title.equals(sender)
+                        ? sender : incoming.title + " · " + sender;
+                aggregator.add(DIGEST_KEY, getString(R.string.digest_title),
+                        new ConversationAggregator.Message(from, message.text, incoming.postTime),
+                        null, null, NotificationPipeline.nowMillis());
+                if (incoming.backlog) {
+                    backlogConversations.add(DIGEST_KEY);
+                }
+                return message;
+            }
+            String conversationKey = appOf(incoming).conversationKey(incoming.title);
+            try {
+                avatars.offer(conversationKey, (Icon) incoming.avatar);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not read or save avatar", e);
+            }
+            if (decision.action == RuleAction.SILENT && !aggregator.isPriority(conversationKey)) {
+                // Counted, and shown with the other silenced chats on the next refresh
+                unread.record(conversationKey, incoming.title, sender, message.text, incoming.postTime);
+                return message;
+            }
+            // The backlog already made its sound when first posted
+            aggregator.add(conversationKey, incoming.title, message,
+                    decision.priority ? decision.contactName : null, decision.soundUri, !incoming.backlog,
+                    NotificationPipeline.nowMillis());
+            if (incoming.backlog) {
+                backlogConversations.add(conversationKey);
+            }
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, (decision.priority ? "Priority" : "Non-priority")
+                        + " message buffered for conversation: " + conversationKey);
+            }
+            return message;
         }
 
-        builder.setSmallIcon(R.drawable.ic_notification)
-                .setContentTitle(title)
-                .setContentText(text)
-                .setAutoCancel(true);
+        @Override
+        public void post(IncomingNotification incoming, FilterDecision decision,
+                         ConversationAggregator.Message rendered) {
+            if (rendered == null) {
+                // Suppressed by storm mode: no history, and the cancel waits for the next batch
+                if (stormCancels.isEmpty()) {
+                    stormCancelsSince = NotificationPipeline.nowMillis();
+                }
+                stormCancels.add(incoming.key);
+                return;
+            }
+            // Important: Cancel the original notification to avoid double notification
+            cancelNotification(incoming.key);
+            Trace.record(TraceEvent.CANCEL_ORIGINAL, Trace.hash(incoming.key), 0);
+            recordHistory(incoming, decision, rendered);
+            // The repost itself follows after the conversation's debounce window
+            FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.END_TO_END,
+                    System.nanoTime() - incoming.ingestNanos);
+        }
 
-        // Create a direct intent to launch WeChat
-        Intent launchWeChat = getPackageManager().getLaunchIntentForPackage(WECHAT_PACKAGE);
-        if (launchWeChat != null) {
-            // Add flags to ensure it launches properly
-            launchWeChat.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-
-            // Create a PendingIntent
-            PendingIntent pendingIntent;
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
-                pendingIntent = PendingIntent.getActivity(this, (int) System.currentTimeMillis(),
-                        launchWeChat, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            } else {
-                pendingIntent = PendingIntent.getActivity(this, (int) System.currentTimeMillis(),
-                        launchWeChat, PendingIntent.FLAG_UPDATE_CURRENT);
+        /** The connect backlog: one cancel call for every original, then one post per conversation. */
+        @Override
+        public void postBatch(List<IncomingNotification> notifications, List<FilterDecision> decisions,
+                              List<ConversationAggregator.Message> rendered) {
+            if (notifications.isEmpty()) {
+                return;
             }
+            String[] keys = new String[notifications.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = notifications.get(i).key;
+                Trace.record(TraceEvent.CANCEL_ORIGINAL, Trace.hash(keys[i]), 0);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (rendered.get(i) != null) {
+                    recordHistory(notifications.get(i), decisions.get(i), rendered.get(i));
+                }
+            }
+            cancelNotifications(keys);
+            // Rendering buffered the messages; post them now instead of after the debounce window.
+            // Only the conversations the backlog fed: other pending ones keep their window and alert
+            postFlushes(aggregator.flushPending(backlogConversations));
+            backlogConversations.clear();
+            postSilent(unread.refreshNow(NotificationPipeline.nowMillis()));
+            FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.CONNECT,
+                    System.nanoTime() - notifications.get(0).ingestNanos);
+        }
 
-            // Set it as the contentIntent
-            builder.setContentIntent(pendingIntent);
-            Log.d(TAG, "Set direct WeChat launch intent for silent notification");
-        } else {
-            Log.e(TAG, "Could not create intent to launch WeChat");
+        // On the worker, so the listener thread never waits for the history file
+        private void recordHistory(IncomingNotification incoming, FilterDecision decision,
+                                   ConversationAggregator.Message message) {
+            if (history == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                long cursor = history.append(incoming.postTime, decision.action, decision.priority,
+                        incoming.title, message.sender, message.text);
+                indexHistory(cursor, incoming.title, message.text);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not record notification history", e);
+            }
+            FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.HISTORY, System.nanoTime() - start);
         }
 
-        int notificationId = (title != null) ? title.hashCode() : (int) System.currentTimeMillis();
-        notificationManager.notify(notificationId, builder.build());
-        Log.d(TAG, "Silent notification posted with ID: " + notificationId);
-    }
+        /**
+         * Adds a record to the index, or remembers its cursor while the index is still being built.
+         * The build may have replayed the history before or after a remembered record was appended;
+         * the index skips the ones it already has.
+         */
+        private void indexHistory(long cursor, String title, String text) {
+            HistoryIndex index = historyIndex;
+            if (index == null) {
+                // Past the cap the rest are only found by paging until the next start
+                if (unindexed.size() < UNINDEXED_MAX) {
+                    unindexed.add(cursor);
+                }
+                return;
+            }
+            if (!unindexed.isEmpty()) {
+                for (long pending : unindexed) {
+                    NotificationHistory.Entry entry = history.read(pending);
+                    if (entry != null) {
+                        index.add(pending, entry.title, entry.text);
+                    }
+                }
+                unindexed.clear();
+            }
+            index.add(cursor, title, text);
+        }
 
-    private void createNotificationWithSound(String title, String text, String contactName, String customSoundUri, PendingIntent originalPendingIntent) {
-        NotificationManager notificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        @Override
+        public long onTick(long nowMillis) {
+            boolean storming = storm.update(System.nanoTime());
+            cancelStormBatch(nowMillis, storming);
+            postFlushes(aggregator.flushDue(nowMillis));
+            postSilent(unread.refreshDue(nowMillis));
+            long delay = earliest(aggregator.nextFlushDelay(nowMillis), unread.nextRefreshDelay(nowMillis));
+            if (history != null) {
+                if (nowMillis - historyTrimmedAt >= HISTORY_TRIM_MS) {
+                    history.trim();
+                    historyTrimmedAt = nowMillis;
+                }
+                delay = earliest(delay, historyTrimmedAt + HISTORY_TRIM_MS - nowMillis);
+            }
+            if (!stormCancels.isEmpty()) {
+                delay = earliest(delay, Math.max(0, stormCancelsSince + STORM_CANCEL_BATCH_MS - nowMillis));
+            }
+            // Keep checking while the storm lasts, as its end is noticed by the average decaying
+            return storming ? earliest(delay, STORM_CHECK_MS) : delay;
+        }
 
-        Log.d(TAG, "Creating notification with sound for: " + contactName);
+        // The sooner of two delays, where -1 means none
+        private long earliest(long a, long b) {
+            return a < 0 ? b : b < 0 ? a : Math.min(a, b);
+        }
 
-        // Use a consistent channel ID for each contact, plus a sound hash suffix
-        String soundHash = customSoundUri != null ? String.valueOf(customSoundUri.hashCode()) : "default";
-        String channelId = "priority_contact_" + (contactName != null ? contactName.hashCode() : "default") + "_" + soundHash;
-        String channelName = "Priority: " + (contactName != null ? contactName : "Unknown");
+        /** Cancels the originals suppressed during a storm, once the batch is full or old enough. */
+        private void cancelStormBatch(long nowMillis, boolean storming) {
+            if (stormCancels.isEmpty() || (storming && stormCancels.size() < STORM_CANCEL_BATCH_MAX
+                    && nowMillis - stormCancelsSince < STORM_CANCEL_BATCH_MS)) {
+                return;
+            }
+            String[] keys = stormCancels.toArray(new String[0]);
+            stormCancels.clear();
+            for (String key : keys) {
+                Trace.record(TraceEvent.CANCEL_ORIGINAL, Trace.hash(key), 0);
+            }
+            cancelNotifications(keys);
+        }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            // Clean up old channels for this contact
-            cleanupOldChannels(notificationManager, contactName);
-
-            // Create new channel with current sound
-            NotificationChannel channel = new NotificationChannel(
-                    channelId,
-                    channelName,
-                    NotificationManager.IMPORTANCE_HIGH
-            );
-
-            // Set custom sound
-            Uri soundUri;
-            if (customSoundUri != null && !customSoundUri.isEmpty()) {
-                Log.d(TAG, "Using custom sound URI: " + customSoundUri);
-                soundUri = Uri.parse(customSoundUri);
+        /** Posts the silenced chats that changed and the summary over them, then saves the counts. */
+        private void postSilent(UnreadTable.Refresh refresh) {
+            if (refresh == null) {
+                return;
+            }
+            NotificationManager notificationManager =
+                    (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            for (UnreadTable.Conversation conversation : refresh.changed) {
+                long start = System.nanoTime();
+                // Tagged with the conversation key, which is how a dismissal finds its table entry
+                notificationManager.notify(conversation.key, conversation.notificationId,
+                        buildSilentConversation(conversation));
+                FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.NOTIFY, System.nanoTime() - start);
+                Trace.record(TraceEvent.POST, conversation.notificationId, conversation.unread);
+            }
+            // Dropped from the table to make room: their notifications would otherwise never go away
+            for (UnreadTable.Conversation conversation : refresh.forgotten) {
+                notificationManager.cancel(conversation.key, conversation.notificationId);
+            }
+            if (refresh.unreadConversations > 0) {
+                notificationManager.notify(SILENT_SUMMARY_ID, buildSilentSummary(refresh));
+                Trace.record(TraceEvent.POST, SILENT_SUMMARY_ID, refresh.unreadMessages);
             } else {
-                Log.d(TAG, "Using default notification sound");
-                soundUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+                notificationManager.cancel(SILENT_SUMMARY_ID);
+            }
+            if (DebugLog.ENABLED) {
+                Log.d(TAG, "Silenced chats refreshed: " + refresh.changed.size() + " updated, "
+                        + refresh.unreadMessages + " unread in " + refresh.unreadConversations + " chats");
             }
+            try {
+                unread.save(unreadFile);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not save unread counts", e);
+            }
+        }
 
-            AudioAttributes audioAttributes = new AudioAttributes.Builder()
-                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                    .setUsage(AudioAttributes.USAGE_NOTIFICATION)
-                    .build();
+        private void postFlushes(List<ConversationAggregator.Flush> due) {
+            if (!due.isEmpty()) {
+                NotificationManager notificationManager =
+                        (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+                for (ConversationAggregator.Flush flush : due) {
+                    // A contact past its alert budget still gets the update, just without sound
+                    boolean throttled = flush.alert && flush.isPriority()
+                            && !alertThrottle.tryAlert(flush.priorityContact);
+                    if (throttled) {
+                        FilterMetrics.GLOBAL.increment(FilterMetrics.Counter.THROTTLED);
+                        Trace.record(TraceEvent.THROTTLE, Trace.hash(flush.priorityContact),
+                                Trace.hash(flush.conversationKey));
+                    }
+                    Notification notification = buildConversationNotification(flush, throttled);
+                    long start = System.nanoTime();
+                    // Tagged with the conversation key, so ids from an earlier process never collide
+                    notificationManager.notify(flush.conversationKey, ConversationAggregator.NOTIFICATION_ID,
+                            notification);
+                    FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.NOTIFY, System.nanoTime() - start);
+                    Trace.record(TraceEvent.POST, Trace.hash(flush.conversationKey),
+                            flush.alert && !throttled ? -flush.messages.size() : flush.messages.size());
+                    if (DebugLog.ENABLED) {
+                        Log.d(TAG, "Conversation notification posted for: " + flush.conversationKey
+                                + " (" + flush.messages.size() + " messages, alert: " + flush.alert
+                                + (throttled ? ", throttled" : "") + ")");
+                    }
+                }
+            }
+        }
 
-            channel.setSound(soundUri, audioAttributes);
-            channel.enableVibration(true);
-            notificationManager.createNotificationChannel(channel);
-            Log.d(TAG, "Created notification channel: " + channelId + " with name: " + channelName);
+        @Override
+        public void onError(IncomingNotification incoming, RuntimeException e) {
+            Log.e(TAG, "Failed to filter notification " + (incoming != null ? incoming.key : ""), e);
         }
+    }
 
+    /** @param throttled post a priority conversation on the silent channel, as its contact is out of alerts */
+    private Notification buildConversationNotification(ConversationAggregator.Flush flush, boolean throttled) {
+        long start = System.nanoTime();
         Notification.Builder builder;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            builder = new Notification.Builder(this, channelId);
-        } else {
-            builder = new Notification.Builder(this)
-                    .setPriority(Notification.PRIORITY_HIGH);
-
-            // Set sound for pre-Oreo
-            if (customSoundUri != null && !customSoundUri.isEmpty()) {
-                builder.setSound(Uri.parse(customSoundUri));
+        if (flush.isPriority() && !throttled) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                // One channel per contact and sound, created only when first needed
+                builder = new Notification.Builder(this,
+                        channelRegistry.priorityChannel(flush.priorityContact, flush.soundUri));
             } else {
-                builder.setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION));
+                builder = new Notification.Builder(this)
+                        .setPriority(Notification.PRIORITY_HIGH);
+
+                // Set sound for pre-Oreo
+                if (flush.soundUri != null) {
+                    builder.setSound(Uri.parse(flush.soundUri));
+                } else {
+                    builder.setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION));
+                }
             }
+        } else {
+            builder = silentBuilder();
         }
 
+        FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.CHANNEL, System.nanoTime() - start);
+
+        // Updates within a burst replace the notification without sounding again
         builder.setSmallIcon(R.drawable.ic_notification)
-                .setContentTitle(title)
-                .setContentText(text)
+                .setStyle(buildMessagingStyle(flush))
+                .setOnlyAlertOnce(!flush.alert || throttled)
                 .setAutoCancel(true);
 
-        // Create a direct intent to launch WeChat
-        Intent launchWeChat = getPackageManager().getLaunchIntentForPackage(WECHAT_PACKAGE);
-        if (launchWeChat != null) {
-            // Add flags to ensure it launches properly
-            launchWeChat.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-
-            // Create a PendingIntent with a unique request code to prevent overwriting
-            PendingIntent pendingIntent;
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
-                pendingIntent = PendingIntent.getActivity(this, (int) System.currentTimeMillis(),
-                        launchWeChat, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            } else {
-                pendingIntent = PendingIntent.getActivity(this, (int) System.currentTimeMillis(),
-                        launchWeChat, PendingIntent.FLAG_UPDATE_CURRENT);
-            }
+        ConversationAggregator.Message last = flush.messages.get(flush.messages.size() - 1);
+        builder.setContentTitle(flush.title)
+                .setContentText(last.text)
+                .setWhen(last.timestamp)
+                .setShowWhen(true);
+        setAvatarAndIntent(builder, flush.conversationKey);
+        return builder.build();
+    }
 
-            // Set it as the contentIntent
-            builder.setContentIntent(pendingIntent);
-            Log.d(TAG, "Set direct WeChat launch intent for sound notification");
-        } else {
-            Log.e(TAG, "Could not create intent to launch WeChat");
+    private Notification.Builder silentBuilder() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return new Notification.Builder(this, channelRegistry.silentChannel());
         }
-
-        int notificationId = (int) System.currentTimeMillis();
-        notificationManager.notify(notificationId, builder.build());
-        Log.d(TAG, "Notification posted with ID: " + notificationId);
+        return new Notification.Builder(this)
+                .setPriority(Notification.PRIORITY_DEFAULT)
+                .setSound(null)
+                .setVibrate(null);
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.O)
-    private void cleanupOldChannels(NotificationManager notificationManager, String contactName) {
-        if (contactName == null) return;
-
-        String contactIdPrefix = "priority_contact_" + contactName.hashCode();
-
-        // Get all notification channels
-        List<NotificationChannel> channels = notificationManager.getNotificationChannels();
-
-        // Find and delete old channels for this contact
-        for (NotificationChannel channel : channels) {
-            String channelId = channel.getId();
-            // If this is a channel for the same contact but not the current one
-            if (channelId.startsWith(contactIdPrefix)) {
-                notificationManager.deleteNotificationChannel(channelId);
-                Log.d(TAG, "Deleted old channel: " + channelId);
-            }
-        }
+    private Notification buildSilentConversation(UnreadTable.Conversation conversation) {
+        String text = conversation.lastSender == null || conversation.lastSender.equals(conversation.title)
+                ? conversation.lastText : conversation.lastSender + ": " + conversation.lastText;
+        Notification.Builder builder = silentBuilder()
+                .setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle(conversation.unread > 1
+                        ? conversation.title + " (" + conversation.unread + ")" : conversation.title)
+                .setContentText(text)
+                .setNumber(conversation.unread)
+                .setWhen(conversation.lastTime)
+                .setShowWhen(true)
+                .setGroup(SILENT_GROUP)
+                .setOnlyAlertOnce(true)
+                .setAutoCancel(true);
+        setAvatarAndIntent(builder, conversation.key);
+        return builder.build();
     }
-    private String extractSenderName(String text) {
-        if (text == null) return "";
 
-        // Pattern 1: Message count format "[数条].: 消息"
-        if (text.contains("].:")) {
-            int startIndex = text.indexOf("].") + 2;
-            int endIndex = text.indexOf(":", startIndex);
-            if (endIndex > startIndex) {
-                return text.substring(startIndex, endIndex).trim();
-            }
+    private Notification buildSilentSummary(UnreadTable.Refresh refresh) {
+        String totals = getString(R.string.silent_summary_text, refresh.unreadMessages, refresh.unreadConversations);
+        Notification.InboxStyle style = new Notification.InboxStyle().setSummaryText(totals);
+        for (int i = 0; i < Math.min(SILENT_SUMMARY_LINES, refresh.recent.size()); i++) {
+            UnreadTable.Conversation conversation = refresh.recent.get(i);
+            style.addLine(conversation.title + " (" + conversation.unread + "): " + conversation.lastText);
         }
-        // Pattern 2: Direct message format "姓名: 消息"
-        else if (text.contains(":")) {
-            return text.substring(0, text.indexOf(":")).trim();
+        UnreadTable.Conversation latest = refresh.recent.get(0);
+        Notification.Builder builder = silentBuilder()
+                .setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle(getString(R.string.silent_summary_title))
+                .setContentText(totals)
+                .setStyle(style)
+                .setNumber(refresh.unreadMessages)
+                .setWhen(latest.lastTime)
+                .setShowWhen(true)
+                .setGroup(SILENT_GROUP)
+                .setGroupSummary(true)
+                .setOnlyAlertOnce(true)
+                .setAutoCancel(true);
+        PendingIntent pendingIntent = contentIntent(latest.key);
+        if (pendingIntent != null) {
+            builder.setContentIntent(pendingIntent);
         }
-
-        return "";
+        return builder.build();
     }
 
-    private boolean isPriorityContact(String contactName) {
-        if (contactName == null || contactName.isEmpty()) {
-            return false;
+    private void setAvatarAndIntent(Notification.Builder builder, String conversationKey) {
+        AvatarCacheProvider.Avatar avatar = null;
+        try {
+            avatar = avatars.get(conversationKey);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read avatar", e);
+        }
+        if (avatar != null) {
+            builder.setLargeIcon(avatar.icon);
+        }
+        PendingIntent pendingIntent = contentIntent(conversationKey);
+        if (pendingIntent != null) {
+            builder.setContentIntent(pendingIntent);
         }
-
-        // Reload contacts each time to ensure we have the latest list
-        loadPriorityContacts();
-        boolean isInList = priorityContacts.contains(contactName);
-        Log.d(TAG, "Checking if '" + contactName + "' is in priority list: " + isInList);
-        return isInList;
     }
 
-    private void loadPriorityContacts() {
-        SharedPreferences prefs = getSharedPreferences("PriorityContacts", MODE_PRIVATE);
-        Set<String> savedContacts = prefs.getStringSet("contacts", new HashSet<>());
-        priorityContacts = new HashSet<>(savedContacts);
-        Log.d(TAG, "Loaded priority contacts: " + priorityContacts.toString());
+    // The precomputed launch intent of the conversation's app for its slot; the digest opens WeChat
+    private PendingIntent contentIntent(String conversationKey) {
+        AppAdapter app = apps.forConversation(conversationKey);
+        int appIndex = app != null ? apps.indexOf(app.packageName) : apps.indexOf(AppRegistry.WECHAT.packageName);
+        PendingIntent pendingIntent = launchIntents.get(appIndex).get(conversationKey.hashCode());
+        if (pendingIntent == null) {
+            Log.e(TAG, "Could not create intent to launch " + (app != null ? app.label : "WeChat"));
+        }
+        return pendingIntent;
     }
 
-    private String getContactSoundUri(String contactName) {
-        if (contactName == null) return null;
-
-        SharedPreferences soundPrefs = getSharedPreferences("ContactSounds", MODE_PRIVATE);
-        try {
-            String soundsJson = soundPrefs.getString("soundsMap", "{}");
-            JSONObject contactSounds = new JSONObject(soundsJson);
-            if (contactSounds.has(contactName)) {
-                return contactSounds.getString(contactName);
+    @SuppressWarnings("deprecation")
+    private Notification.MessagingStyle buildMessagingStyle(ConversationAggregator.Flush flush) {
+        boolean isGroup = false;
+        for (ConversationAggregator.Message message : flush.messages) {
+            if (message.sender != null && !message.sender.equals(flush.title)) {
+                isGroup = true;
+                break;
             }
-        } catch (JSONException e) {
-            Log.e(TAG, "Error reading contact sound", e);
         }
-        return null;
-    }
-
-    public static void saveContactSound(Context context, String contactName, String soundUri) {
-        SharedPreferences soundPrefs = context.getSharedPreferences("ContactSounds", MODE_PRIVATE);
-        try {
-            String soundsJson = soundPrefs.getString("soundsMap", "{}");
-            JSONObject contactSounds = new JSONObject(soundsJson);
-            contactSounds.put(contactName, soundUri);
-
-            SharedPreferences.Editor editor = soundPrefs.edit();
-            editor.putString("soundsMap", contactSounds.toString());
-            editor.apply();
 
-            Log.d("WeChatFilter", "Saved sound for " + contactName + ": " + soundUri);
-        } catch (JSONException e) {
-            Log.e("WeChatFilter", "Error saving contact sound", e);
+        Notification.MessagingStyle style;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            Person self = new Person.Builder().setName(getString(R.string.messaging_self_name)).build();
+            style = new Notification.MessagingStyle(self);
+            for (ConversationAggregator.Message message : flush.messages) {
+                Person sender = new Person.Builder()
+                        .setName(message.sender != null ? message.sender : flush.title)
+                        .build();
+                style.addMessage(new Notification.MessagingStyle.Message(message.text, message.timestamp, sender));
+            }
+            style.setGroupConversation(isGroup);
+        } else {
+            style = new Notification.MessagingStyle(getString(R.string.messaging_self_name));
+            for (ConversationAggregator.Message message : flush.messages) {
+                style.addMessage(message.text, message.timestamp,
+                        message.sender != null ? message.sender : flush.title);
+            }
+        }
+        if (isGroup) {
+            style.setConversationTitle(flush.title);
         }
+        return style;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+// Android-free core of the notification filter, so it can be unit tested
+// and benchmarked on a plain JVM.
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :core:jmh  — results in core/build/results/jmh/results.json
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    benchmarkMode = listOf("thrpt")
+    timeUnit = "s"
+    // Reports gc.alloc.rate.norm (bytes allocated per op) next to ops/s
+    profilers = listOf("gc")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+}
@@ -0,0 +1,57 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The filtering hot path: classify a notification against 10, 1k and 100k
+ * priority contacts. Run with the gc profiler (configured in
+ * core/build.gradle.kts) to see bytes allocated per classification.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClassifierBenchmark {
+    private static final int MESSAGES = 4096;
+
+    @Param({"10", "1000", "100000"})
+    public int contactCount;
+
+    private SyntheticCorpus corpus;
+    private PriorityContactCache contacts;
+    private NotificationClassifier classifier;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        corpus = new SyntheticCorpus(contactCount, MESSAGES, 42);
+        ContactSnapshot snapshot = new ContactSnapshot(new HashSet<>(corpus.contacts), corpus.sounds());
+        contacts = new PriorityContactCache(() -> snapshot);
+        contacts.refresh();
+        classifier = new NotificationClassifier(contacts, MessageTextParser.withDefaultFormats());
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (MESSAGES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public FilterDecision classify() {
+        int i = nextIndex();
+        return classifier.classify(corpus.titles[i], corpus.texts[i]);
+    }
+
+    @Benchmark
+    public void priorityLookup(Blackhole blackhole) {
+        int i = nextIndex();
+        blackhole.consume(contacts.isPriority(corpus.titles[i]));
+        blackhole.consume(contacts.soundFor(corpus.titles[i]));
+    }
+}
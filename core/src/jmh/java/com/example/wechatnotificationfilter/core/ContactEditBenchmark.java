@@ -0,0 +1,78 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Time from a contact edit in the main screen until the filter sees it:
+ * the store append plus the listener swapping in an updated snapshot.
+ * Target is well under 10 ms, where the old service restart took
+ * hundreds of milliseconds and could miss notifications meanwhile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContactEditBenchmark {
+    @Param({"100", "10000"})
+    public int contactCount;
+
+    private File dir;
+    private ContactStore store;
+    private PriorityContactCache cache;
+    private List<String> names;
+    private int next;
+    private long edits;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(contactCount, 1, 42);
+        dir = Files.createTempDirectory("contact-edit").toFile();
+        store = ContactStore.open(new File(dir, "contacts.log"));
+        for (Map.Entry<String, String> sound : corpus.sounds().entrySet()) {
+            store.add(sound.getKey());
+            store.set(sound.getKey(), ContactStore.SOUND, sound.getValue());
+        }
+        names = store.names();
+        cache = new PriorityContactCache(store);
+        cache.refresh();
+        store.addListener(cache::apply);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public String changeSound() throws IOException {
+        next = next + 1 == names.size() ? 0 : next + 1;
+        String name = names.get(next);
+        String sound = ((edits++ / names.size()) & 1) == 0 ? "content://a" : "content://b";
+        store.set(name, ContactStore.SOUND, sound);
+        return cache.soundFor(name);
+    }
+
+    @Benchmark
+    public boolean addAndRemove() throws IOException {
+        store.add("新联系人");
+        store.remove("新联系人");
+        return cache.isPriority("新联系人");
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Point reads and writes against the contact store. Both should stay flat
+ * from 100 to 10k contacts: a read is a hash lookup and a write appends a
+ * single record, where the old JSON blob was parsed and rewritten whole.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ContactStoreBenchmark {
+    @Param({"100", "10000"})
+    public int contactCount;
+
+    private File dir;
+    private ContactStore store;
+    private List<String> names;
+    private int next;
+    private long writes;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(contactCount, 1, 42);
+        dir = Files.createTempDirectory("contact-store").toFile();
+        store = ContactStore.open(new File(dir, "contacts.log"));
+        for (Map.Entry<String, String> sound : corpus.sounds().entrySet()) {
+            store.add(sound.getKey());
+            store.set(sound.getKey(), ContactStore.SOUND, sound.getValue());
+        }
+        names = store.names();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private String nextName() {
+        next = next + 1 == names.size() ? 0 : next + 1;
+        return names.get(next);
+    }
+
+    @Benchmark
+    public String readSound() {
+        return store.get(nextName(), ContactStore.SOUND);
+    }
+
+    @Benchmark
+    public boolean writeSound() throws IOException {
+        // Flip the value on every pass over the contacts so each call is a real change that hits the log
+        String sound = ((writes++ / names.size()) & 1) == 0 ? "content://a" : "content://b";
+        return store.set(nextName(), ContactStore.SOUND, sound);
+    }
+}
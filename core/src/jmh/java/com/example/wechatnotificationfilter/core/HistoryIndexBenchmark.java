@@ -0,0 +1,89 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of indexing one message and latency of history searches over 100k
+ * messages. Queries return the 50 newest hits: a common word, a rare name
+ * and a word that matches nothing. Each should take well under a
+ * millisecond; indexing a message a few microseconds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryIndexBenchmark {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Param({"100000"})
+    public int messageCount;
+
+    private SyntheticCorpus corpus;
+    private File dir;
+    private NotificationHistory history;
+    private HistoryIndex index;
+    private String rareName;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = new SyntheticCorpus(1000, messageCount, 42);
+        dir = Files.createTempDirectory("history-index").toFile();
+        history = NotificationHistory.open(dir, 1024 * 1024, 365 * DAY, () -> 0);
+        index = new HistoryIndex(history);
+        for (int i = 0; i < messageCount; i++) {
+            add(i);
+        }
+        rareName = corpus.contacts.get(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        history.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private void add(int i) throws IOException {
+        String title = corpus.titles[i];
+        String text = corpus.texts[i];
+        index.add(history.append(i, RuleAction.SILENT, false, title, null, text), title, text);
+    }
+
+    @Benchmark
+    public int indexMessage() throws IOException {
+        next = next + 1 == messageCount ? 0 : next + 1;
+        add(next);
+        return index.documents();
+    }
+
+    @Benchmark
+    public List<NotificationHistory.Entry> searchCommon() {
+        return index.search("开会", 50);
+    }
+
+    @Benchmark
+    public List<NotificationHistory.Entry> searchRare() {
+        return index.search(rareName, 50);
+    }
+
+    @Benchmark
+    public List<NotificationHistory.Entry> searchMiss() {
+        return index.search("火锅", 50);
+    }
+}
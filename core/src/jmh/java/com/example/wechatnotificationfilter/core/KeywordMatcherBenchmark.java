@@ -0,0 +1,65 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Keyword detection on message bodies: the Aho-Corasick automaton against
+ * a loop of {@code contains} calls, for 10 to 500 keywords. The automaton
+ * should stay flat while the loop grows with the keyword count.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KeywordMatcherBenchmark {
+    private static final int MESSAGES = 4096;
+
+    @Param({"10", "100", "500"})
+    public int keywordCount;
+
+    private String[] bodies;
+    private List<String> keywords;
+    private KeywordMatcher matcher;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(100, MESSAGES, 42);
+        MessageTextParser parser = MessageTextParser.withDefaultFormats();
+        MessageTextParser.Result parsed = new MessageTextParser.Result();
+        bodies = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            parser.parse(corpus.titles[i], corpus.texts[i], parsed);
+            bodies[i] = parsed.body();
+        }
+        keywords = SyntheticCorpus.keywords(keywordCount, 7);
+        matcher = KeywordMatcher.compile(keywords);
+    }
+
+    private String nextBody() {
+        next = (next + 1) & (MESSAGES - 1);
+        return bodies[next];
+    }
+
+    @Benchmark
+    public int automaton() {
+        return matcher.find(nextBody());
+    }
+
+    @Benchmark
+    public int naiveContains() {
+        String body = nextBody().toLowerCase(Locale.ROOT);
+        for (int k = 0; k < keywords.size(); k++) {
+            if (body.contains(keywords.get(k))) {
+                return k;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Sender extraction alone, without contact lookup. */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MessageTextParserBenchmark {
+    private static final int MESSAGES = 4096;
+
+    private SyntheticCorpus corpus;
+    private final MessageTextParser parser = MessageTextParser.withDefaultFormats();
+    private final MessageTextParser.Result result = new MessageTextParser.Result();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        corpus = new SyntheticCorpus(1000, MESSAGES, 7);
+    }
+
+    @Benchmark
+    public boolean parse() {
+        next = (next + 1) & (MESSAGES - 1);
+        return parser.parse(corpus.titles[next], corpus.texts[next], result);
+    }
+
+    @Benchmark
+    public String parseAndExtractSender() {
+        next = (next + 1) & (MESSAGES - 1);
+        parser.parse(corpus.titles[next], corpus.texts[next], result);
+        return result.sender();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Appending to and paging through the notification history. An append
+ * should allocate nothing and cost about as much as copying the record,
+ * rotations included; a page decodes only the records it returns.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NotificationHistoryBenchmark {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private File dir;
+    private NotificationHistory history;
+    private long time;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("history").toFile();
+        // Retention shorter than the run, so old segments are deleted as it goes
+        history = NotificationHistory.open(dir, 1024 * 1024, DAY, () -> time);
+        for (int i = 0; i < 10_000; i++) {
+            append();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        history.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        time += 1000;
+        history.append(time, RuleAction.SILENT, false, "公司通知群", "张三", "明天上午十点开会，请准时参加 meeting at 10");
+        return time;
+    }
+
+    @Benchmark
+    public List<NotificationHistory.Entry> newestPage() {
+        return history.page(NotificationHistory.NEWEST, 50);
+    }
+}
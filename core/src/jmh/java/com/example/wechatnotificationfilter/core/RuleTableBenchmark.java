@@ -0,0 +1,94 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Rule evaluation against 5 to 500 rules mixing sender, group, keyword,
+ * time and day conditions. The decision table should keep the cost close
+ * to flat: more rules only add bitset words, not per-rule checks.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RuleTableBenchmark {
+    private static final int MESSAGES = 4096;
+
+    @Param({"5", "50", "500"})
+    public int ruleCount;
+
+    private String[] senders;
+    private String[] titles;
+    private boolean[] groups;
+    private String[] bodies;
+    private int[] minutes;
+    private RuleTable table;
+    private long[] scratch;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(1000, MESSAGES, 42);
+        MessageTextParser parser = MessageTextParser.withDefaultFormats();
+        MessageTextParser.Result parsed = new MessageTextParser.Result();
+        senders = new String[MESSAGES];
+        titles = corpus.titles;
+        groups = new boolean[MESSAGES];
+        bodies = new String[MESSAGES];
+        minutes = new int[MESSAGES];
+        Random random = new Random(3);
+        for (int i = 0; i < MESSAGES; i++) {
+            parser.parse(corpus.titles[i], corpus.texts[i], parsed);
+            senders[i] = parsed.hasSender() ? parsed.sender() : corpus.titles[i];
+            groups[i] = parsed.isGroup();
+            bodies[i] = parsed.body();
+            minutes[i] = random.nextInt(Rule.MINUTES_PER_DAY);
+        }
+
+        List<String> keywords = SyntheticCorpus.keywords(Math.max(10, ruleCount), 7);
+        List<Rule> rules = new ArrayList<>();
+        for (int r = 0; r < ruleCount; r++) {
+            Set<String> from = Collections.emptySet();
+            Set<String> group = Collections.emptySet();
+            Set<String> keyword = Collections.emptySet();
+            switch (r % 4) {
+                case 0:
+                    from = new HashSet<>(corpus.contacts.subList(r, r + 3));
+                    break;
+                case 1:
+                    group = Collections.singleton(titles[random.nextInt(MESSAGES)]);
+                    keyword = new HashSet<>(keywords.subList(r % keywords.size(), r % keywords.size() + 1));
+                    break;
+                case 2:
+                    keyword = new HashSet<>(keywords.subList(r % keywords.size(), r % keywords.size() + 1));
+                    break;
+                default:
+                    from = Collections.singleton(corpus.contacts.get(random.nextInt(corpus.contacts.size())));
+                    break;
+            }
+            int start = random.nextBoolean() ? -1 : random.nextInt(Rule.MINUTES_PER_DAY);
+            int end = start < 0 ? -1 : (start + 60 + random.nextInt(600)) % Rule.MINUTES_PER_DAY;
+            rules.add(new Rule(RuleAction.values()[r % 4], null, from, group, keyword, start, end,
+                    random.nextInt(3) == 0 ? 0x1f : Rule.ALL_DAYS));
+        }
+        table = RuleTable.compile(rules);
+        scratch = table.newScratch();
+    }
+
+    @Benchmark
+    public int evaluate() {
+        next = (next + 1) & (MESSAGES - 1);
+        return table.evaluate(senders[next], titles[next], groups[next], bodies[next], minutes[next],
+                next % 7, scratch);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Deterministic WeChat-like notification titles and texts for benchmarks:
+ * direct and group chats, unread counters, mention tags, full-width
+ * colons, and bodies containing URLs and clock times.
+ */
+final class SyntheticCorpus {
+    private static final String SURNAMES = "王李张刘陈杨黄赵吴周徐孙马朱胡郭何高林罗郑梁谢宋唐";
+    private static final String GIVEN = "伟芳娜秀英敏静丽强磊军洋勇艳杰娟涛明超秀兰霞平刚桂英";
+    private static final String[] LATIN = {"Alice", "Bob", "Carol", "Dave", "Erin", "Frank", "Grace", "Heidi"};
+    private static final String[] GROUPS = {"家庭群", "项目组", "大学同学", "Weekend Hiking", "公司通知群"};
+    private static final String[] BODIES = {
+            "晚上吃饭吗", "收到", "明天 10:30 开会，别迟到", "看看这个 https://mp.weixin.qq.com/s/abc",
+            "[图片]", "[语音]", "ok see you at 7:45", "好的：我知道了", "哈哈哈哈哈", "Meeting moved: room 5"
+    };
+
+    final List<String> contacts;
+    final String[] titles;
+    final String[] texts;
+
+    SyntheticCorpus(int contactCount, int messageCount, long seed) {
+        Random random = new Random(seed);
+        Set<String> names = new LinkedHashSet<>();
+        while (names.size() < contactCount) {
+            names.add(randomName(random, names.size()));
+        }
+        contacts = Collections.unmodifiableList(new ArrayList<>(names));
+
+        titles = new String[messageCount];
+        texts = new String[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            // Roughly a third of messages come from priority contacts
+            String sender = random.nextInt(3) == 0
+                    ? contacts.get(random.nextInt(contacts.size()))
+                    : randomName(random, contactCount + random.nextInt(1_000_000));
+            String body = BODIES[random.nextInt(BODIES.length)];
+            String counter = random.nextInt(4) == 0 ? "[" + (2 + random.nextInt(30)) + "条]" : "";
+
+            if (random.nextInt(5) < 2) {
+                titles[i] = sender;
+                texts[i] = counter + body;
+            } else {
+                String mention = random.nextInt(10) == 0 ? "[有人@我]" : "";
+                String colon = random.nextBoolean() ? ": " : "：";
+                titles[i] = GROUPS[random.nextInt(GROUPS.length)];
+                texts[i] = counter + mention + sender + colon + body;
+            }
+        }
+    }
+
+    Map<String, String> sounds() {
+        Map<String, String> sounds = new HashMap<>();
+        for (int i = 0; i < contacts.size(); i += 3) {
+            sounds.put(contacts.get(i), "content://media/internal/audio/media/" + i);
+        }
+        return sounds;
+    }
+
+    /**
+     * Alert keywords: mostly two- and three-character CJK words, some Latin,
+     * plus a couple that do occur in the generated bodies.
+     */
+    static List<String> keywords(int count, long seed) {
+        Random random = new Random(seed);
+        Set<String> keywords = new LinkedHashSet<>();
+        keywords.add("开会");
+        keywords.add("meeting");
+        while (keywords.size() < count) {
+            if (random.nextInt(5) == 0) {
+                keywords.add(LATIN[random.nextInt(LATIN.length)].toLowerCase() + random.nextInt(1000));
+            } else {
+                StringBuilder word = new StringBuilder();
+                for (int i = 0, n = 2 + random.nextInt(2); i < n; i++) {
+                    word.append(GIVEN.charAt(random.nextInt(GIVEN.length())));
+                }
+                keywords.add(word.toString());
+            }
+        }
+        return new ArrayList<>(keywords).subList(0, count);
+    }
+
+    private static String randomName(Random random, int salt) {
+        if (random.nextInt(4) == 0) {
+            return LATIN[random.nextInt(LATIN.length)] + salt;
+        }
+        return "" + SURNAMES.charAt(random.nextInt(SURNAMES.length()))
+                + GIVEN.charAt(random.nextInt(GIVEN.length()))
+                + (salt >= 100 ? GIVEN.charAt(salt % GIVEN.length()) + Integer.toString(salt, 36) : "");
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Per-contact token bucket limiting how often a priority contact may make
+ * a sound. Each contact starts with {@code burst} alerts and earns one
+ * back every {@code refillMillis}; once the bucket is empty, further
+ * messages are still shown but posted without sound.
+ *
+ * <p>A bucket is kept as the single time at which it would be full again
+ * (the generic cell rate algorithm), so the state per contact is one long
+ * in an open-addressed table keyed by a 64-bit hash of the name. Buckets
+ * that have refilled completely carry no information and are evicted
+ * whenever the table needs room, so it only ever holds contacts that
+ * alerted recently.
+ */
+public final class AlertThrottle {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int INITIAL_SLOTS = 16;
+
+    private final long refillMillis;
+    // How far ahead of now the full-again time may be while a token is left
+    private final long tolerance;
+    private final LongSupplier clock;
+    // keys[i] == 0 marks an empty slot; hashes of 0 are remapped to 1
+    private long[] keys = new long[INITIAL_SLOTS];
+    private long[] fullAt = new long[INITIAL_SLOTS];
+    private int size;
+
+    /**
+     * @param burst        alerts allowed back to back, at least 1
+     * @param refillMillis time to earn back one alert, positive
+     * @param clock        monotonic milliseconds
+     */
+    public AlertThrottle(int burst, long refillMillis, LongSupplier clock) {
+        if (burst < 1 || refillMillis <= 0) {
+            throw new IllegalArgumentException("burst " + burst + ", refill " + refillMillis + " ms");
+        }
+        this.refillMillis = refillMillis;
+        this.tolerance = (burst - 1) * refillMillis;
+        this.clock = clock;
+    }
+
+    /** Takes a token from the contact's bucket; false if it is empty and the post should stay silent. */
+    public synchronized boolean tryAlert(String contact) {
+        long now = clock.getAsLong();
+        long key = key(contact);
+        int slot = find(keys, key);
+        long full = keys[slot] != 0 ? fullAt[slot] : now;
+        if (full - now > tolerance) {
+            return false;
+        }
+        if (keys[slot] == 0) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                makeRoom(now);
+                slot = find(keys, key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        fullAt[slot] = Math.max(full, now) + refillMillis;
+        return true;
+    }
+
+    /** Alerts the contact could make right now, up to the burst. */
+    public synchronized int available(String contact) {
+        long now = clock.getAsLong();
+        int slot = find(keys, key(contact));
+        if (keys[slot] == 0 || fullAt[slot] <= now) {
+            return (int) (tolerance / refillMillis) + 1;
+        }
+        return (int) Math.max(0, Math.floorDiv(tolerance - (fullAt[slot] - now), refillMillis) + 1);
+    }
+
+    /** Buckets held, including refilled ones not yet evicted. */
+    public synchronized int tracked() {
+        return size;
+    }
+
+    // Drops refilled buckets, then grows the table if it is still over half full
+    private void makeRoom(long now) {
+        int live = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && fullAt[i] > now) {
+                live++;
+            }
+        }
+        int slots = keys.length;
+        while ((live + 1) * 2 > slots) {
+            slots *= 2;
+        }
+        long[] newKeys = new long[slots];
+        long[] newFullAt = new long[slots];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && fullAt[i] > now) {
+                int slot = find(newKeys, keys[i]);
+                newKeys[slot] = keys[i];
+                newFullAt[slot] = fullAt[i];
+            }
+        }
+        keys = newKeys;
+        fullAt = newFullAt;
+        size = live;
+    }
+
+    private static int find(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long key(String contact) {
+        long hash = FNV_OFFSET;
+        for (int i = 0, n = contact.length(); i < n; i++) {
+            hash = (hash ^ contact.charAt(i)) * FNV_PRIME;
+        }
+        return hash != 0 ? hash : 1;
+    }
+}
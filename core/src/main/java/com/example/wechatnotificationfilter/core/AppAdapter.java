@@ -0,0 +1,83 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * How the filter reads one messaging app's notifications: which text
+ * layouts carry the sender, how a conversation title is cleaned up before
+ * it is used as a key, and which package to open when a repost is tapped.
+ * Also counts what happened to the app's notifications.
+ */
+public final class AppAdapter {
+    public final String packageName;
+    /** Shown in stats and dumpsys. */
+    public final String label;
+    /** Splits the app's notification text into sender and body. */
+    public final MessageTextParser parser;
+    // "条新消息)" in QQ's "张三 (3条新消息)": text closing an unread counter appended to the title
+    private final String[] titleCounterSuffixes;
+    private final AtomicLongArray counters = new AtomicLongArray(FilterMetrics.Counter.values().length);
+
+    public AppAdapter(String packageName, String label, Collection<MessageFormats.Format> formats,
+                      List<String> titleCounterSuffixes) {
+        this.packageName = packageName;
+        this.label = label;
+        this.parser = new MessageTextParser(formats);
+        this.titleCounterSuffixes = titleCounterSuffixes.toArray(new String[0]);
+    }
+
+    public AppAdapter(String packageName, String label, Collection<MessageFormats.Format> formats) {
+        this(packageName, label, formats, Collections.<String>emptyList());
+    }
+
+    /**
+     * The title without a trailing unread counter such as " (3条新消息)", so
+     * it names the conversation and can match a contact. Returns the title
+     * itself when there is none.
+     */
+    public String conversationTitle(String title) {
+        if (title == null || titleCounterSuffixes.length == 0 || !title.endsWith(")")) {
+            return title;
+        }
+        int open = title.lastIndexOf('(');
+        int digits = open + 1;
+        while (digits < title.length() && title.charAt(digits) >= '0' && title.charAt(digits) <= '9') {
+            digits++;
+        }
+        if (open < 0 || digits == open + 1) {
+            return title;
+        }
+        for (String suffix : titleCounterSuffixes) {
+            if (title.length() - digits == suffix.length() && title.startsWith(suffix, digits)) {
+                int end = open;
+                while (end > 0 && Character.isWhitespace(title.charAt(end - 1))) {
+                    end--;
+                }
+                return end > 0 ? title.substring(0, end) : title;
+            }
+        }
+        return title;
+    }
+
+    /** Key grouping the app's messages into one reposted conversation; apps never share one. */
+    public String conversationKey(String conversationTitle) {
+        return packageName + '/' + (conversationTitle != null ? conversationTitle : "");
+    }
+
+    public void increment(FilterMetrics.Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public long count(FilterMetrics.Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The messaging apps the listener filters, looked up by package name on
+ * every posted notification.
+ *
+ * <p>Most notifications come from other apps, so a miss must be cheap: the
+ * lookup probes a small open-addressed table by the package name's cached
+ * {@link String#hashCode()} and compares at most a few strings, allocating
+ * nothing.
+ */
+public final class AppRegistry {
+    public static final AppAdapter WECHAT = new AppAdapter("com.tencent.mm", "WeChat", MessageFormats.DEFAULTS);
+    public static final AppAdapter WECOM = new AppAdapter("com.tencent.wework", "WeCom", MessageFormats.DEFAULTS);
+    public static final AppAdapter QQ = new AppAdapter("com.tencent.mobileqq", "QQ", MessageFormats.DEFAULTS,
+            Arrays.asList("条新消息)", "條新消息)", " new messages)"));
+    public static final AppAdapter TELEGRAM = new AppAdapter("org.telegram.messenger", "Telegram",
+            Collections.singletonList(MessageFormats.TELEGRAM));
+
+    /** The apps the service filters. */
+    public static final AppRegistry DEFAULT = new AppRegistry(Arrays.asList(WECHAT, WECOM, QQ, TELEGRAM));
+
+    private final List<AppAdapter> adapters;
+    // Adapter index + 1 per slot, 0 for empty; at most half full
+    private final int[] table;
+
+    public AppRegistry(List<AppAdapter> adapters) {
+        this.adapters = Collections.unmodifiableList(adapters);
+        table = new int[Integer.highestOneBit(Math.max(1, adapters.size()) * 2 - 1) * 4];
+        int mask = table.length - 1;
+        for (int i = 0; i < adapters.size(); i++) {
+            String packageName = adapters.get(i).packageName;
+            int slot = spread(packageName.hashCode()) & mask;
+            while (table[slot] != 0) {
+                if (adapters.get(table[slot] - 1).packageName.equals(packageName)) {
+                    throw new IllegalArgumentException("Duplicate adapter for " + packageName);
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    /** Index of the package's adapter, or -1 if the app is not filtered. */
+    public int indexOf(String packageName) {
+        if (packageName == null) {
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int slot = spread(packageName.hashCode()) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (adapters.get(table[slot] - 1).packageName.equals(packageName)) {
+                return table[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** The package's adapter, or null if the app is not filtered. */
+    public AppAdapter find(String packageName) {
+        int index = indexOf(packageName);
+        return index >= 0 ? adapters.get(index) : null;
+    }
+
+    /** The app whose {@link AppAdapter#conversationKey} produced {@code key}, or null. */
+    public AppAdapter forConversation(String key) {
+        for (int i = 0; i < adapters.size(); i++) {
+            AppAdapter app = adapters.get(i);
+            int length = app.packageName.length();
+            if (key.length() > length && key.charAt(length) == '/' && key.startsWith(app.packageName)) {
+                return app;
+            }
+        }
+        return null;
+    }
+
+    public AppAdapter adapter(int index) {
+        return adapters.get(index);
+    }
+
+    public List<AppAdapter> adapters() {
+        return adapters;
+    }
+
+    public int size() {
+        return adapters.size();
+    }
+
+    // Package names share long prefixes, so fold the high bits in
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /** One line of counters per app. */
+    public void dump(PrintWriter out) {
+        out.println("Per app:");
+        out.println(String.format(Locale.US, "  %-12s %10s %9s %9s %9s %9s %9s %9s", "", "received",
+                "duplicate", "priority", "escalated", "silent", "dropped", "digested"));
+        for (AppAdapter app : adapters) {
+            out.println(String.format(Locale.US, "  %-12s %10d %9d %9d %9d %9d %9d %9d", app.label,
+                    app.count(FilterMetrics.Counter.RECEIVED), app.count(FilterMetrics.Counter.DUPLICATE),
+                    app.count(FilterMetrics.Counter.PRIORITY), app.count(FilterMetrics.Counter.ESCALATED),
+                    app.count(FilterMetrics.Counter.SILENT), app.count(FilterMetrics.Counter.RULE_DROPPED),
+                    app.count(FilterMetrics.Counter.DIGESTED)));
+        }
+        out.flush();
+    }
+}
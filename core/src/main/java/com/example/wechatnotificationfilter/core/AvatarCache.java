@@ -0,0 +1,209 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Conversation avatars for the reposted notifications, downsampled once
+ * and kept in a least-recently-used cache bounded by bytes, with an
+ * optional second tier on disk.
+ *
+ * <p>{@link #offer} takes the avatar a notification arrived with and only
+ * scales it down when the conversation has none cached in memory or on
+ * disk, so a busy chat costs one downsampling, not one per message, and a
+ * restart costs a file read per chat instead. {@link #get} returns the
+ * cached avatar to attach to the repost, falling back to the disk tier
+ * after the process restarts or an entry was evicted.
+ *
+ * @param <S> avatar as it arrives on a notification (an Icon on Android)
+ * @param <V> downsampled avatar ready to repost
+ */
+public final class AvatarCache<S, V> {
+
+    public interface Platform<S, V> {
+        /** Scales {@code source} down to notification icon size; null if it cannot be read. */
+        V downsample(S source);
+
+        /** Memory held by {@code value}, in bytes. */
+        int sizeOf(V value);
+
+        /** The value stored for {@code key} in the disk tier, or null. */
+        default V load(String key) throws IOException {
+            return null;
+        }
+
+        default void store(String key, V value) throws IOException {
+        }
+    }
+
+    private final Platform<S, V> platform;
+    private final long maxBytes;
+    // Access order: the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+    private long downsampled;
+    private long restored;
+
+    private static final class Entry<V> {
+        final V value;
+        final int bytes;
+
+        Entry(V value, int bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    public AvatarCache(Platform<S, V> platform, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.platform = platform;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Caches the conversation's avatar unless one already is, in memory or
+     * on disk. A changed avatar is picked up once the old one has been
+     * evicted from both.
+     *
+     * @throws IOException if the disk tier could not be read or written; a downsampled avatar
+     *                     stays cached in memory
+     */
+    public void offer(String key, S source) throws IOException {
+        if (source == null) {
+            return;
+        }
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return;
+            }
+        }
+        V stored = platform.load(key);
+        if (stored != null) {
+            synchronized (this) {
+                restored++;
+                put(key, stored);
+            }
+            return;
+        }
+        V value = platform.downsample(source);
+        if (value == null) {
+            return;
+        }
+        synchronized (this) {
+            downsampled++;
+            put(key, value);
+        }
+        platform.store(key, value);
+    }
+
+    /**
+     * The conversation's avatar, from memory or else from the disk tier;
+     * null if neither has it.
+     *
+     * @throws IOException if the disk tier could not be read
+     */
+    public V get(String key) throws IOException {
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.value;
+            }
+        }
+        V value = platform.load(key);
+        synchronized (this) {
+            if (value == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            put(key, value);
+        }
+        return value;
+    }
+
+    private void put(String key, V value) {
+        int size = platform.sizeOf(value);
+        if (size > maxBytes) {
+            return;
+        }
+        Entry<V> previous = entries.put(key, new Entry<>(value, size));
+        bytes += size - (previous != null ? previous.bytes : 0);
+        Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Entry<V> evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= evicted.bytes;
+            evictions++;
+        }
+    }
+
+    /** Empties the memory tier and its counters; the disk tier is left alone. */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        hits = diskHits = misses = evictions = downsampled = restored = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long diskHits() {
+        return diskHits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized long downsampled() {
+        return downsampled;
+    }
+
+    /** Avatars offered again that were read back from the disk tier instead of downsampled. */
+    public synchronized long restored() {
+        return restored;
+    }
+
+    /** Share of lookups answered from memory or disk, 0 before the first lookup. */
+    public synchronized double hitRate() {
+        long lookups = hits + diskHits + misses;
+        return lookups > 0 ? (double) (hits + diskHits) / lookups : 0;
+    }
+
+    public synchronized void dump(PrintWriter out) {
+        out.println(String.format(Locale.US,
+                "Avatars: %d cached, %d/%d KiB, hit rate %.1f%% (%d memory, %d disk, %d miss), %d downsampled, "
+                        + "%d restored, %d evicted",
+                entries.size(), bytes / 1024, maxBytes / 1024, hitRate() * 100, hits, diskHits, misses,
+                downsampled, restored, evictions));
+        out.flush();
+    }
+}
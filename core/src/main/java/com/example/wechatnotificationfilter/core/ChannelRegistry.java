@@ -0,0 +1,155 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Remembers which notification channels exist so the service does not have
+ * to enumerate, delete and recreate them for every priority message.
+ *
+ * <p>The system's channel list is read once in {@link #reconcile()}. After
+ * that a channel is only created when a contact is first seen with a given
+ * sound, and the contact's previous channel is only deleted when that sound
+ * changes. Steady-state lookups make no binder calls, and once a contact's
+ * channel is resolved its id is returned as is, without being rebuilt.
+ */
+public final class ChannelRegistry {
+    public static final String SILENT_CHANNEL_ID = "silent_channel";
+    static final String PRIORITY_PREFIX = "priority_contact_";
+
+    /** The NotificationManager calls the registry needs; each one is an IPC. */
+    public interface ChannelOps {
+        List<String> listChannelIds();
+
+        void createPriorityChannel(String channelId, String contactName, String soundUri);
+
+        void createSilentChannel(String channelId);
+
+        void deleteChannel(String channelId);
+    }
+
+    private final ChannelOps ops;
+    // Contact hash segment of the channel id -> every channel id seen for that contact
+    private final Map<String, Set<String>> channelsByContact = new HashMap<>();
+    // Contact name -> the channel last returned for it; cleared whenever a channel is deleted
+    private final Map<String, Resolved> resolved = new HashMap<>();
+    private boolean silentChannelExists;
+    private boolean reconciled;
+
+    public ChannelRegistry(ChannelOps ops) {
+        this.ops = ops;
+    }
+
+    /** Reads the system's channels once; call when the listener connects. */
+    public synchronized void reconcile() {
+        channelsByContact.clear();
+        resolved.clear();
+        silentChannelExists = false;
+        for (String channelId : ops.listChannelIds()) {
+            if (SILENT_CHANNEL_ID.equals(channelId)) {
+                silentChannelExists = true;
+            } else {
+                String contactKey = contactKeyOf(channelId);
+                if (contactKey != null) {
+                    knownChannels(contactKey).add(channelId);
+                }
+            }
+        }
+        reconciled = true;
+    }
+
+    public synchronized String silentChannel() {
+        ensureReconciled();
+        if (!silentChannelExists) {
+            ops.createSilentChannel(SILENT_CHANNEL_ID);
+            silentChannelExists = true;
+        }
+        return SILENT_CHANNEL_ID;
+    }
+
+    /**
+     * Returns the channel for a contact and sound, creating it (and dropping
+     * the contact's channels for other sounds) only if it is not known yet.
+     */
+    public synchronized String priorityChannel(String contactName, String soundUri) {
+        ensureReconciled();
+        Resolved last = resolved.get(contactName);
+        if (last != null && Objects.equals(last.soundUri, soundUri)) {
+            return last.channelId;
+        }
+        String contactKey = contactHash(contactName);
+        String channelId = PRIORITY_PREFIX + contactKey + "_" + soundHash(soundUri);
+
+        Set<String> known = knownChannels(contactKey);
+        if (known.size() == 1 && known.contains(channelId)) {
+            resolved.put(contactName, new Resolved(soundUri, channelId));
+            return channelId;
+        }
+
+        if (!known.contains(channelId)) {
+            ops.createPriorityChannel(channelId, contactName, soundUri);
+            Trace.record(TraceEvent.CHANNEL_CREATE, Trace.hash(contactName), Trace.hash(soundUri));
+        }
+        Iterator<String> it = known.iterator();
+        while (it.hasNext()) {
+            String stale = it.next();
+            if (!stale.equals(channelId)) {
+                ops.deleteChannel(stale);
+                Trace.record(TraceEvent.CHANNEL_DELETE, Trace.hash(contactName), 0);
+                it.remove();
+                // Another contact with the same hash may have resolved to the deleted channel
+                resolved.clear();
+            }
+        }
+        known.add(channelId);
+        resolved.put(contactName, new Resolved(soundUri, channelId));
+        return channelId;
+    }
+
+    private static final class Resolved {
+        final String soundUri;
+        final String channelId;
+
+        Resolved(String soundUri, String channelId) {
+            this.soundUri = soundUri;
+            this.channelId = channelId;
+        }
+    }
+
+    private void ensureReconciled() {
+        if (!reconciled) {
+            reconcile();
+        }
+    }
+
+    private Set<String> knownChannels(String contactKey) {
+        Set<String> known = channelsByContact.get(contactKey);
+        if (known == null) {
+            known = new HashSet<>(2);
+            channelsByContact.put(contactKey, known);
+        }
+        return known;
+    }
+
+    static String contactHash(String contactName) {
+        return contactName != null ? String.valueOf(contactName.hashCode()) : "default";
+    }
+
+    static String soundHash(String soundUri) {
+        return soundUri != null ? String.valueOf(soundUri.hashCode()) : "default";
+    }
+
+    // "priority_contact_<contactHash>_<soundHash>" -> "<contactHash>"
+    static String contactKeyOf(String channelId) {
+        if (!channelId.startsWith(PRIORITY_PREFIX)) {
+            return null;
+        }
+        int end = channelId.indexOf('_', PRIORITY_PREFIX.length());
+        return end > PRIORITY_PREFIX.length() ? channelId.substring(PRIORITY_PREFIX.length(), end) : null;
+    }
+}
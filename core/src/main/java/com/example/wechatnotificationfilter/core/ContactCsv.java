@@ -0,0 +1,175 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contact import and export as CSV, one contact per row:
+ *
+ * <pre>
+ * name,sound,aliases
+ * 妈妈,content://media/internal/audio/media/12,
+ * 王建国,,"老王
+ * Wang Jianguo"
+ * </pre>
+ *
+ * Fields follow RFC 4180: quoted when they contain a comma, quote or line
+ * break, with quotes doubled. Aliases are one per line inside their field,
+ * as the store keeps them. The header row is optional on import; empty
+ * fields leave the attribute untouched.
+ */
+public final class ContactCsv {
+    private static final String[] COLUMNS = {"name", ContactStore.SOUND, ContactStore.ALIASES};
+
+    private ContactCsv() {
+    }
+
+    /**
+     * Streams rows from {@code in} into a map ready for
+     * {@link ContactStore#putAll}; later rows for the same name win.
+     *
+     * @throws IllegalArgumentException naming the line of the first malformed row
+     */
+    public static Map<String, Map<String, String>> read(Reader in) throws IOException {
+        Map<String, Map<String, String>> contacts = new LinkedHashMap<>();
+        RowReader rows = new RowReader(in);
+        List<String> row;
+        boolean first = true;
+        while ((row = rows.next()) != null) {
+            int line = rows.rowLine;
+            boolean header = first && !row.isEmpty() && COLUMNS[0].equalsIgnoreCase(row.get(0).trim());
+            first = false;
+            if (header || (row.size() == 1 && row.get(0).trim().isEmpty())) {
+                continue;
+            }
+            if (row.size() > COLUMNS.length) {
+                throw new IllegalArgumentException("Line " + line + ": expected at most "
+                        + COLUMNS.length + " fields, found " + row.size());
+            }
+            String name = row.get(0).trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Line " + line + ": empty name");
+            }
+            Map<String, String> attributes = new HashMap<>();
+            for (int column = 1; column < row.size(); column++) {
+                String value = row.get(column).trim();
+                if (!value.isEmpty()) {
+                    attributes.put(COLUMNS[column], value);
+                }
+            }
+            contacts.put(name, attributes);
+        }
+        return contacts;
+    }
+
+    /** Writes a header and one row per contact from {@link ContactStore#export}. */
+    public static void write(Writer out, Map<String, Map<String, String>> contacts) throws IOException {
+        writeRow(out, COLUMNS);
+        String[] fields = new String[COLUMNS.length];
+        for (Map.Entry<String, Map<String, String>> contact : contacts.entrySet()) {
+            fields[0] = contact.getKey();
+            for (int column = 1; column < COLUMNS.length; column++) {
+                String value = contact.getValue().get(COLUMNS[column]);
+                fields[column] = value != null ? value : "";
+            }
+            writeRow(out, fields);
+        }
+        out.flush();
+    }
+
+    private static void writeRow(Writer out, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String field = fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0
+                    || field.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(field.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(field);
+            }
+        }
+        out.write('\n');
+    }
+
+    /** Splits a character stream into rows of fields, one character at a time. */
+    private static final class RowReader {
+        private final Reader in;
+        private final StringBuilder field = new StringBuilder();
+        private int line = 1;
+        // Line the row last returned by next() started on
+        int rowLine;
+        private int pushback = -2;
+
+        RowReader(Reader in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (pushback != -2) {
+                int c = pushback;
+                pushback = -2;
+                return c;
+            }
+            return in.read();
+        }
+
+        /** The next row, or null at the end of the input. */
+        List<String> next() throws IOException {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+            rowLine = line;
+            List<String> row = new ArrayList<>();
+            field.setLength(0);
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IllegalArgumentException("Line " + rowLine + ": unterminated quote");
+                    }
+                    if (c == '"') {
+                        int after = read();
+                        if (after == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            pushback = after;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c < 0 || c == '\n') {
+                    row.add(field.toString());
+                    if (c == '\n') {
+                        line++;
+                    }
+                    return row;
+                } else if (c == '\r') {
+                    // Dropped; a CRLF row ends at the LF
+                } else if (c == ',') {
+                    row.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+    }
+}
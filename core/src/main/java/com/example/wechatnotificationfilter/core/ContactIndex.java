@@ -0,0 +1,290 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks up a notification title or sender against the priority contacts
+ * and their aliases, ignoring the ways the same name is written
+ * differently: "张三 ", "Ｔｏｍ" and "🌸Lily🌸" find the contacts "张三",
+ * "tom" and "Lily".
+ *
+ * <p>Names and aliases are stored as normalized keys: NFKC, lower-cased,
+ * with whitespace, emoji and their modifiers removed. A lookup normalizes
+ * the incoming text in one pass while hashing it, probes an open-addressed
+ * table and compares the candidate key against the text a second time,
+ * so it costs O(length) and allocates nothing. Only text containing
+ * characters outside the common ranges (ASCII, CJK ideographs, Hangul,
+ * full-width forms) goes through {@link Normalizer} first.
+ *
+ * <p>Immutable. When two contacts claim the same key, the first in list
+ * order wins.
+ */
+public final class ContactIndex {
+    public static final ContactIndex EMPTY =
+            build(Collections.<String>emptyList(), Collections.<String, List<String>>emptyMap());
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Returned by fold() for characters that are not part of the key
+    private static final int STRIP = -1;
+    // Returned by fold() for characters that need full NFKC first
+    private static final int SLOW = -2;
+
+    private final String[] contacts;
+    // Per key: owning contact, hash, and its code points in codePoints[keyStart[k] .. keyStart[k + 1])
+    private final int[] keyContact;
+    private final long[] keyHash;
+    private final int[] keyStart;
+    private final int[] codePoints;
+    // Key index + 1 per slot, 0 for empty; at most half full
+    private final int[] table;
+
+    private ContactIndex(String[] contacts, int[] keyContact, long[] keyHash, int[] keyStart, int[] codePoints,
+                         int[] table) {
+        this.contacts = contacts;
+        this.keyContact = keyContact;
+        this.keyHash = keyHash;
+        this.keyStart = keyStart;
+        this.codePoints = codePoints;
+        this.table = table;
+    }
+
+    /**
+     * @param contacts canonical names, each also its own alias
+     * @param aliases  further names per contact; contacts missing from {@code contacts} are ignored
+     */
+    public static ContactIndex build(Collection<String> contacts, Map<String, ? extends Collection<String>> aliases) {
+        String[] names = contacts.toArray(new String[0]);
+        int keys = names.length;
+        for (String name : names) {
+            Collection<String> more = aliases.get(name);
+            keys += more != null ? more.size() : 0;
+        }
+
+        Builder builder = new Builder(keys);
+        for (int c = 0; c < names.length; c++) {
+            builder.add(c, names[c]);
+            Collection<String> more = aliases.get(names[c]);
+            if (more != null) {
+                for (String alias : more) {
+                    builder.add(c, alias);
+                }
+            }
+        }
+        return builder.build(names);
+    }
+
+    private static final class Builder {
+        final int[] table;
+        final int[] keyContact;
+        final long[] keyHash;
+        final int[] keyStart;
+        int[] codePoints = new int[16];
+        int count;
+
+        Builder(int maxKeys) {
+            table = new int[Integer.highestOneBit(Math.max(1, maxKeys) * 2 - 1) * 2];
+            keyContact = new int[maxKeys];
+            keyHash = new long[maxKeys];
+            keyStart = new int[maxKeys + 1];
+        }
+
+        void add(int contact, String name) {
+            String key = normalize(name);
+            int length = key.codePointCount(0, key.length());
+            if (length == 0) {
+                return;
+            }
+            int start = keyStart[count];
+            if (start + length > codePoints.length) {
+                codePoints = Arrays.copyOf(codePoints, Math.max(codePoints.length * 2, start + length));
+            }
+            long hash = FNV_OFFSET;
+            for (int i = 0, p = start; i < key.length(); p++) {
+                int cp = key.codePointAt(i);
+                i += Character.charCount(cp);
+                codePoints[p] = cp;
+                hash = (hash ^ cp) * FNV_PRIME;
+            }
+
+            int mask = table.length - 1;
+            int slot = spread(hash) & mask;
+            while (table[slot] != 0) {
+                int k = table[slot] - 1;
+                if (keyHash[k] == hash && keyStart[k + 1] - keyStart[k] == length
+                        && sameCodePoints(keyStart[k], start, length)) {
+                    // Already claimed by an earlier contact or alias
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = count + 1;
+            keyContact[count] = contact;
+            keyHash[count] = hash;
+            keyStart[count + 1] = start + length;
+            count++;
+        }
+
+        // Arrays.equals over ranges needs API 33
+        private boolean sameCodePoints(int a, int b, int length) {
+            for (int i = 0; i < length; i++) {
+                if (codePoints[a + i] != codePoints[b + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        ContactIndex build(String[] names) {
+            return new ContactIndex(names, Arrays.copyOf(keyContact, count), Arrays.copyOf(keyHash, count),
+                    Arrays.copyOf(keyStart, count + 1), Arrays.copyOf(codePoints, keyStart[count]), table);
+        }
+    }
+
+    private static int spread(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /** The key a name is stored and matched under. */
+    public static String normalize(CharSequence name) {
+        String nfkc = Normalizer.normalize(withoutDecorations(name), Normalizer.Form.NFKC);
+        StringBuilder key = new StringBuilder(nfkc.length());
+        for (int i = 0; i < nfkc.length(); ) {
+            int cp = nfkc.codePointAt(i);
+            i += Character.charCount(cp);
+            int folded = foldNormalized(cp);
+            if (folded != STRIP) {
+                key.appendCodePoint(folded);
+            }
+        }
+        return key.toString();
+    }
+
+    /** Index of the contact whose name or alias matches {@code name}, or -1. */
+    public int find(CharSequence name) {
+        if (name == null || contacts.length == 0) {
+            return -1;
+        }
+        int found = find(name, false);
+        // Rare: characters whose NFKC form differs, such as circled letters or combining accents
+        return found != SLOW ? found : find(Normalizer.normalize(withoutDecorations(name), Normalizer.Form.NFKC), true);
+    }
+
+    // Decorations go before NFKC, which would turn some of them (squared letters, say) into text
+    private static CharSequence withoutDecorations(CharSequence name) {
+        StringBuilder kept = null;
+        for (int i = 0, n = name.length(); i < n; ) {
+            int cp = Character.codePointAt(name, i);
+            int next = i + Character.charCount(cp);
+            if (isDecoration(cp)) {
+                if (kept == null) {
+                    kept = new StringBuilder(n).append(name, 0, i);
+                }
+            } else if (kept != null) {
+                kept.append(name, i, next);
+            }
+            i = next;
+        }
+        return kept != null ? kept : name;
+    }
+
+    private int find(CharSequence name, boolean normalized) {
+        long hash = FNV_OFFSET;
+        int length = 0;
+        for (int i = 0, n = name.length(); i < n; ) {
+            int cp = Character.codePointAt(name, i);
+            i += Character.charCount(cp);
+            int folded = normalized ? foldNormalized(cp) : fold(cp);
+            if (folded == SLOW) {
+                return SLOW;
+            }
+            if (folded != STRIP) {
+                hash = (hash ^ folded) * FNV_PRIME;
+                length++;
+            }
+        }
+        if (length == 0) {
+            return -1;
+        }
+
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int k = table[slot] - 1;
+            if (keyHash[k] == hash && keyStart[k + 1] - keyStart[k] == length && keyEquals(k, name, normalized)) {
+                return keyContact[k];
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int k, CharSequence name, boolean normalized) {
+        int p = keyStart[k];
+        for (int i = 0, n = name.length(); i < n; ) {
+            int cp = Character.codePointAt(name, i);
+            i += Character.charCount(cp);
+            int folded = normalized ? foldNormalized(cp) : fold(cp);
+            if (folded != STRIP && codePoints[p++] != folded) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Folds one code point of raw text, for ranges where NFKC is known to be
+     * the identity or a simple mapping; {@link #SLOW} for anything else.
+     */
+    private static int fold(int cp) {
+        if (cp < 0xa0) {
+            return foldNormalized(cp);
+        }
+        if (cp >= 0xff01 && cp <= 0xff5e) {
+            // Full-width ASCII
+            return Character.toLowerCase(cp - 0xff01 + 0x21);
+        }
+        if (cp == 0x3000 || isDecoration(cp)) {
+            return STRIP;
+        }
+        if ((cp >= 0x4e00 && cp <= 0x9fff) || (cp >= 0xac00 && cp <= 0xd7a3)) {
+            return cp;
+        }
+        return SLOW;
+    }
+
+    /** Folds one code point of NFKC-normalized text. */
+    private static int foldNormalized(int cp) {
+        if (Character.isWhitespace(cp) || Character.isSpaceChar(cp) || Character.isISOControl(cp)
+                || isDecoration(cp)) {
+            return STRIP;
+        }
+        return Character.toLowerCase(cp);
+    }
+
+    // Emoji, their variation selectors, skin tones and joiners, and the symbol blocks nicknames decorate with
+    private static boolean isDecoration(int cp) {
+        return (cp >= 0x1f000 && cp <= 0x1faff)
+                || (cp >= 0x2600 && cp <= 0x27bf)
+                || (cp >= 0x2b00 && cp <= 0x2bff)
+                || (cp >= 0xfe00 && cp <= 0xfe0f)
+                || (cp >= 0xe0020 && cp <= 0xe007f)
+                || cp == 0x200d || cp == 0x20e3;
+    }
+
+    public String contact(int index) {
+        return contacts[index];
+    }
+
+    public int size() {
+        return contacts.length;
+    }
+
+    /** Number of distinct names and aliases that can be matched. */
+    public int keys() {
+        return keyContact.length;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search-as-you-type over the contact list. Each contact's name and
+ * aliases are normalized once, as {@link ContactIndex} does, so "ｌｉｌｙ"
+ * finds "🌸Lily🌸" and a remark name finds its contact.
+ *
+ * <p>Filtering is incremental: when the new query extends the previous
+ * one, only the previous matches are searched again, so typing a name
+ * letter by letter narrows an ever smaller list. Not thread-safe; meant
+ * for the UI thread.
+ */
+public final class ContactSearch {
+    private final List<String> contacts;
+    // Normalized name and aliases per contact, separated by a character normalization never keeps
+    private final String[] haystacks;
+    // Matches of the last non-blank query, narrowed further when the next query extends it
+    private String lastQuery = "";
+    private int[] lastMatches;
+    private int lastCount;
+
+    public ContactSearch(List<String> contacts, Map<String, List<String>> aliases) {
+        this.contacts = new ArrayList<>(contacts);
+        haystacks = new String[this.contacts.size()];
+        for (int i = 0; i < haystacks.length; i++) {
+            StringBuilder haystack = new StringBuilder(ContactIndex.normalize(this.contacts.get(i)));
+            List<String> names = aliases.get(this.contacts.get(i));
+            if (names != null) {
+                for (String alias : names) {
+                    haystack.append('\n').append(ContactIndex.normalize(alias));
+                }
+            }
+            haystacks[i] = haystack.toString();
+        }
+    }
+
+    /** Contacts whose name or an alias contains {@code query}, in list order; all of them for a blank query. */
+    public List<String> filter(CharSequence query) {
+        String needle = ContactIndex.normalize(query);
+        if (needle.isEmpty()) {
+            lastQuery = needle;
+            return Collections.unmodifiableList(contacts);
+        }
+
+        int[] matches = new int[haystacks.length];
+        int count = 0;
+        if (!lastQuery.isEmpty() && needle.startsWith(lastQuery)) {
+            for (int m = 0; m < lastCount; m++) {
+                if (haystacks[lastMatches[m]].contains(needle)) {
+                    matches[count++] = lastMatches[m];
+                }
+            }
+        } else {
+            for (int i = 0; i < haystacks.length; i++) {
+                if (haystacks[i].contains(needle)) {
+                    matches[count++] = i;
+                }
+            }
+        }
+        lastQuery = needle;
+        lastMatches = matches;
+        lastCount = count;
+
+        List<String> result = new ArrayList<>(count);
+        for (int m = 0; m < count; m++) {
+            result.add(contacts.get(matches[m]));
+        }
+        return result;
+    }
+
+    public int size() {
+        return contacts.size();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable view of the priority contacts, their aliases and custom
+ * sounds. A new snapshot is built whenever the contact store changes;
+ * lookups against an existing snapshot never allocate. Only edits to names
+ * or aliases rebuild the index; a sound change shares it.
+ *
+ * <p>{@link #match} and {@link #contains} go through a {@link ContactIndex},
+ * so they accept any spelling of a name or alias; {@link #soundFor} takes
+ * the canonical name {@code match} returns.
+ */
+public final class ContactSnapshot {
+    public static final ContactSnapshot EMPTY =
+            new ContactSnapshot(Collections.<String>emptySet(), Collections.<String, String>emptyMap());
+
+    private final Set<String> contacts;
+    private final Map<String, String> sounds;
+    private final Map<String, List<String>> aliases;
+    private final ContactIndex index;
+
+    public ContactSnapshot(Set<String> contacts, Map<String, String> sounds) {
+        this(contacts, sounds, Collections.<String, List<String>>emptyMap());
+    }
+
+    /** @param contacts in list order, which decides who wins when two contacts share an alias */
+    public ContactSnapshot(Collection<String> contacts, Map<String, String> sounds,
+                           Map<String, List<String>> aliases) {
+        this(new LinkedHashSet<>(contacts), new HashMap<>(sounds), new HashMap<>(aliases));
+    }
+
+    // Takes ownership of the collections; picked over the public constructor for these argument types
+    private ContactSnapshot(LinkedHashSet<String> contacts, HashMap<String, String> sounds,
+                            HashMap<String, List<String>> aliases) {
+        this.contacts = Collections.unmodifiableSet(contacts);
+        this.sounds = Collections.unmodifiableMap(sounds);
+        this.aliases = Collections.unmodifiableMap(aliases);
+        this.index = ContactIndex.build(contacts, aliases);
+    }
+
+    // Names and aliases unchanged: shares the base's collections and, above all, its index
+    private ContactSnapshot(ContactSnapshot base, HashMap<String, String> sounds) {
+        this.contacts = base.contacts;
+        this.sounds = Collections.unmodifiableMap(sounds);
+        this.aliases = base.aliases;
+        this.index = base.index;
+    }
+
+    /** A copy with the contact added; its sound, if any, is left as it was. */
+    public ContactSnapshot withContact(String contactName) {
+        if (contacts.contains(contactName)) {
+            return this;
+        }
+        LinkedHashSet<String> newContacts = new LinkedHashSet<>(contacts);
+        newContacts.add(contactName);
+        return new ContactSnapshot(newContacts, new HashMap<>(sounds), new HashMap<>(aliases));
+    }
+
+    /** A copy without the contact, its sound or its aliases. */
+    public ContactSnapshot withoutContact(String contactName) {
+        if (!contacts.contains(contactName) && !sounds.containsKey(contactName)
+                && !aliases.containsKey(contactName)) {
+            return this;
+        }
+        LinkedHashSet<String> newContacts = new LinkedHashSet<>(contacts);
+        newContacts.remove(contactName);
+        HashMap<String, String> newSounds = new HashMap<>(sounds);
+        newSounds.remove(contactName);
+        HashMap<String, List<String>> newAliases = new HashMap<>(aliases);
+        newAliases.remove(contactName);
+        return new ContactSnapshot(newContacts, newSounds, newAliases);
+    }
+
+    /** A copy with the contact's sound replaced; null clears it. The index is reused as is. */
+    public ContactSnapshot withSound(String contactName, String soundUri) {
+        if (Objects.equals(sounds.get(contactName), soundUri)) {
+            return this;
+        }
+        HashMap<String, String> newSounds = new HashMap<>(sounds);
+        if (soundUri != null) {
+            newSounds.put(contactName, soundUri);
+        } else {
+            newSounds.remove(contactName);
+        }
+        return new ContactSnapshot(this, newSounds);
+    }
+
+    /** A copy with the contact's aliases replaced; an empty list clears them. */
+    public ContactSnapshot withAliases(String contactName, List<String> contactAliases) {
+        HashMap<String, List<String>> newAliases = new HashMap<>(aliases);
+        if (!contactAliases.isEmpty()) {
+            newAliases.put(contactName, Collections.unmodifiableList(contactAliases));
+        } else {
+            newAliases.remove(contactName);
+        }
+        return new ContactSnapshot(new LinkedHashSet<>(contacts), new HashMap<>(sounds), newAliases);
+    }
+
+    /** The contact whose name or alias matches {@code name} after normalization, or null. */
+    public String match(CharSequence name) {
+        int contact = index.find(name);
+        return contact >= 0 ? index.contact(contact) : null;
+    }
+
+    public boolean contains(String contactName) {
+        return index.find(contactName) >= 0;
+    }
+
+    public String soundFor(String contactName) {
+        return contactName != null ? sounds.get(contactName) : null;
+    }
+
+    public Set<String> contacts() {
+        return contacts;
+    }
+
+    public Map<String, String> sounds() {
+        return sounds;
+    }
+
+    public Map<String, List<String>> aliases() {
+        return aliases;
+    }
+
+    public int size() {
+        return contacts.size();
+    }
+
+    // For tests: whether an edit rebuilt the index
+    ContactIndex index() {
+        return index;
+    }
+}
@@ -0,0 +1,506 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent priority contacts with per-contact attributes (the custom
+ * sound today, more settings later), kept in an append-only log file.
+ *
+ * <p>The whole log is replayed into an in-memory index when the store is
+ * opened, so reads are hash lookups and every change appends one small
+ * record instead of rewriting everything. Each record is framed as
+ * {@code [length][payload][crc32]}; a torn record at the end of the file
+ * (the process died mid-write) is dropped on open. Once superseded
+ * records outnumber live ones the log is rewritten to a fresh file and
+ * renamed over the old one.
+ *
+ * <p>Thread-safe. Changes are queued in the order they were applied and
+ * delivered to listeners in that order, one at a time, under a lock of
+ * their own: never under the store's lock, so a listener may read the
+ * store. Listeners are called on the thread that made the change, or on
+ * another editing thread that was already delivering when it was made.
+ */
+public final class ContactStore implements PriorityContactCache.Source, Closeable {
+    /** Attribute holding the contact's notification sound URI. */
+    public static final String SOUND = "sound";
+    /** Attribute holding the contact's other names (remark name, nickname), one per line. */
+    public static final String ALIASES = "aliases";
+
+    /** Called after every change that modified the store, with what changed. */
+    public interface Listener {
+        void onContactChanged(Change change);
+    }
+
+    /** One applied edit, so listeners can update their view without reloading the store. */
+    public static final class Change {
+        public enum Kind {
+            ADDED,
+            REMOVED,
+            /** {@link #attribute} set to {@link #value}, or cleared if the value is null. */
+            ATTRIBUTE_SET,
+            /** Many contacts changed at once by {@link #putAll}; {@link #name} is null, reload the store. */
+            BULK
+        }
+
+        public final Kind kind;
+        public final String name;
+        public final String attribute;
+        public final String value;
+        /** {@link System#nanoTime()} when the edit was requested, for time-to-effect. */
+        public final long startNanos;
+
+        Change(Kind kind, String name, String attribute, String value, long startNanos) {
+            this.kind = kind;
+            this.name = name;
+            this.attribute = attribute;
+            this.value = value;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_SET = 3;
+    private static final byte OP_CLEAR = 4;
+    // A count followed by that many of the records above, applied together
+    private static final byte OP_BATCH = 5;
+    // Anything longer is a corrupt length field, not a record; a bulk import is a single record
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+    private static final int MIN_COMPACT_RECORDS = 64;
+
+    private final File file;
+    // Insertion order is the order the contacts are listed in
+    private final Map<String, Map<String, String>> contacts = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Filled under the store's lock, so in the order the changes were applied; drained under deliveryLock
+    private final Queue<Change> undelivered = new ConcurrentLinkedQueue<>();
+    private final Object deliveryLock = new Object();
+    private FileOutputStream out;
+    private int records;
+    // Records a compacted log would hold: one per contact plus one per attribute
+    private int live;
+
+    private ContactStore(File file) {
+        this.file = file;
+    }
+
+    /** Opens the store at {@code file}, creating it if it does not exist. */
+    public static ContactStore open(File file) throws IOException {
+        ContactStore store = new ContactStore(file);
+        store.replay();
+        store.out = new FileOutputStream(file, true);
+        return store;
+    }
+
+    private void replay() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                records += apply(new DataInputStream(new ByteArrayInputStream(payload)));
+                good += 8 + payload.length;
+            }
+        }
+        if (good < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(good);
+            }
+        }
+    }
+
+    /** Applies one record to the index; returns the number of operations it held. */
+    private int apply(DataInputStream record) throws IOException {
+        byte op = record.readByte();
+        if (op == OP_BATCH) {
+            int count = record.readInt();
+            for (int i = 0; i < count; i++) {
+                apply(record);
+            }
+            return count;
+        }
+        String name = record.readUTF();
+        switch (op) {
+            case OP_ADD:
+                if (!contacts.containsKey(name)) {
+                    putContact(name);
+                }
+                break;
+            case OP_REMOVE:
+                removeContact(name);
+                break;
+            case OP_SET: {
+                String attribute = record.readUTF();
+                String value = record.readUTF();
+                Map<String, String> attributes = contacts.get(name);
+                if (attributes != null) {
+                    putAttribute(attributes, attribute, value);
+                }
+                break;
+            }
+            case OP_CLEAR: {
+                String attribute = record.readUTF();
+                Map<String, String> attributes = contacts.get(name);
+                if (attributes != null) {
+                    removeAttribute(attributes, attribute);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown contact store record " + op);
+        }
+        return 1;
+    }
+
+    private void putContact(String name) {
+        contacts.put(name, new HashMap<>());
+        live++;
+    }
+
+    private void removeContact(String name) {
+        Map<String, String> attributes = contacts.remove(name);
+        if (attributes != null) {
+            live -= 1 + attributes.size();
+        }
+    }
+
+    private void putAttribute(Map<String, String> attributes, String attribute, String value) {
+        if (attributes.put(attribute, value) == null) {
+            live++;
+        }
+    }
+
+    private void removeAttribute(Map<String, String> attributes, String attribute) {
+        if (attributes.remove(attribute) != null) {
+            live--;
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized boolean contains(String name) {
+        return contacts.containsKey(name);
+    }
+
+    /** Returns the attribute's value, or null if the contact or attribute is not set. */
+    public synchronized String get(String name, String attribute) {
+        Map<String, String> attributes = contacts.get(name);
+        return attributes != null ? attributes.get(attribute) : null;
+    }
+
+    /** All contacts in the order they were added. */
+    public synchronized List<String> names() {
+        return new ArrayList<>(contacts.keySet());
+    }
+
+    public synchronized int size() {
+        return contacts.size();
+    }
+
+    /** @return false if the contact was already present */
+    public boolean add(String name) throws IOException {
+        long start = System.nanoTime();
+        synchronized (this) {
+            if (contacts.containsKey(name)) {
+                return false;
+            }
+            append(OP_ADD, name, null, null);
+            putContact(name);
+            undelivered.add(new Change(Change.Kind.ADDED, name, null, null, start));
+            compactIfWasteful();
+        }
+        deliverChanges();
+        return true;
+    }
+
+    /** Removes the contact and all of its attributes; false if it was not present. */
+    public boolean remove(String name) throws IOException {
+        long start = System.nanoTime();
+        synchronized (this) {
+            if (!contacts.containsKey(name)) {
+                return false;
+            }
+            append(OP_REMOVE, name, null, null);
+            removeContact(name);
+            undelivered.add(new Change(Change.Kind.REMOVED, name, null, null, start));
+            compactIfWasteful();
+        }
+        deliverChanges();
+        return true;
+    }
+
+    /**
+     * Sets an attribute of an existing contact; a null value clears it.
+     *
+     * @return false if the contact does not exist or already had this value
+     */
+    public boolean set(String name, String attribute, String value) throws IOException {
+        long start = System.nanoTime();
+        synchronized (this) {
+            Map<String, String> attributes = contacts.get(name);
+            if (attributes == null) {
+                return false;
+            }
+            String current = attributes.get(attribute);
+            if (value == null ? current == null : value.equals(current)) {
+                return false;
+            }
+            if (value == null) {
+                append(OP_CLEAR, name, attribute, null);
+                removeAttribute(attributes, attribute);
+            } else {
+                append(OP_SET, name, attribute, value);
+                putAttribute(attributes, attribute, value);
+            }
+            undelivered.add(new Change(Change.Kind.ATTRIBUTE_SET, name, attribute, value, start));
+            compactIfWasteful();
+        }
+        deliverChanges();
+        return true;
+    }
+
+    /**
+     * Adds or updates many contacts as a single log record, so an import is
+     * applied completely or not at all, with one write and one
+     * {@link Change.Kind#BULK} change. Attributes and contacts that are not
+     * mentioned are left alone; null attribute values are ignored.
+     *
+     * @return number of contacts added or changed
+     */
+    public int putAll(Map<String, Map<String, String>> imported) throws IOException {
+        long start = System.nanoTime();
+        int changed = 0;
+        synchronized (this) {
+            ByteArrayOutputStream operations = new ByteArrayOutputStream();
+            DataOutputStream batch = new DataOutputStream(operations);
+            int count = 0;
+            for (Map.Entry<String, Map<String, String>> contact : imported.entrySet()) {
+                String name = contact.getKey();
+                Map<String, String> current = contacts.get(name);
+                boolean touched = false;
+                if (current == null) {
+                    writeOperation(batch, OP_ADD, name, null, null);
+                    count++;
+                    touched = true;
+                }
+                for (Map.Entry<String, String> attribute : contact.getValue().entrySet()) {
+                    String value = attribute.getValue();
+                    if (value != null && (current == null || !value.equals(current.get(attribute.getKey())))) {
+                        writeOperation(batch, OP_SET, name, attribute.getKey(), value);
+                        count++;
+                        touched = true;
+                    }
+                }
+                changed += touched ? 1 : 0;
+            }
+            if (count == 0) {
+                return 0;
+            }
+
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(operations.size() + 5);
+            DataOutputStream record = new DataOutputStream(payload);
+            record.writeByte(OP_BATCH);
+            record.writeInt(count);
+            operations.writeTo(record);
+            byte[] bytes = payload.toByteArray();
+            if (bytes.length > MAX_RECORD_LENGTH) {
+                throw new IOException("Import too large: " + bytes.length + " bytes");
+            }
+            out.write(frame(bytes));
+            // The index is updated by the same code that replays the log
+            records += apply(new DataInputStream(new ByteArrayInputStream(bytes)));
+            undelivered.add(new Change(Change.Kind.BULK, null, null, null, start));
+            compactIfWasteful();
+        }
+        deliverChanges();
+        return changed;
+    }
+
+    /** Copy of every contact with its attributes, in list order, for export. */
+    public synchronized Map<String, Map<String, String>> export() {
+        Map<String, Map<String, String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, String>> contact : contacts.entrySet()) {
+            copy.put(contact.getKey(), new HashMap<>(contact.getValue()));
+        }
+        return copy;
+    }
+
+    /** Snapshot of the contacts, their sounds and aliases for the filter. */
+    @Override
+    public synchronized ContactSnapshot load() {
+        Map<String, String> sounds = new HashMap<>();
+        Map<String, List<String>> aliases = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> contact : contacts.entrySet()) {
+            String sound = contact.getValue().get(SOUND);
+            if (sound != null) {
+                sounds.put(contact.getKey(), sound);
+            }
+            List<String> names = aliasList(contact.getValue().get(ALIASES));
+            if (!names.isEmpty()) {
+                aliases.put(contact.getKey(), names);
+            }
+        }
+        return new ContactSnapshot(contacts.keySet(), sounds, aliases);
+    }
+
+    /** Splits an {@link #ALIASES} value into its non-blank lines; null gives an empty list. */
+    public static List<String> aliasList(String value) {
+        List<String> aliases = new ArrayList<>();
+        if (value != null) {
+            for (String line : value.split("\n")) {
+                if (!line.trim().isEmpty()) {
+                    aliases.add(line.trim());
+                }
+            }
+        }
+        return aliases;
+    }
+
+    private void append(byte op, String name, String attribute, String value) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(32 + name.length());
+        writeOperation(new DataOutputStream(payload), op, name, attribute, value);
+        out.write(frame(payload.toByteArray()));
+        records++;
+    }
+
+    private static void writeOperation(DataOutputStream record, byte op, String name, String attribute,
+                                       String value) throws IOException {
+        record.writeByte(op);
+        record.writeUTF(name);
+        if (attribute != null) {
+            record.writeUTF(attribute);
+        }
+        if (value != null) {
+            record.writeUTF(value);
+        }
+    }
+
+    private void compactIfWasteful() {
+        if (records >= MIN_COMPACT_RECORDS && records > 2 * live) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // The change is already in the old log, which is still intact; retried on the next write
+            }
+        }
+    }
+
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        int checksum = (int) crc.getValue();
+        byte[] framed = new byte[payload.length + 8];
+        writeInt(framed, 0, payload.length);
+        System.arraycopy(payload, 0, framed, 4, payload.length);
+        writeInt(framed, framed.length - 4, checksum);
+        return framed;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /** Rewrites the log with one record per live contact and attribute. */
+    public synchronized void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        int written = 0;
+        try (FileOutputStream compacted = new FileOutputStream(tmp)) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(payload);
+            for (Map.Entry<String, Map<String, String>> contact : contacts.entrySet()) {
+                payload.reset();
+                record.writeByte(OP_ADD);
+                record.writeUTF(contact.getKey());
+                compacted.write(frame(payload.toByteArray()));
+                written++;
+                for (Map.Entry<String, String> attribute : contact.getValue().entrySet()) {
+                    payload.reset();
+                    record.writeByte(OP_SET);
+                    record.writeUTF(contact.getKey());
+                    record.writeUTF(attribute.getKey());
+                    record.writeUTF(attribute.getValue());
+                    compacted.write(frame(payload.toByteArray()));
+                    written++;
+                }
+            }
+            // The rename must not become visible before the data it points at
+            compacted.getFD().sync();
+        }
+        out.close();
+        if (!tmp.renameTo(file)) {
+            out = new FileOutputStream(file, true);
+            throw new IOException("Could not replace " + file + " with compacted log");
+        }
+        out = new FileOutputStream(file, true);
+        records = written;
+    }
+
+    /** Number of records currently in the log file, live or superseded, counting each operation of a batch. */
+    synchronized int logRecords() {
+        return records;
+    }
+
+    // Whoever holds the delivery lock drains every queued change, so two editors never reorder them
+    private void deliverChanges() {
+        synchronized (deliveryLock) {
+            Change change;
+            while ((change = undelivered.poll()) != null) {
+                for (Listener listener : listeners) {
+                    listener.onContactChanged(change);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
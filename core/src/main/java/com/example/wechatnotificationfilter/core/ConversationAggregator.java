@@ -0,0 +1,271 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers reposted messages per conversation so a burst turns into a few
+ * in-place updates of one notification instead of one notification each.
+ *
+ * <p>Conversations are posted under {@link #NOTIFICATION_ID}, tagged with
+ * their conversation key, so they never collide the way
+ * {@code title.hashCode()} ids did, and a conversation forgotten here or
+ * in a previous process replaces its own notification when it comes back
+ * instead of leaving a second one in the shade. Messages are flushed once the conversation has been quiet for the
+ * debounce window, or once the oldest pending message has waited
+ * {@code maxDelayMillis}, whichever comes first. A flush asks for an alert
+ * only for the first priority flush of a burst; later updates are meant
+ * to be posted with {@code setOnlyAlertOnce}. Past {@code maxConversations}
+ * the least recently used conversation is forgotten; if it still had
+ * pending messages they go out with the next {@link #flushDue}.
+ *
+ * <p>All methods are synchronized: messages are added and flushed on the
+ * pipeline worker, while removals arrive on the listener's main thread.
+ */
+public final class ConversationAggregator {
+    /** Id of every conversation notification; the conversation key is its tag. */
+    public static final int NOTIFICATION_ID = 1000;
+
+    public static final class Message {
+        public final String sender;
+        public final String text;
+        public final long timestamp;
+
+        public Message(String sender, String text, long timestamp) {
+            this.sender = sender;
+            this.text = text;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /** What to post for one conversation; a copy, safe to use outside the lock. */
+    public static final class Flush {
+        public final String conversationKey;
+        public final String title;
+        public final List<Message> messages;
+        /** Contact whose channel to use, or null for the silent channel. */
+        public final String priorityContact;
+        public final String soundUri;
+        public final boolean alert;
+
+        Flush(Conversation c, boolean alert) {
+            this.conversationKey = c.key;
+            this.title = c.title;
+            this.messages = Collections.unmodifiableList(new ArrayList<>(c.messages));
+            this.priorityContact = c.priorityContact;
+            this.soundUri = c.soundUri;
+            this.alert = alert;
+        }
+
+        public boolean isPriority() {
+            return priorityContact != null;
+        }
+    }
+
+    private static final class Conversation {
+        final String key;
+        final ArrayDeque<Message> messages = new ArrayDeque<>();
+        String title;
+        String priorityContact;
+        String soundUri;
+        boolean priorityPending;
+        boolean alertedInBurst;
+        long firstPendingAt = -1;
+        long lastMessageAt;
+
+        Conversation(String key) {
+            this.key = key;
+        }
+
+        boolean isPending() {
+            return firstPendingAt >= 0;
+        }
+    }
+
+    private final int maxMessages;
+    private final long debounceMillis;
+    private final long maxDelayMillis;
+    private final long burstGapMillis;
+    private final Map<String, Conversation> conversations;
+    // Pending conversations pushed out of the map, posted by the next flushDue() instead of lost
+    private final List<Flush> evicted = new ArrayList<>();
+    private long coalesced;
+    private long flushes;
+
+    /**
+     * @param maxConversations conversations tracked before the least recently used is forgotten
+     * @param maxMessages      messages kept per conversation
+     * @param debounceMillis   quiet time after the last message before flushing
+     * @param maxDelayMillis   longest a message may wait while a burst continues
+     * @param burstGapMillis   quiet time after which the next priority message may alert again
+     */
+    public ConversationAggregator(final int maxConversations, int maxMessages, long debounceMillis,
+                                  long maxDelayMillis, long burstGapMillis) {
+        this.maxMessages = maxMessages;
+        this.debounceMillis = debounceMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.burstGapMillis = burstGapMillis;
+        this.conversations = new LinkedHashMap<String, Conversation>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Conversation> eldest) {
+                if (size() <= maxConversations) {
+                    return false;
+                }
+                if (eldest.getValue().isPending()) {
+                    evicted.add(flush(eldest.getValue()));
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Buffers a message.
+     *
+     * @param priorityContact matched priority contact, or null for a silent message
+     */
+    public void add(String conversationKey, String title, Message message,
+                    String priorityContact, String soundUri, long nowMillis) {
+        add(conversationKey, title, message, priorityContact, soundUri, true, nowMillis);
+    }
+
+    /**
+     * Buffers a message.
+     *
+     * @param priorityContact matched priority contact, or null for a silent message
+     * @param mayAlert        false for a message that already alerted, as in the connect backlog:
+     *                        it keeps the conversation on the contact's channel without asking
+     *                        for an alert itself
+     */
+    public synchronized void add(String conversationKey, String title, Message message,
+                                 String priorityContact, String soundUri, boolean mayAlert, long nowMillis) {
+        Conversation c = conversations.get(conversationKey);
+        if (c == null) {
+            c = new Conversation(conversationKey);
+            conversations.put(conversationKey, c);
+        } else if (nowMillis - c.lastMessageAt > burstGapMillis) {
+            c.alertedInBurst = false;
+        }
+
+        c.title = title;
+        if (c.messages.size() == maxMessages) {
+            c.messages.pollFirst();
+        }
+        c.messages.addLast(message);
+        if (priorityContact != null) {
+            // The conversation stays on the contact's channel while its messages are shown
+            c.priorityContact = priorityContact;
+            c.soundUri = soundUri;
+            c.priorityPending |= mayAlert;
+        }
+
+        if (c.isPending()) {
+            coalesced++;
+            FilterMetrics.GLOBAL.increment(FilterMetrics.Counter.COALESCED);
+        } else {
+            c.firstPendingAt = nowMillis;
+        }
+        c.lastMessageAt = nowMillis;
+    }
+
+    /**
+     * Returns the conversations whose debounce window has elapsed, marking
+     * them flushed, and any pending conversation evicted to make room.
+     */
+    public synchronized List<Flush> flushDue(long nowMillis) {
+        List<Flush> due = null;
+        if (!evicted.isEmpty()) {
+            due = new ArrayList<>(evicted);
+            evicted.clear();
+        }
+        for (Conversation c : conversations.values()) {
+            if (c.isPending() && deadline(c) <= nowMillis) {
+                if (due == null) {
+                    due = new ArrayList<>();
+                }
+                due.add(flush(c));
+            }
+        }
+        return due != null ? due : Collections.<Flush>emptyList();
+    }
+
+    private Flush flush(Conversation c) {
+        boolean alert = c.priorityPending && !c.alertedInBurst;
+        c.alertedInBurst |= alert;
+        c.priorityPending = false;
+        c.firstPendingAt = -1;
+        flushes++;
+        return new Flush(c, alert);
+    }
+
+    /**
+     * Flushes the given conversations now, if pending, instead of after the
+     * debounce window. Used for the backlog found when the listener
+     * connects. A conversation also holding a live priority message still
+     * alerts for it; one holding only messages added with {@code mayAlert}
+     * false does not, as those made their sound when first posted.
+     */
+    public synchronized List<Flush> flushPending(Collection<String> conversationKeys) {
+        List<Flush> due = new ArrayList<>();
+        for (String key : conversationKeys) {
+            Conversation c = conversations.get(key);
+            if (c != null && c.isPending()) {
+                due.add(flush(c));
+            }
+        }
+        return due;
+    }
+
+    /** Milliseconds until the next conversation is due, 0 if one is due now, or -1 if none is pending. */
+    public synchronized long nextFlushDelay(long nowMillis) {
+        if (!evicted.isEmpty()) {
+            return 0;
+        }
+        long next = Long.MAX_VALUE;
+        for (Conversation c : conversations.values()) {
+            if (c.isPending()) {
+                next = Math.min(next, deadline(c));
+            }
+        }
+        return next == Long.MAX_VALUE ? -1 : Math.max(0, next - nowMillis);
+    }
+
+    /** Whether the conversation is shown on a priority contact's channel, so its other messages belong there too. */
+    public synchronized boolean isPriority(String conversationKey) {
+        Conversation c = conversations.get(conversationKey);
+        return c != null && c.priorityContact != null;
+    }
+
+    /**
+     * Forgets a conversation's shown messages once its notification was dismissed or opened.
+     *
+     * @param conversationKey the removed notification's tag
+     */
+    public synchronized void onNotificationRemoved(String conversationKey) {
+        Conversation c = conversations.get(conversationKey);
+        if (c != null && !c.isPending()) {
+            c.messages.clear();
+            c.priorityContact = null;
+            c.soundUri = null;
+            c.alertedInBurst = false;
+        }
+    }
+
+    private long deadline(Conversation c) {
+        return Math.min(c.lastMessageAt + debounceMillis, c.firstPendingAt + maxDelayMillis);
+    }
+
+    /** Messages merged into an already pending update instead of causing their own post. */
+    public synchronized long coalesced() {
+        return coalesced;
+    }
+
+    public synchronized long flushes() {
+        return flushes;
+    }
+}
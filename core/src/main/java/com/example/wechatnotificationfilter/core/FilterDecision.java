@@ -0,0 +1,57 @@
+package com.example.wechatnotificationfilter.core;
+
+/**
+ * Result of classifying one notification: whether it should be reposted
+ * audibly, and for which contact and sound. Who said what stays in the
+ * classifier's {@link MessageTextParser.Result}.
+ *
+ * <p>A message that is not from a priority contact can still be escalated
+ * by a keyword or an @mention; it is then reposted audibly under its
+ * conversation title with the default sound.
+ *
+ * <p>A matching user {@link Rule} takes precedence over both and may also
+ * drop the message or send it to the digest.
+ *
+ * <p>Decisions carry nothing from the message text, so the classifier
+ * shares one instance per outcome: {@link #SILENT}, one per priority
+ * contact and one per non-loud rule.
+ */
+public final class FilterDecision {
+    public final RuleAction action;
+    /** Same as {@code action == LOUD}. */
+    public final boolean priority;
+    public final String contactName;
+    public final String soundUri;
+    /** Keyword (or {@link #MENTION}) that escalated the message; null if it was not escalated. */
+    public final String escalatedBy;
+
+    /** Index of the rule that decided, or -1 if no rule matched. */
+    public final int rule;
+
+    public static final String MENTION = "@mention";
+
+    public static final FilterDecision SILENT = new FilterDecision(RuleAction.SILENT, null, null, null, -1);
+
+    private FilterDecision(RuleAction action, String contactName, String soundUri, String escalatedBy, int rule) {
+        this.action = action;
+        this.priority = action == RuleAction.LOUD;
+        this.contactName = contactName;
+        this.soundUri = soundUri;
+        this.escalatedBy = escalatedBy;
+        this.rule = rule;
+    }
+
+    public static FilterDecision priority(String contactName, String soundUri) {
+        return new FilterDecision(RuleAction.LOUD, contactName, soundUri, null, -1);
+    }
+
+    public static FilterDecision escalated(String conversation, String escalatedBy) {
+        return new FilterDecision(RuleAction.LOUD, conversation, null, escalatedBy, -1);
+    }
+
+    /** Decision of rule {@code index}; loud rules repost under the conversation title. */
+    public static FilterDecision byRule(Rule rule, int index, String conversation) {
+        boolean loud = rule.action == RuleAction.LOUD;
+        return new FilterDecision(rule.action, loud ? conversation : null, loud ? rule.sound : null, null, index);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms and counters for the notification filter. The
+ * service records into {@link #GLOBAL}; dumpsys and the stats panel in
+ * the main screen read from it.
+ */
+public final class FilterMetrics {
+    public static final FilterMetrics GLOBAL = new FilterMetrics();
+
+    public enum Stage {
+        /** Splitting the text into sender and body. */
+        PARSE,
+        /** Whole classification, parse included. */
+        CLASSIFY,
+        /** Looking up (or creating) the channel for a repost. */
+        CHANNEL,
+        /** The NotificationManager.notify() call. */
+        NOTIFY,
+        /** Listener callback until the original is cancelled and the message buffered. */
+        END_TO_END,
+        /** Contact edit requested until the filter's snapshot reflects it. */
+        CONFIG,
+        /** Listener connected until the notifications already showing are filtered and reposted. */
+        CONNECT,
+        /** Appending one record to the notification history. */
+        HISTORY,
+        /** How long each storm lasted, from entering storm mode to leaving it. */
+        STORM
+    }
+
+    public enum Counter {
+        /** WeChat callbacks, before duplicate suppression. */
+        RECEIVED,
+        /** Callbacks dropped as a repost of a notification already handled. */
+        DUPLICATE,
+        /** WeChat notifications already showing when the listener connected. */
+        BACKLOG,
+        PRIORITY,
+        SILENT,
+        /** Priority post left silent because the contact used up its alerts. */
+        THROTTLED,
+        /** Not from a priority contact, but alerted for a keyword or @mention. */
+        ESCALATED,
+        /** Dropped by a user rule. */
+        RULE_DROPPED,
+        /** Sent to the digest by a user rule. */
+        DIGESTED,
+        /** Dropped from the full pipeline queue. */
+        DROPPED,
+        /** Merged into a pending queue entry or conversation update instead of posted alone. */
+        COALESCED,
+        /** Times the message rate turned storm mode on. */
+        STORM_ENTERED,
+        /** Non-priority messages only counted and cancelled during a storm. */
+        STORM_SUPPRESSED
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+
+    public FilterMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void recordLatency(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    public long count(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /** Multi-line report with p50/p90/p99/max per stage, in microseconds. */
+    public void dump(PrintWriter out) {
+        out.println("Counters:");
+        for (Counter counter : Counter.values()) {
+            out.println(String.format(Locale.US, "  %-12s %d", counter.name().toLowerCase(Locale.US), count(counter)));
+        }
+        long received = count(Counter.RECEIVED);
+        out.println(String.format(Locale.US, "  %-12s %.1f%%", "dedup rate",
+                received == 0 ? 0.0 : 100.0 * count(Counter.DUPLICATE) / received));
+        out.println("Latency (us):        count      p50      p90      p99      max");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = histogram(stage);
+            out.println(String.format(Locale.US, "  %-12s %12d %8.1f %8.1f %8.1f %8.1f",
+                    stage.name().toLowerCase(Locale.US), h.count(),
+                    h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3, h.max() / 1e3));
+        }
+        LatencyHistogram connect = histogram(Stage.CONNECT);
+        if (connect.count() > 0) {
+            double seconds = connect.mean() * connect.count() / 1e9;
+            out.println(String.format(Locale.US, "Backlog at connect: %d notifications in %d batches, %.0f/s",
+                    count(Counter.BACKLOG), connect.count(), seconds > 0 ? count(Counter.BACKLOG) / seconds : 0.0));
+        }
+        out.flush();
+    }
+}
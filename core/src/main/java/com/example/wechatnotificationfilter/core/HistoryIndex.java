@@ -0,0 +1,428 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Full-text search over the {@link NotificationHistory}: an in-memory
+ * inverted index over each record's title and text, updated as records are
+ * appended.
+ *
+ * <p>Chinese, Japanese and Korean text has no spaces to split on, so every
+ * character and every pair of adjacent characters is a term; a query of
+ * any length is then the intersection of its pairs. Other letters and
+ * digits are split into lower-cased words. Terms are identified by a 64-bit
+ * hash, so tokenizing allocates nothing.
+ *
+ * <p>Each term's postings are the document numbers containing it, stored
+ * as variable-length deltas: most messages take one or two bytes per term.
+ * A query intersects the postings of its terms, rarest first, then reads
+ * the candidates from the history newest first and keeps those whose
+ * normalized title or text really contains the query, since word and pair
+ * matches alone can come from different places in a message.
+ *
+ * <p>The index is not persisted; {@link #build} replays the history when
+ * the process starts. Expired records stay in the postings until more
+ * than half of the documents have expired, then the index is rebuilt.
+ * Thread-safe.
+ */
+public final class HistoryIndex {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Mixed into pair hashes so a pair never collides with a word of the same characters
+    private static final long PAIR_SEED = 0x9e3779b97f4a7c15L;
+    private static final int INITIAL_TERMS = 1024;
+    private static final int INITIAL_DOCUMENTS = 1024;
+    // How often add() checks for expired documents
+    private static final int PRUNE_INTERVAL = 4096;
+
+    private final NotificationHistory history;
+    // History cursor per document number; ascending, as the history only grows
+    private long[] documents = new long[INITIAL_DOCUMENTS];
+    private int documentCount;
+    // Open-addressed term hash -> term number + 1
+    private long[] termHashes = new long[INITIAL_TERMS * 2];
+    private int[] termSlots = new int[INITIAL_TERMS * 2];
+    private int termCount;
+    // Per term: varint deltas of document numbers, bytes used, last document and document count
+    private byte[][] postings = new byte[INITIAL_TERMS][];
+    private int[] postingLength = new int[INITIAL_TERMS];
+    private int[] lastDocument = new int[INITIAL_TERMS];
+    private int[] documentFrequency = new int[INITIAL_TERMS];
+    private long postingBytes;
+    // Terms of the query being run, reused between searches
+    private long[] queryTerms = new long[16];
+    private int queryTermCount;
+
+    public HistoryIndex(NotificationHistory history) {
+        this.history = history;
+    }
+
+    /** An index over everything already in {@code history}. */
+    public static HistoryIndex build(NotificationHistory history) {
+        HistoryIndex index = new HistoryIndex(history);
+        history.replay(entry -> index.addDocument(entry.cursor, entry.title, entry.text));
+        return index;
+    }
+
+    /**
+     * Indexes the record {@link NotificationHistory#append} stored at
+     * {@code cursor}. Records already indexed, by {@link #build} replaying
+     * the history for instance, are skipped.
+     */
+    public synchronized void add(long cursor, String title, String text) {
+        if (documentCount > 0 && documentCount % PRUNE_INTERVAL == 0) {
+            pruneIfStale();
+        }
+        addDocument(cursor, title, text);
+    }
+
+    private synchronized void addDocument(long cursor, String title, String text) {
+        if (documentCount > 0 && cursor <= documents[documentCount - 1]) {
+            return;
+        }
+        if (documentCount == documents.length) {
+            documents = Arrays.copyOf(documents, documentCount * 2);
+        }
+        int document = documentCount++;
+        documents[document] = cursor;
+        if (title != null) {
+            forEachTerm(title, document);
+        }
+        if (text != null) {
+            forEachTerm(text, document);
+        }
+    }
+
+    // Rebuilds from the history once expired documents make up more than half of the index
+    private void pruneIfStale() {
+        int expired = expiredBefore(history.firstCursor());
+        if (expired * 2 <= documentCount) {
+            return;
+        }
+        documents = new long[INITIAL_DOCUMENTS];
+        documentCount = 0;
+        termHashes = new long[INITIAL_TERMS * 2];
+        termSlots = new int[INITIAL_TERMS * 2];
+        termCount = 0;
+        postings = new byte[INITIAL_TERMS][];
+        postingLength = new int[INITIAL_TERMS];
+        lastDocument = new int[INITIAL_TERMS];
+        documentFrequency = new int[INITIAL_TERMS];
+        postingBytes = 0;
+        history.replay(entry -> addDocument(entry.cursor, entry.title, entry.text));
+    }
+
+    // Number of documents whose cursor is below firstCursor
+    private int expiredBefore(long firstCursor) {
+        int index = Arrays.binarySearch(documents, 0, documentCount, firstCursor);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Records in the history whose title or text contains every
+     * space-separated part of {@code query}, ignoring case, width and emoji
+     * as {@link ContactIndex#normalize} does; newest first.
+     *
+     * @param limit most records to return
+     */
+    public List<NotificationHistory.Entry> search(CharSequence query, int limit) {
+        List<String> needles = new ArrayList<>();
+        for (String part : query.toString().split("\\s+")) {
+            String needle = ContactIndex.normalize(part);
+            if (!needle.isEmpty()) {
+                needles.add(needle);
+            }
+        }
+        List<NotificationHistory.Entry> hits = new ArrayList<>(Math.min(limit, 64));
+        if (needles.isEmpty()) {
+            return hits;
+        }
+        long[] cursors;
+        synchronized (this) {
+            int[] candidates = candidates(query);
+            if (candidates == null) {
+                return hits;
+            }
+            // Cursors rather than document numbers: a rebuild renumbers the documents
+            int firstLive = expiredBefore(history.firstCursor());
+            int from = 0;
+            while (from < candidates.length && candidates[from] < firstLive) {
+                from++;
+            }
+            cursors = new long[candidates.length - from];
+            for (int c = from; c < candidates.length; c++) {
+                cursors[c - from] = documents[candidates[c]];
+            }
+        }
+        // Terms can match in different places, so each candidate is checked against the record itself;
+        // the history is read outside the lock so appends are not held up by it
+        for (int c = cursors.length - 1; c >= 0 && hits.size() < limit; c--) {
+            NotificationHistory.Entry entry = history.read(cursors[c]);
+            if (entry != null && containsAll(entry, needles)) {
+                hits.add(entry);
+            }
+        }
+        return hits;
+    }
+
+    private static boolean containsAll(NotificationHistory.Entry entry, List<String> needles) {
+        String title = entry.title != null ? ContactIndex.normalize(entry.title) : "";
+        String text = entry.text != null ? ContactIndex.normalize(entry.text) : "";
+        for (String needle : needles) {
+            if (!title.contains(needle) && !text.contains(needle)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Documents holding every term of the query, ascending; null if the query has no terms
+    private int[] candidates(CharSequence query) {
+        int count = queryTerms(query);
+        if (count == 0) {
+            return null;
+        }
+        int[] terms = new int[count];
+        for (int i = 0; i < count; i++) {
+            int slot = findSlot(queryTerms[i]);
+            if (termSlots[slot] == 0) {
+                return new int[0];
+            }
+            terms[i] = termSlots[slot] - 1;
+        }
+        // Rarest first, so every later list only filters an already short one
+        sortByFrequency(terms);
+
+        int[] result = decode(terms[0]);
+        int size = result.length;
+        for (int t = 1; t < terms.length && size > 0; t++) {
+            size = intersect(terms[t], result, size);
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private void sortByFrequency(int[] terms) {
+        for (int i = 1; i < terms.length; i++) {
+            int term = terms[i];
+            int j = i - 1;
+            while (j >= 0 && documentFrequency[terms[j]] > documentFrequency[term]) {
+                terms[j + 1] = terms[j];
+                j--;
+            }
+            terms[j + 1] = term;
+        }
+    }
+
+    private int[] decode(int term) {
+        int[] result = new int[documentFrequency[term]];
+        byte[] bytes = postings[term];
+        int document = 0;
+        for (int i = 0, p = 0; i < result.length; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[p++];
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            document += delta;
+            result[i] = document;
+        }
+        return result;
+    }
+
+    // Keeps the documents in result[0, size) that are also in the term's postings; returns the new size
+    private int intersect(int term, int[] result, int size) {
+        byte[] bytes = postings[term];
+        int length = postingLength[term];
+        int kept = 0;
+        int document = 0;
+        int p = 0;
+        for (int r = 0; r < size && p < length; ) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[p++];
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            document += delta;
+            while (r < size && result[r] < document) {
+                r++;
+            }
+            if (r < size && result[r] == document) {
+                result[kept++] = document;
+                r++;
+            }
+        }
+        return kept;
+    }
+
+    // Hashes the query's terms into queryTerms, duplicates included; returns how many
+    private int queryTerms(CharSequence query) {
+        queryTermCount = 0;
+        forEachTerm(query, -1);
+        return queryTermCount;
+    }
+
+    /**
+     * Splits text into terms: words of letters and digits, and for CJK
+     * characters each character and each adjacent pair. Case and
+     * full-width forms are folded as {@link ContactIndex} folds them.
+     *
+     * @param document where to post the terms, or -1 to collect them into queryTerms
+     */
+    private void forEachTerm(CharSequence text, int document) {
+        long word = FNV_OFFSET;
+        int wordLength = 0;
+        int previousCjk = -1;
+        for (int i = 0, n = text.length(); i <= n; ) {
+            int cp;
+            if (i < n) {
+                int raw = Character.codePointAt(text, i);
+                i += Character.charCount(raw);
+                cp = fold(raw);
+            } else {
+                // Ends the last word
+                cp = ' ';
+                i++;
+            }
+            if (isCjk(cp)) {
+                if (wordLength > 0) {
+                    term(word, document);
+                    word = FNV_OFFSET;
+                    wordLength = 0;
+                }
+                term((FNV_OFFSET ^ cp) * FNV_PRIME, document);
+                if (previousCjk >= 0) {
+                    term((((PAIR_SEED ^ previousCjk) * FNV_PRIME) ^ cp) * FNV_PRIME, document);
+                }
+                previousCjk = cp;
+            } else if (Character.isLetterOrDigit(cp)) {
+                word = (word ^ cp) * FNV_PRIME;
+                wordLength++;
+                previousCjk = -1;
+            } else {
+                if (wordLength > 0) {
+                    term(word, document);
+                    word = FNV_OFFSET;
+                    wordLength = 0;
+                }
+                previousCjk = -1;
+            }
+        }
+    }
+
+    private void term(long hash, int document) {
+        if (document >= 0) {
+            post(hash, document);
+        } else {
+            if (queryTermCount == queryTerms.length) {
+                queryTerms = Arrays.copyOf(queryTerms, queryTermCount * 2);
+            }
+            queryTerms[queryTermCount++] = hash;
+        }
+    }
+
+    private static int fold(int cp) {
+        if (cp >= 0xff01 && cp <= 0xff5e) {
+            // Full-width ASCII
+            cp = cp - 0xff01 + 0x21;
+        }
+        return Character.toLowerCase(cp);
+    }
+
+    // Han ideographs, kana and Hangul syllables
+    private static boolean isCjk(int cp) {
+        return (cp >= 0x4e00 && cp <= 0x9fff)
+                || (cp >= 0x3400 && cp <= 0x4dbf)
+                || (cp >= 0x3040 && cp <= 0x30ff)
+                || (cp >= 0xac00 && cp <= 0xd7a3)
+                || (cp >= 0x20000 && cp <= 0x2ffff);
+    }
+
+    // Appends the document to the term's postings, once per document
+    private void post(long hash, int document) {
+        int slot = findSlot(hash);
+        int term;
+        if (termSlots[slot] == 0) {
+            if ((termCount + 1) * 2 > termSlots.length) {
+                growTerms();
+                slot = findSlot(hash);
+            }
+            term = termCount++;
+            termHashes[slot] = hash;
+            termSlots[slot] = term + 1;
+            postings[term] = new byte[4];
+            lastDocument[term] = 0;
+        } else {
+            term = termSlots[slot] - 1;
+            if (documentFrequency[term] > 0 && lastDocument[term] == document) {
+                return;
+            }
+        }
+
+        int delta = document - lastDocument[term];
+        byte[] bytes = postings[term];
+        int length = postingLength[term];
+        if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            postings[term] = bytes;
+        }
+        int start = length;
+        while ((delta & ~0x7f) != 0) {
+            bytes[length++] = (byte) ((delta & 0x7f) | 0x80);
+            delta >>>= 7;
+        }
+        bytes[length++] = (byte) delta;
+        postingBytes += length - start;
+        postingLength[term] = length;
+        lastDocument[term] = document;
+        documentFrequency[term]++;
+    }
+
+    private int findSlot(long hash) {
+        int mask = termSlots.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (termSlots[slot] != 0 && termHashes[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growTerms() {
+        long[] oldHashes = termHashes;
+        int[] oldSlots = termSlots;
+        termHashes = new long[oldHashes.length * 2];
+        termSlots = new int[oldSlots.length * 2];
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != 0) {
+                int slot = findSlot(oldHashes[i]);
+                termHashes[slot] = oldHashes[i];
+                termSlots[slot] = oldSlots[i];
+            }
+        }
+        int capacity = termSlots.length / 2;
+        postings = Arrays.copyOf(postings, capacity);
+        postingLength = Arrays.copyOf(postingLength, capacity);
+        lastDocument = Arrays.copyOf(lastDocument, capacity);
+        documentFrequency = Arrays.copyOf(documentFrequency, capacity);
+    }
+
+    public synchronized int documents() {
+        return documentCount;
+    }
+
+    public synchronized int terms() {
+        return termCount;
+    }
+
+    /** Bytes of compressed postings, not counting array slack. */
+    public synchronized long postingBytes() {
+        return postingBytes;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.wechatnotificationfilter.core;
+
+/**
+ * The fields of a posted notification that the filter needs, copied out of
+ * the StatusBarNotification on the listener thread so the rest of the work
+ * can run on the pipeline worker.
+ */
+public final class IncomingNotification {
+    public final String key;
+    public final String packageName;
+    public final String title;
+    public final String text;
+    public final long postTime;
+    public final long ingestNanos;
+    /** The notification's large icon as posted (an Icon on Android), or null. Only a reference is copied. */
+    public final Object avatar;
+    /** Already showing when the listener connected, so it made its sound before we saw it. */
+    public final boolean backlog;
+
+    public IncomingNotification(String key, String packageName, String title, String text,
+                                long postTime, long ingestNanos) {
+        this(key, packageName, title, text, postTime, ingestNanos, null);
+    }
+
+    public IncomingNotification(String key, String packageName, String title, String text,
+                                long postTime, long ingestNanos, Object avatar) {
+        this(key, packageName, title, text, postTime, ingestNanos, avatar, false);
+    }
+
+    public IncomingNotification(String key, String packageName, String title, String text,
+                                long postTime, long ingestNanos, Object avatar, boolean backlog) {
+        this.key = key;
+        this.packageName = packageName;
+        this.title = title;
+        this.text = text;
+        this.postTime = postTime;
+        this.ingestNanos = ingestNanos;
+        this.avatar = avatar;
+        this.backlog = backlog;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a fixed keyword list: finds whether any of
+ * hundreds of keywords occurs in a message in a single pass over its
+ * characters, independent of how many keywords there are.
+ *
+ * <p>Works on UTF-16 chars, so CJK keywords need no segmentation: "开会"
+ * matches inside "明天开会别迟到". Matching ignores case. The automaton is
+ * immutable and flattened into arrays after {@link #compile}; matching is
+ * safe from any thread and never allocates. Build a new one when the
+ * keyword list changes.
+ */
+public final class KeywordMatcher {
+    public static final KeywordMatcher EMPTY = compile(new ArrayList<String>());
+
+    private final String[] keywords;
+    // Edges of state s are edgeChars/edgeTargets[edgeStart[s] .. edgeStart[s + 1]), sorted by char
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    // Keyword ending at this state or at one of its suffix states, -1 for none
+    private final int[] output;
+    // Every keyword ending at state s: matchIds[matchStart[s] .. matchStart[s + 1])
+    private final int[] matchStart;
+    private final int[] matchIds;
+
+    private KeywordMatcher(String[] keywords, int[] edgeStart, char[] edgeChars, int[] edgeTargets,
+                           int[] fail, int[] output, int[] matchStart, int[] matchIds) {
+        this.keywords = keywords;
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.output = output;
+        this.matchStart = matchStart;
+        this.matchIds = matchIds;
+    }
+
+    /** Builds the automaton; blank keywords are ignored and duplicates collapsed. */
+    public static KeywordMatcher compile(Collection<String> keywordList) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String keyword : keywordList) {
+            String folded = fold(keyword.trim());
+            if (!folded.isEmpty()) {
+                unique.add(folded);
+            }
+        }
+        String[] keywords = unique.toArray(new String[0]);
+
+        // Trie with sorted edges, state 0 is the root
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(-1);
+        for (int k = 0; k < keywords.length; k++) {
+            int state = 0;
+            for (int i = 0; i < keywords[k].length(); i++) {
+                Integer next = trie.get(state).get(keywords[k].charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(keywords[k].charAt(i), next);
+                    trie.add(new TreeMap<>());
+                    terminal.add(-1);
+                }
+                state = next;
+            }
+            terminal.set(state, k);
+        }
+
+        int states = trie.size();
+        int[] edgeStart = new int[states + 1];
+        for (int s = 0; s < states; s++) {
+            edgeStart[s + 1] = edgeStart[s] + trie.get(s).size();
+        }
+        char[] edgeChars = new char[edgeStart[states]];
+        int[] edgeTargets = new int[edgeStart[states]];
+        for (int s = 0; s < states; s++) {
+            int e = edgeStart[s];
+            for (Map.Entry<Character, Integer> edge : trie.get(s).entrySet()) {
+                edgeChars[e] = edge.getKey();
+                edgeTargets[e] = edge.getValue();
+                e++;
+            }
+        }
+
+        // Failure links breadth-first, so a state's fail target is always finished first
+        int[] fail = new int[states];
+        int[] output = new int[states];
+        Arrays.fill(output, -1);
+        List<List<Integer>> matches = new ArrayList<>(states);
+        for (int s = 0; s < states; s++) {
+            matches.add(new ArrayList<>());
+        }
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            fail[edgeTargets[e]] = 0;
+            queue.add(edgeTargets[e]);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            output[state] = terminal.get(state) >= 0 ? terminal.get(state) : output[fail[state]];
+            if (terminal.get(state) >= 0) {
+                matches.get(state).add(terminal.get(state));
+            }
+            matches.get(state).addAll(matches.get(fail[state]));
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                int child = edgeTargets[e];
+                int f = fail[state];
+                int target;
+                while ((target = edge(edgeStart, edgeChars, edgeTargets, f, edgeChars[e])) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = target >= 0 ? target : 0;
+                queue.add(child);
+            }
+        }
+        int[] matchStart = new int[states + 1];
+        for (int s = 0; s < states; s++) {
+            matchStart[s + 1] = matchStart[s] + matches.get(s).size();
+        }
+        int[] matchIds = new int[matchStart[states]];
+        for (int s = 0; s < states; s++) {
+            for (int m = 0; m < matches.get(s).size(); m++) {
+                matchIds[matchStart[s] + m] = matches.get(s).get(m);
+            }
+        }
+        return new KeywordMatcher(keywords, edgeStart, edgeChars, edgeTargets, fail, output, matchStart, matchIds);
+    }
+
+    private static int edge(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                low = mid + 1;
+            } else if (m > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static String fold(String keyword) {
+        StringBuilder folded = new StringBuilder(keyword.length());
+        for (int i = 0; i < keyword.length(); i++) {
+            folded.append(Character.toLowerCase(keyword.charAt(i)));
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Returns the index of the first keyword found in {@code text} (the one
+     * ending earliest), or -1 if none occurs. Null text matches nothing.
+     */
+    public int find(CharSequence text) {
+        if (text == null || keywords.length == 0) {
+            return -1;
+        }
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = edge(edgeStart, edgeChars, edgeTargets, state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next >= 0 ? next : 0;
+            if (output[state] >= 0) {
+                return output[state];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * ORs {@code masks[k]} into {@code into} at {@code offset} for every
+     * keyword {@code k} that occurs anywhere in {@code text}. Used to
+     * intersect keyword conditions with other bitset dimensions; never
+     * allocates.
+     */
+    public void orMatchMasks(CharSequence text, long[][] masks, long[] into, int offset) {
+        if (text == null || keywords.length == 0) {
+            return;
+        }
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = edge(edgeStart, edgeChars, edgeTargets, state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next >= 0 ? next : 0;
+            for (int m = matchStart[state]; m < matchStart[state + 1]; m++) {
+                long[] mask = masks[matchIds[m]];
+                for (int w = 0; w < mask.length; w++) {
+                    into[offset + w] |= mask[w];
+                }
+            }
+        }
+    }
+
+    /** Index of {@code keyword} (folded as in {@link #compile}), or -1 if it is not in the list. */
+    public int indexOf(String keyword) {
+        String folded = fold(keyword.trim());
+        for (int k = 0; k < keywords.length; k++) {
+            if (keywords[k].equals(folded)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** The keyword at {@code index}, lower-cased as it is matched. */
+    public String keyword(int index) {
+        return keywords[index];
+    }
+
+    public int size() {
+        return keywords.length;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.Arrays;
+
+/**
+ * Resolves an app's launch target once and hands out a small, fixed set of
+ * content intents built from it, one per conversation slot.
+ *
+ * <p>Each conversation maps onto one of {@code slotCount} slots, and each
+ * slot's intent is built the first time it is asked for. However many
+ * notifications are posted, no more than {@code slotCount} intents are ever
+ * created until {@link #invalidate()} is called (for example when the
+ * target app is reinstalled).
+ *
+ * @param <T> resolved launch target (an Intent on Android)
+ * @param <P> per-slot content intent (a PendingIntent on Android)
+ */
+public final class LaunchIntentCache<T, P> {
+
+    public interface Resolver<T, P> {
+        /** Looks up the launch target; returns null if the app is not installed. */
+        T resolve();
+
+        P create(T target, int slot);
+    }
+
+    private final Resolver<T, P> resolver;
+    private final Object[] slots;
+    private T target;
+    private boolean resolved;
+
+    public LaunchIntentCache(Resolver<T, P> resolver, int slotCount) {
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException("slotCount must be positive: " + slotCount);
+        }
+        this.resolver = resolver;
+        this.slots = new Object[slotCount];
+    }
+
+    /**
+     * Returns the content intent for a conversation, or null if the target
+     * app could not be resolved.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized P get(int conversationHash) {
+        if (!resolved) {
+            target = resolver.resolve();
+            resolved = true;
+        }
+        if (target == null) {
+            return null;
+        }
+        int slot = Math.floorMod(conversationHash, slots.length);
+        P intent = (P) slots[slot];
+        if (intent == null) {
+            intent = resolver.create(target, slot);
+            slots[slot] = intent;
+        }
+        return intent;
+    }
+
+    /** Forgets the resolved target and every slot; the next {@link #get} resolves again. */
+    public synchronized void invalidate() {
+        target = null;
+        resolved = false;
+        Arrays.fill(slots, null);
+    }
+
+    public int slotCount() {
+        return slots.length;
+    }
+}
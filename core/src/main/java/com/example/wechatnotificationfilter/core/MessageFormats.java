@@ -0,0 +1,83 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The notification text layouts the parser understands, per UI language
+ * (and per app where it differs from WeChat's). A notification's text is
+ *
+ * <pre>
+ *   [counter][mention or everyone tag][sender separator]body
+ *   e.g. "[3条]张三: 晚上吃饭吗"   "[2 messages] Alice: see you"   "[有人@我]李四：@我 开会"
+ * </pre>
+ *
+ * where every part except the body is optional. Adding a language means
+ * adding a {@link Format} with its counter suffixes, tags and
+ * separators to {@link #DEFAULTS}.
+ */
+public final class MessageFormats {
+
+    public static final class Format {
+        public final String name;
+        /** Text that closes an unread counter after its digits, e.g. "条]" in "[3条]". */
+        public final List<String> counterSuffixes;
+        /** Bracketed tags WeChat puts before the sender when the user is mentioned. */
+        public final List<String> mentionTags;
+        /**
+         * Bracketed tags in the same place for a mention of everyone, such as
+         * "[@所有人]". They are skipped to find the sender but are not a
+         * mention of the user: any member can send one, so escalating them
+         * would let a busy group bypass the filter. Add "@所有人" as a keyword
+         * to be alerted anyway.
+         */
+        public final List<String> everyoneTags;
+        /** Characters separating the sender from the body. */
+        public final String separators;
+
+        public Format(String name, List<String> counterSuffixes, List<String> mentionTags,
+                      List<String> everyoneTags, String separators) {
+            this.name = name;
+            this.counterSuffixes = Collections.unmodifiableList(counterSuffixes);
+            this.mentionTags = Collections.unmodifiableList(mentionTags);
+            this.everyoneTags = Collections.unmodifiableList(everyoneTags);
+            this.separators = separators;
+        }
+
+        public Format(String name, List<String> counterSuffixes, List<String> mentionTags, String separators) {
+            this(name, counterSuffixes, mentionTags, Collections.<String>emptyList(), separators);
+        }
+    }
+
+    public static final Format SIMPLIFIED_CHINESE = new Format("zh-CN",
+            Arrays.asList("条]"),
+            Arrays.asList("[有人@我]"),
+            Arrays.asList("[@所有人]"),
+            ":：");
+
+    public static final Format TRADITIONAL_CHINESE = new Format("zh-TW",
+            Arrays.asList("則]", "條]"),
+            Arrays.asList("[有人@我]"),
+            Arrays.asList("[@所有人]"),
+            ":：");
+
+    public static final Format ENGLISH = new Format("en",
+            Arrays.asList(" messages]", " message]", "]"),
+            Arrays.asList("[Mentioned]", "[@Me]"),
+            Arrays.asList("[@All]"),
+            ":");
+
+    /** Telegram: "Sender: body" in group chats, with no counter or mention tag in the text. */
+    public static final Format TELEGRAM = new Format("telegram",
+            Collections.<String>emptyList(),
+            Collections.<String>emptyList(),
+            ":");
+
+    /** WeChat's layouts, also used by WeCom and QQ. */
+    public static final List<Format> DEFAULTS = Collections.unmodifiableList(
+            Arrays.asList(SIMPLIFIED_CHINESE, TRADITIONAL_CHINESE, ENGLISH));
+
+    private MessageFormats() {
+    }
+}
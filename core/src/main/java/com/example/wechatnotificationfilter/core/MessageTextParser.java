@@ -0,0 +1,291 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits WeChat notification text into unread counter, mention tag, sender
+ * and body in a single left-to-right pass.
+ *
+ * <p>The parser records offsets into the original text in a caller-owned
+ * {@link Result}, so parsing allocates nothing; the sender and body strings
+ * are only created if the caller asks for them, and {@link Result#senderView}
+ * and {@link Result#bodyView} let it match them without any. Only the first separator is
+ * considered, so colons inside the message body never move the sender
+ * boundary, and a colon that is part of a URL ("https://") or a time
+ * ("12:30") is not taken as one.
+ *
+ * <p>A parser is immutable and can be shared; a {@code Result} belongs to
+ * one thread.
+ */
+public final class MessageTextParser {
+    /** Longest text before a separator that is still treated as a sender name. */
+    static final int MAX_SENDER_LENGTH = 40;
+
+    public static final class Result {
+        private String text;
+        private int senderStart;
+        private int senderEnd;
+        private int bodyStart;
+        private int unreadCount;
+        private boolean mentioned;
+        private boolean group;
+        private final Region senderView = new Region();
+        private final Region bodyView = new Region();
+
+        void reset(String text) {
+            this.text = text;
+            senderStart = senderEnd = bodyStart = 0;
+            unreadCount = 0;
+            mentioned = false;
+            group = false;
+        }
+
+        public boolean hasSender() {
+            return senderEnd > senderStart;
+        }
+
+        /** Sender name, or "" if the text had no sender prefix. Allocates. */
+        public String sender() {
+            return hasSender() ? text.substring(senderStart, senderEnd) : "";
+        }
+
+        /** Whether the sender equals {@code name}, without creating the sender string. */
+        public boolean senderEquals(String name) {
+            int length = senderEnd - senderStart;
+            return name != null && hasSender() && name.length() == length
+                    && text.regionMatches(senderStart, name, 0, length);
+        }
+
+        /** Message text after the counter, mention tag and sender. Allocates. */
+        public String body() {
+            return text == null ? "" : text.substring(bodyStart);
+        }
+
+        /** The sender as a view over the text, "" if there is none; valid until the next parse. */
+        public CharSequence senderView() {
+            return hasSender() ? senderView.of(text, senderStart, senderEnd) : "";
+        }
+
+        /** The body as a view over the text; valid until the next parse. */
+        public CharSequence bodyView() {
+            return text == null ? "" : bodyView.of(text, bodyStart, text.length());
+        }
+
+        public String text() {
+            return text;
+        }
+
+        public int senderStart() {
+            return senderStart;
+        }
+
+        public int senderEnd() {
+            return senderEnd;
+        }
+
+        /** The "[n条]" counter WeChat adds when several messages are unread, or 0. */
+        public int unreadCount() {
+            return unreadCount;
+        }
+
+        /** WeChat tagged the message as mentioning the user ("[有人@我]"). */
+        public boolean isMentioned() {
+            return mentioned;
+        }
+
+        /** The sender differs from the conversation title, so this is a group chat. */
+        public boolean isGroup() {
+            return group;
+        }
+    }
+
+    /** A reusable window onto part of a string; {@link #toString} is the only call that allocates. */
+    private static final class Region implements CharSequence {
+        private String text;
+        private int start;
+        private int end;
+
+        Region of(String text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return text.substring(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return text.substring(start, end);
+        }
+    }
+
+    private final String[] counterSuffixes;
+    // Mention and everyone tags, longest first; whether each one is a mention of the user
+    private final String[] tags;
+    private final boolean[] tagMentions;
+    private final char[] separators;
+
+    public MessageTextParser(Collection<MessageFormats.Format> formats) {
+        Set<String> suffixes = new LinkedHashSet<>();
+        Set<String> tags = new LinkedHashSet<>();
+        Set<String> mentionTags = new HashSet<>();
+        StringBuilder separatorChars = new StringBuilder();
+        for (MessageFormats.Format format : formats) {
+            suffixes.addAll(format.counterSuffixes);
+            tags.addAll(format.mentionTags);
+            tags.addAll(format.everyoneTags);
+            mentionTags.addAll(format.mentionTags);
+            for (int i = 0; i < format.separators.length(); i++) {
+                char c = format.separators.charAt(i);
+                if (separatorChars.indexOf(String.valueOf(c)) < 0) {
+                    separatorChars.append(c);
+                }
+            }
+        }
+        counterSuffixes = longestFirst(suffixes);
+        this.tags = longestFirst(tags);
+        tagMentions = new boolean[this.tags.length];
+        for (int i = 0; i < this.tags.length; i++) {
+            tagMentions[i] = mentionTags.contains(this.tags[i]);
+        }
+        separators = separatorChars.toString().toCharArray();
+    }
+
+    public static MessageTextParser withDefaultFormats() {
+        return new MessageTextParser(MessageFormats.DEFAULTS);
+    }
+
+    // "]" must not shadow " messages]", so try longer alternatives first
+    private static String[] longestFirst(Set<String> values) {
+        List<String> sorted = new ArrayList<>(values);
+        sorted.sort(Comparator.comparingInt(String::length).reversed());
+        return sorted.toArray(new String[0]);
+    }
+
+    /**
+     * Parses {@code text} into {@code out}.
+     *
+     * @param title conversation title, used to tell group chats from direct chats; may be null
+     * @return whether a sender was found
+     */
+    public boolean parse(String title, String text, Result out) {
+        out.reset(text);
+        if (text == null) {
+            return false;
+        }
+        int n = text.length();
+        int i = skipSpaces(text, 0);
+
+        // "[3条]" unread counter
+        if (i < n && text.charAt(i) == '[') {
+            int j = i + 1;
+            int value = 0;
+            while (j < n && j - i <= 6) {
+                char c = text.charAt(j);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                j++;
+            }
+            if (j > i + 1) {
+                for (String suffix : counterSuffixes) {
+                    if (text.startsWith(suffix, j)) {
+                        out.unreadCount = value;
+                        i = skipSpaces(text, j + suffix.length());
+                        break;
+                    }
+                }
+            }
+        }
+
+        // "[有人@我]" mention tag, or "[@所有人]" which is not one
+        if (i < n && text.charAt(i) == '[') {
+            for (int t = 0; t < tags.length; t++) {
+                if (text.startsWith(tags[t], i)) {
+                    out.mentioned = tagMentions[t];
+                    i = skipSpaces(text, i + tags[t].length());
+                    break;
+                }
+            }
+        }
+
+        out.bodyStart = i;
+
+        // "sender: body"
+        int limit = Math.min(n, i + MAX_SENDER_LENGTH + 1);
+        for (int j = i; j < limit; j++) {
+            char c = text.charAt(j);
+            if (c == '\n') {
+                break;
+            }
+            if (!isSeparator(c)) {
+                continue;
+            }
+            if (c == ':' && (isUrlScheme(text, j) || isClockTime(text, j))) {
+                break;
+            }
+            int end = j;
+            while (end > i && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+            if (end > i) {
+                out.senderStart = i;
+                out.senderEnd = end;
+                out.bodyStart = skipSpaces(text, j + 1);
+                out.group = title != null && !out.senderEquals(title);
+            }
+            break;
+        }
+        return out.hasSender();
+    }
+
+    private boolean isSeparator(char c) {
+        for (char separator : separators) {
+            if (c == separator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUrlScheme(String text, int colon) {
+        return text.startsWith("//", colon + 1);
+    }
+
+    private static boolean isClockTime(String text, int colon) {
+        return colon > 0 && colon + 1 < text.length()
+                && isDigit(text.charAt(colon - 1)) && isDigit(text.charAt(colon + 1));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int skipSpaces(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
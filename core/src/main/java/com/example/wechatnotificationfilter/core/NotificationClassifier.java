@@ -0,0 +1,191 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Decides how a messaging app's notification is reposted: parses the
+ * sender out of the text the app's way and evaluates the user's rules in
+ * precedence order. If none matches, checks the title and sender against
+ * the priority contacts and resolves the matched contact's sound. Anything
+ * else is escalated if it @mentions the user or its body contains one of
+ * the alert keywords.
+ *
+ * <p>In the steady state a classification allocates nothing: the sender
+ * and body are matched as views over the text, and silent, priority and
+ * non-loud rule decisions are shared instances built the first time they
+ * are needed. Only escalations and loud rules, which carry the
+ * conversation title, create a decision; so does the first message after
+ * the contacts or rules change.
+ *
+ * <p>Holds a reusable parse result, so an instance must only be used from
+ * one thread (the pipeline worker).
+ */
+public final class NotificationClassifier {
+    private final PriorityContactCache contacts;
+    private final MessageTextParser parser;
+    private final MessageTextParser.Result parsed = new MessageTextParser.Result();
+    // Replaced wholesale when the keyword list changes
+    private volatile KeywordMatcher keywords = KeywordMatcher.EMPTY;
+    private volatile RuleTable rules = RuleTable.EMPTY;
+    private volatile TimeZone timeZone = TimeZone.getDefault();
+    private long[] ruleScratch = RuleTable.EMPTY.newScratch();
+    // Shared decisions, valid for the snapshot and rule table they were built from
+    private ContactSnapshot decisionsSnapshot;
+    private final Map<String, FilterDecision> priorityDecisions = new HashMap<>();
+    private RuleTable decisionsRules;
+    private FilterDecision[] ruleDecisions;
+
+    public NotificationClassifier(PriorityContactCache contacts, MessageTextParser parser) {
+        this.contacts = contacts;
+        this.parser = parser;
+    }
+
+    public FilterDecision classify(String title, String text) {
+        return classify(title, text, System.currentTimeMillis());
+    }
+
+    /** @param postTimeMillis wall-clock time of the message, for the rules' time windows */
+    public FilterDecision classify(String title, String text, long postTimeMillis) {
+        long start = System.nanoTime();
+        FilterDecision decision = decide(parser, title, text, postTimeMillis, start);
+        FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.CLASSIFY, System.nanoTime() - start);
+        FilterMetrics.GLOBAL.increment(counterFor(decision));
+        return decision;
+    }
+
+    /**
+     * Classifies a notification from {@code app}, parsing it the app's way
+     * and counting the outcome against the app as well.
+     *
+     * @param title the conversation title, already cleaned up by {@link AppAdapter#conversationTitle}
+     */
+    public FilterDecision classify(AppAdapter app, String title, String text, long postTimeMillis) {
+        long start = System.nanoTime();
+        FilterDecision decision = decide(app.parser, title, text, postTimeMillis, start);
+        FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.CLASSIFY, System.nanoTime() - start);
+        FilterMetrics.Counter counter = counterFor(decision);
+        FilterMetrics.GLOBAL.increment(counter);
+        app.increment(counter);
+        return decision;
+    }
+
+    private static FilterMetrics.Counter counterFor(FilterDecision decision) {
+        switch (decision.action) {
+            case LOUD:
+                return decision.escalatedBy != null ? FilterMetrics.Counter.ESCALATED : FilterMetrics.Counter.PRIORITY;
+            case DROP:
+                return FilterMetrics.Counter.RULE_DROPPED;
+            case DIGEST:
+                return FilterMetrics.Counter.DIGESTED;
+            default:
+                return FilterMetrics.Counter.SILENT;
+        }
+    }
+
+    private FilterDecision decide(MessageTextParser parser, String title, String text, long postTimeMillis,
+                                  long start) {
+        // Split "[n条]sender: body" in one pass
+        parser.parse(title, text, parsed);
+        FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.PARSE, System.nanoTime() - start);
+        CharSequence sender = parsed.hasSender() ? parsed.senderView() : title;
+        CharSequence body = parsed.bodyView();
+
+        RuleTable table = rules;
+        if (table.size() > 0) {
+            if (ruleScratch.length < table.scratchSize()) {
+                ruleScratch = table.newScratch();
+            }
+            long local = postTimeMillis + timeZone.getOffset(postTimeMillis);
+            int minuteOfDay = (int) Math.floorMod(Math.floorDiv(local, 60_000L), (long) Rule.MINUTES_PER_DAY);
+            // 1970-01-01 was a Thursday
+            int dayOfWeek = (int) Math.floorMod(Math.floorDiv(local, 86_400_000L) + 3, 7L);
+            int matched = table.evaluate(sender, title, parsed.isGroup(), body, minuteOfDay, dayOfWeek, ruleScratch);
+            if (matched >= 0) {
+                return ruleDecision(table, matched, title);
+            }
+        }
+
+        // A direct chat's title is the contact; in a group the sender is. Either may be an alias
+        ContactSnapshot snapshot = contacts.get();
+        String contactName = snapshot.match(title);
+        if (contactName == null && parsed.hasSender()) {
+            contactName = snapshot.match(sender);
+        }
+        if (contactName == null) {
+            return escalateOrSilence(title, body);
+        }
+        return priorityDecision(snapshot, contactName);
+    }
+
+    private FilterDecision priorityDecision(ContactSnapshot snapshot, String contactName) {
+        if (snapshot != decisionsSnapshot) {
+            priorityDecisions.clear();
+            decisionsSnapshot = snapshot;
+        }
+        // Keyed by the snapshot's own name string, whose hash is already cached
+        FilterDecision decision = priorityDecisions.get(contactName);
+        if (decision == null) {
+            String soundUri = snapshot.soundFor(contactName);
+            if (soundUri != null && soundUri.isEmpty()) {
+                soundUri = null;
+            }
+            decision = FilterDecision.priority(contactName, soundUri);
+            priorityDecisions.put(contactName, decision);
+        }
+        return decision;
+    }
+
+    private FilterDecision ruleDecision(RuleTable table, int matched, String title) {
+        Rule rule = table.rule(matched);
+        if (rule.action == RuleAction.LOUD) {
+            return FilterDecision.byRule(rule, matched, conversation(title));
+        }
+        if (table != decisionsRules) {
+            ruleDecisions = new FilterDecision[table.size()];
+            decisionsRules = table;
+        }
+        if (ruleDecisions[matched] == null) {
+            ruleDecisions[matched] = FilterDecision.byRule(rule, matched, null);
+        }
+        return ruleDecisions[matched];
+    }
+
+    private FilterDecision escalateOrSilence(String title, CharSequence body) {
+        if (parsed.isMentioned()) {
+            return FilterDecision.escalated(conversation(title), FilterDecision.MENTION);
+        }
+        KeywordMatcher matcher = keywords;
+        int keyword = matcher.find(body);
+        if (keyword >= 0) {
+            return FilterDecision.escalated(conversation(title), matcher.keyword(keyword));
+        }
+        return FilterDecision.SILENT;
+    }
+
+    // The title, or the sender when the notification has none
+    private String conversation(String title) {
+        return title != null ? title : parsed.hasSender() ? parsed.sender() : null;
+    }
+
+    /** Swaps in a newly compiled rule list; safe to call from any thread. */
+    public void setRules(RuleTable rules) {
+        this.rules = rules;
+    }
+
+    /** Zone the rules' time windows are read in; update when the system zone changes. */
+    public void setTimeZone(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /** Swaps in a new keyword automaton; safe to call from any thread. */
+    public void setKeywords(KeywordMatcher keywords) {
+        this.keywords = keywords;
+    }
+
+    /** The parse of the most recently classified text. */
+    public MessageTextParser.Result lastParse() {
+        return parsed;
+    }
+}
@@ -0,0 +1,478 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * What the filter did with each notification, kept after the original is
+ * cancelled so silenced messages can be looked up later.
+ *
+ * <p>Records are appended to fixed-size segment files that are memory
+ * mapped, so an append is a copy into the page cache with no system call.
+ * A full segment is truncated to its used length and a new one started.
+ * Each record is framed as {@code [length][payload][crc32][length]}: the
+ * leading length lets the writer find the end of the last segment on
+ * open, dropping a torn record, and the trailing one lets readers walk
+ * backwards from the newest record.
+ *
+ * <p>Retention works on whole segments: once a segment's newest record is
+ * older than the retention period its file is deleted. Within the oldest
+ * remaining segment, the header's start offset is moved past expired
+ * records instead of rewriting the file, so reader cursors stay valid.
+ * Retention is applied on open and on rotation; a quiet history may never
+ * rotate, so the owner should also call {@link #trim} now and then.
+ *
+ * <p>One writer at a time; {@link #page} can be called from any thread
+ * without blocking it. Readers see a record once its append returns.
+ */
+public final class NotificationHistory implements Closeable {
+    /** Cursor for {@link #page} that starts at the newest record. */
+    public static final long NEWEST = Long.MAX_VALUE;
+
+    private static final int MAGIC = 0x57434831;
+    // Magic, then the offset of the first unexpired record
+    private static final int HEADER = 8;
+    private static final int FRAME = 12;
+    // Time, action and flags ahead of the strings
+    private static final int FIXED_FIELDS = 10;
+    private static final String SUFFIX = ".hist";
+    // Longer titles and messages are cut; the notification itself only shows the start anyway
+    private static final int MAX_FIELD_CHARS = 1024;
+    // Three length-prefixed fields of at most 3 UTF-8 bytes per char
+    static final int MAX_RECORD = FRAME + FIXED_FIELDS + 3 * (2 + 3 * MAX_FIELD_CHARS);
+
+    /** One filtered notification. */
+    public static final class Entry {
+        /** Pass to {@link #page} to continue with the records before this one. */
+        public final long cursor;
+        public final long time;
+        public final RuleAction action;
+        public final boolean priority;
+        public final String title;
+        public final String sender;
+        public final String text;
+
+        Entry(long cursor, long time, RuleAction action, boolean priority, String title, String sender,
+              String text) {
+            this.cursor = cursor;
+            this.time = time;
+            this.action = action;
+            this.priority = priority;
+            this.title = title;
+            this.sender = sender;
+            this.text = text;
+        }
+    }
+
+    private static final class Segment {
+        final int sequence;
+        final File file;
+        // Mapped read-write at its full size; only [start, end) holds records
+        final MappedByteBuffer map;
+        volatile int start;
+        volatile int end;
+        long newest;
+
+        Segment(int sequence, File file, MappedByteBuffer map) {
+            this.sequence = sequence;
+            this.file = file;
+            this.map = map;
+        }
+    }
+
+    private static final RuleAction[] ACTIONS = RuleAction.values();
+
+    private final File directory;
+    private final int segmentBytes;
+    private final long retentionMillis;
+    private final LongSupplier clock;
+    // Oldest first; replaced, never modified, so readers can walk it without locking
+    private volatile Segment[] segments = new Segment[0];
+    // Only touched by the writer: records are encoded here, checksummed, then copied into the map
+    private final byte[] scratch = new byte[MAX_RECORD];
+    private final CRC32 crc = new CRC32();
+    private Segment active;
+
+    private NotificationHistory(File directory, int segmentBytes, long retentionMillis, LongSupplier clock) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionMillis = retentionMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Opens the history in {@code directory}, creating it if needed, and
+     * drops whatever has expired since it was last open.
+     *
+     * @param segmentBytes    size of each segment file, large enough for the longest record
+     * @param retentionMillis how long records are kept
+     * @param clock           wall-clock milliseconds, the time base of record times
+     */
+    public static NotificationHistory open(File directory, int segmentBytes, long retentionMillis,
+                                           LongSupplier clock) throws IOException {
+        if (segmentBytes < HEADER + MAX_RECORD || retentionMillis <= 0) {
+            throw new IllegalArgumentException("segment " + segmentBytes + " bytes, retention "
+                    + retentionMillis + " ms");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        NotificationHistory history = new NotificationHistory(directory, segmentBytes, retentionMillis, clock);
+        history.load();
+        history.trim();
+        return history;
+    }
+
+    private void load() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        int[] sequences = new int[files != null ? files.length : 0];
+        int count = 0;
+        for (int i = 0; i < sequences.length; i++) {
+            String name = files[i].getName();
+            try {
+                sequences[count] = Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException e) {
+                // Not ours
+            }
+        }
+        Arrays.sort(sequences, 0, count);
+
+        List<Segment> loaded = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Segment segment = map(sequences[i], false);
+            if (segment != null) {
+                scan(segment);
+                loaded.add(segment);
+            }
+        }
+        segments = loaded.toArray(new Segment[0]);
+        // Carry on filling a segment the last process left open; a sealed one was truncated
+        Segment last = loaded.isEmpty() ? null : loaded.get(loaded.size() - 1);
+        if (last != null && last.map.capacity() == segmentBytes) {
+            active = last;
+        }
+    }
+
+    // Maps an existing segment, or creates one; null if the file is not a segment
+    private Segment map(int sequence, boolean create) throws IOException {
+        File file = new File(directory, sequence + SUFFIX);
+        MappedByteBuffer map = null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (create) {
+                raf.setLength(segmentBytes);
+            }
+            // The mapping stays valid after the channel is closed
+            if (raf.length() >= HEADER) {
+                map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            }
+        }
+        if (create) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, HEADER);
+        } else if (map == null || map.getInt(0) != MAGIC) {
+            // Deleted once the file is closed
+            file.delete();
+            return null;
+        }
+        Segment segment = new Segment(sequence, file, map);
+        segment.start = create ? HEADER : Math.max(HEADER, map.getInt(4));
+        segment.end = HEADER;
+        return segment;
+    }
+
+    // Walks the records forward to find the end, stopping at the first torn or blank one
+    private void scan(Segment segment) {
+        MappedByteBuffer map = segment.map;
+        int pos = HEADER;
+        while (pos + FRAME <= map.capacity()) {
+            int length = map.getInt(pos);
+            if (length <= 0 || pos + FRAME + length > map.capacity()
+                    || map.getInt(pos + FRAME - 4 + length) != length) {
+                break;
+            }
+            crc.reset();
+            for (int i = 0; i < length; i++) {
+                crc.update(map.get(pos + 4 + i));
+            }
+            if (map.getInt(pos + 4 + length) != (int) crc.getValue()) {
+                break;
+            }
+            segment.newest = map.getLong(pos + 4);
+            pos += FRAME + length;
+        }
+        segment.end = pos;
+        segment.start = Math.min(segment.start, pos);
+    }
+
+    /**
+     * Appends one record. Called from the pipeline worker, never from the
+     * listener thread, so a page fault or a rotation only delays the worker.
+     *
+     * @param time when the notification was posted, in wall-clock milliseconds
+     * @return the record's cursor, for {@link #read}; cursors grow with every append
+     */
+    public synchronized long append(long time, RuleAction action, boolean priority, String title, String sender,
+                                    String text) throws IOException {
+        writeLong(scratch, 4, time);
+        scratch[12] = (byte) action.ordinal();
+        scratch[13] = (byte) (priority ? 1 : 0);
+        int end = putString(title, 4 + FIXED_FIELDS);
+        end = putString(sender, end);
+        end = putString(text, end);
+        int length = end - 4;
+
+        crc.reset();
+        crc.update(scratch, 4, length);
+        writeInt(scratch, 0, length);
+        writeInt(scratch, 4 + length, (int) crc.getValue());
+        writeInt(scratch, 8 + length, length);
+        int framed = FRAME + length;
+
+        if (active == null || active.end + framed > segmentBytes) {
+            rotate();
+        }
+        int record = active.end;
+        ByteBuffer target = active.map;
+        target.position(record);
+        target.put(scratch, 0, framed);
+        active.newest = time;
+        // Publishes the bytes above to readers
+        active.end = record + framed;
+        return cursor(active, record);
+    }
+
+    private static long cursor(Segment segment, int record) {
+        return ((long) segment.sequence << 32) | record;
+    }
+
+    // Writes a length-prefixed UTF-8 field at scratch[pos]; a length of -1 is null. Returns the end.
+    private int putString(String value, int pos) {
+        if (value == null) {
+            writeShort(scratch, pos, -1);
+            return pos + 2;
+        }
+        int chars = Math.min(value.length(), MAX_FIELD_CHARS);
+        if (chars > 0 && Character.isHighSurrogate(value.charAt(chars - 1))) {
+            chars--;
+        }
+        int p = pos + 2;
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                scratch[p++] = (byte) c;
+            } else if (c < 0x800) {
+                scratch[p++] = (byte) (0xc0 | (c >> 6));
+                scratch[p++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                scratch[p++] = (byte) (0xf0 | (cp >> 18));
+                scratch[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                scratch[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                scratch[p++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                scratch[p++] = '?';
+            } else {
+                scratch[p++] = (byte) (0xe0 | (c >> 12));
+                scratch[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                scratch[p++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        writeShort(scratch, pos, p - pos - 2);
+        return p;
+    }
+
+    // Seals the active segment, starts the next one and applies retention
+    private void rotate() throws IOException {
+        Segment[] current = segments;
+        if (active != null) {
+            try (RandomAccessFile raf = new RandomAccessFile(active.file, "rw")) {
+                // Readers never look past end, so the mapping may outlive the bytes beyond it
+                raf.setLength(active.end);
+            }
+        }
+        int sequence = current.length > 0 ? current[current.length - 1].sequence + 1 : 0;
+        Segment next = map(sequence, true);
+        Segment[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = next;
+        segments = grown;
+        active = next;
+        trim();
+    }
+
+    /**
+     * Deletes segments whose records have all expired and moves the start of
+     * the oldest remaining one past its expired records.
+     */
+    public synchronized void trim() {
+        long cutoff = clock.getAsLong() - retentionMillis;
+        Segment[] current = segments;
+        int expired = 0;
+        while (expired < current.length && current[expired] != active && current[expired].newest < cutoff) {
+            current[expired].file.delete();
+            expired++;
+        }
+        if (expired > 0) {
+            segments = Arrays.copyOfRange(current, expired, current.length);
+        }
+        if (segments.length > 0) {
+            Segment oldest = segments[0];
+            int pos = oldest.start;
+            while (pos < oldest.end && oldest.map.getLong(pos + 4) < cutoff) {
+                pos += FRAME + oldest.map.getInt(pos);
+            }
+            if (pos != oldest.start) {
+                oldest.map.putInt(4, pos);
+                oldest.start = pos;
+            }
+        }
+    }
+
+    /**
+     * Up to {@code limit} records older than {@code cursor}, newest first.
+     * Only the records returned are decoded; segments stay in the page cache.
+     *
+     * @param cursor {@link #NEWEST}, or the {@link Entry#cursor} of the last entry of the previous page
+     */
+    public List<Entry> page(long cursor, int limit) {
+        List<Entry> page = new ArrayList<>(Math.min(limit, 64));
+        Segment[] current = segments;
+        int sequence = (int) (cursor >>> 32);
+        byte[] field = null;
+        for (int s = current.length - 1; s >= 0 && page.size() < limit; s--) {
+            Segment segment = current[s];
+            if (cursor != NEWEST && segment.sequence > sequence) {
+                continue;
+            }
+            int end = segment.end;
+            int pos = cursor != NEWEST && segment.sequence == sequence ? Math.min((int) cursor, end) : end;
+            int start = segment.start;
+            // A private view: readers never move the writer's position
+            ByteBuffer view = segment.map.duplicate();
+            while (pos - FRAME >= start && page.size() < limit) {
+                int length = view.getInt(pos - 4);
+                int record = pos - FRAME - length;
+                if (length <= 0 || record < start || view.getInt(record) != length) {
+                    break;
+                }
+                if (field == null) {
+                    field = new byte[3 * MAX_FIELD_CHARS];
+                }
+                page.add(decode(segment, view, record, field));
+                pos = record;
+            }
+        }
+        return page;
+    }
+
+    /** The record at {@code cursor}, or null if it has expired or the cursor is not one {@link #append} returned. */
+    public Entry read(long cursor) {
+        Segment[] current = segments;
+        int sequence = (int) (cursor >>> 32);
+        int record = (int) cursor;
+        for (int s = current.length - 1; s >= 0; s--) {
+            Segment segment = current[s];
+            if (segment.sequence == sequence) {
+                if (record < segment.start || record + FRAME > segment.end) {
+                    return null;
+                }
+                ByteBuffer view = segment.map.duplicate();
+                int length = view.getInt(record);
+                if (length <= 0 || record + FRAME + length > segment.end
+                        || view.getInt(record + FRAME - 4 + length) != length) {
+                    return null;
+                }
+                // A single record: each field gets an array of its own size instead of a full-size buffer
+                return decode(segment, view, record, null);
+            }
+            if (segment.sequence < sequence) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    /** Calls {@code visitor} with every record, oldest first, for rebuilding indexes over the history. */
+    public void replay(Consumer<Entry> visitor) {
+        byte[] field = new byte[3 * MAX_FIELD_CHARS];
+        for (Segment segment : segments) {
+            ByteBuffer view = segment.map.duplicate();
+            int end = segment.end;
+            for (int pos = segment.start; pos + FRAME <= end; pos += FRAME + view.getInt(pos)) {
+                visitor.accept(decode(segment, view, pos, field));
+            }
+        }
+    }
+
+    /** Cursor of the oldest record still kept; records below it have expired. */
+    public long firstCursor() {
+        Segment[] current = segments;
+        return current.length > 0 ? cursor(current[0], current[0].start) : 0;
+    }
+
+    private static Entry decode(Segment segment, ByteBuffer view, int record, byte[] field) {
+        view.position(record + 4 + FIXED_FIELDS);
+        String title = getString(view, field);
+        String sender = getString(view, field);
+        String text = getString(view, field);
+        int action = view.get(record + 12);
+        return new Entry(cursor(segment, record), view.getLong(record + 4),
+                action >= 0 && action < ACTIONS.length ? ACTIONS[action] : RuleAction.SILENT,
+                view.get(record + 13) != 0, title, sender, text);
+    }
+
+    // Reads a field written by putString into field, or a new array of the field's size if that is null
+    private static String getString(ByteBuffer view, byte[] field) {
+        int length = view.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = field != null ? field : new byte[length];
+        view.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /** Number of segment files, the active one included. */
+    public int segments() {
+        return segments.length;
+    }
+
+    private static void writeLong(byte[] buffer, int offset, long value) {
+        writeInt(buffer, offset, (int) (value >>> 32));
+        writeInt(buffer, offset + 4, (int) value);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 8);
+        buffer[offset + 1] = (byte) value;
+    }
+
+    /**
+     * Stops appending. Mappings are released when collected; there is no
+     * way to unmap them explicitly.
+     */
+    @Override
+    public synchronized void close() {
+        segments = new Segment[0];
+        active = null;
+    }
+}
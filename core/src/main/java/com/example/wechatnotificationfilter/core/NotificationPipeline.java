@@ -0,0 +1,342 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the ingest -> classify -> render -> post stages for incoming
+ * notifications on a single dedicated worker thread.
+ *
+ * <p>{@link #offer} and {@link #offerBatch} are the only calls made on the
+ * listener thread. They never block on stage work: {@code offer} appends to
+ * a bounded queue and returns. When the queue is full the {@link OverflowPolicy} decides what
+ * gives way. A dropped notification is simply never cancelled, so the
+ * original WeChat entry stays in the shade rather than being lost.
+ *
+ * @param <D> classification result
+ * @param <R> rendered notification handed to the post stage
+ */
+public final class NotificationPipeline<D, R> {
+
+    public enum Stage { INGEST, CLASSIFY, RENDER, POST }
+
+    public enum OverflowPolicy {
+        /** Discard the oldest queued notification to make room. */
+        DROP_OLDEST,
+        /**
+         * Replace a queued notification with the same key (WeChat reuses a
+         * key per conversation, so the newer one supersedes it); fall back to
+         * dropping the oldest when no key matches.
+         */
+        COALESCE_BY_KEY
+    }
+
+    public interface Stages<D, R> {
+        D classify(IncomingNotification notification);
+
+        R render(IncomingNotification notification, D decision);
+
+        void post(IncomingNotification notification, D decision, R rendered);
+
+        /**
+         * Posts the results of a batch from {@link #offerBatch} together, so
+         * cancels and reposts can be made in one pass. Failed notifications
+         * are left out; the lists are parallel.
+         */
+        default void postBatch(List<IncomingNotification> notifications, List<D> decisions, List<R> rendered) {
+            for (int i = 0; i < notifications.size(); i++) {
+                post(notifications.get(i), decisions.get(i), rendered.get(i));
+            }
+        }
+
+        /**
+         * Called on the worker after each notification and whenever a
+         * previously requested delay has elapsed, for work deferred by the
+         * other stages.
+         *
+         * @param nowMillis monotonic time in milliseconds
+         * @return milliseconds until the worker should call again, or -1 if nothing is scheduled
+         */
+        long onTick(long nowMillis);
+
+        /** {@code notification} is null when the failure came from {@link #onTick} or a batch post. */
+        void onError(IncomingNotification notification, RuntimeException e);
+    }
+
+    private final Stages<D, R> stages;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final ArrayDeque<IncomingNotification> queue;
+    // Guarded by the queue lock, like the queue
+    private final ArrayDeque<List<IncomingNotification>> batches = new ArrayDeque<>();
+    private final Thread worker;
+
+    private final AtomicInteger[] depth = new AtomicInteger[Stage.values().length];
+    private final AtomicLong[] processed = new AtomicLong[Stage.values().length];
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public NotificationPipeline(Stages<D, R> stages, int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.stages = stages;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayDeque<>(capacity);
+        for (int i = 0; i < depth.length; i++) {
+            depth[i] = new AtomicInteger();
+            processed[i] = new AtomicLong();
+        }
+        worker = new Thread(this::runWorker, "WeChatFilter-pipeline");
+        worker.setDaemon(true);
+    }
+
+    public void start() {
+        worker.start();
+    }
+
+    /** Stops the worker; notifications still queued are abandoned. */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * Enqueues a notification from the listener thread.
+     *
+     * @return false if the notification was rejected because the pipeline is stopped
+     */
+    public boolean offer(IncomingNotification notification) {
+        if (!running) {
+            return false;
+        }
+        synchronized (queue) {
+            if (queue.size() >= capacity) {
+                if (overflowPolicy == OverflowPolicy.COALESCE_BY_KEY && replaceSameKey(notification)) {
+                    coalesced.incrementAndGet();
+                    FilterMetrics.GLOBAL.increment(FilterMetrics.Counter.COALESCED);
+                    Trace.record(TraceEvent.QUEUE_COALESCE, Trace.hash(notification.key), capacity);
+                    processed[Stage.INGEST.ordinal()].incrementAndGet();
+                    return true;
+                }
+                IncomingNotification oldest = queue.pollFirst();
+                dropped.incrementAndGet();
+                FilterMetrics.GLOBAL.increment(FilterMetrics.Counter.DROPPED);
+                Trace.record(TraceEvent.QUEUE_DROP, Trace.hash(oldest.key), capacity);
+                depth[Stage.INGEST.ordinal()].decrementAndGet();
+            }
+            queue.addLast(notification);
+            depth[Stage.INGEST.ordinal()].incrementAndGet();
+            processed[Stage.INGEST.ordinal()].incrementAndGet();
+            queue.notify();
+        }
+        return true;
+    }
+
+    /**
+     * Enqueues notifications that were already showing when the listener
+     * connected. The batch is processed ahead of single notifications and
+     * is not limited by the queue capacity: nothing in it may be dropped,
+     * and it arrives once per connect.
+     *
+     * @return false if the pipeline is stopped
+     */
+    public boolean offerBatch(List<IncomingNotification> batch) {
+        if (!running) {
+            return false;
+        }
+        synchronized (queue) {
+            batches.addLast(new ArrayList<>(batch));
+            depth[Stage.INGEST.ordinal()].addAndGet(batch.size());
+            processed[Stage.INGEST.ordinal()].addAndGet(batch.size());
+            queue.notify();
+        }
+        return true;
+    }
+
+    // Caller holds the queue lock
+    private boolean replaceSameKey(IncomingNotification notification) {
+        if (notification.key == null) {
+            return false;
+        }
+        Iterator<IncomingNotification> it = queue.iterator();
+        while (it.hasNext()) {
+            if (notification.key.equals(it.next().key)) {
+                it.remove();
+                queue.addLast(notification);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void runWorker() {
+        // Ticks once on start, so timed work is scheduled before the first notification
+        long wakeAt = 0;
+        while (running) {
+            IncomingNotification next;
+            List<IncomingNotification> batch;
+            synchronized (queue) {
+                while (running && queue.isEmpty() && batches.isEmpty()) {
+                    long waitMillis = wakeAt < 0 ? 0 : wakeAt - nowMillis();
+                    if (wakeAt >= 0 && waitMillis <= 0) {
+                        break;
+                    }
+                    try {
+                        queue.wait(waitMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                batch = batches.pollFirst();
+                next = batch == null ? queue.pollFirst() : null;
+                if (batch != null) {
+                    depth[Stage.INGEST.ordinal()].addAndGet(-batch.size());
+                } else if (next != null) {
+                    depth[Stage.INGEST.ordinal()].decrementAndGet();
+                }
+            }
+            if (batch != null) {
+                processBatch(batch);
+            } else if (next != null) {
+                process(next);
+            }
+            wakeAt = tick();
+        }
+    }
+
+    private long tick() {
+        long now = nowMillis();
+        try {
+            long delay = stages.onTick(now);
+            return delay < 0 ? -1 : now + delay;
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            Trace.record(TraceEvent.ERROR, 0, 0);
+            stages.onError(null, e);
+            return -1;
+        }
+    }
+
+    /** The monotonic clock passed to {@link Stages#onTick}. */
+    public static long nowMillis() {
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    private void process(IncomingNotification notification) {
+        try {
+            enter(Stage.CLASSIFY);
+            D decision;
+            try {
+                decision = stages.classify(notification);
+            } finally {
+                exit(Stage.CLASSIFY);
+            }
+
+            enter(Stage.RENDER);
+            R rendered;
+            try {
+                rendered = stages.render(notification, decision);
+            } finally {
+                exit(Stage.RENDER);
+            }
+
+            enter(Stage.POST);
+            try {
+                stages.post(notification, decision, rendered);
+            } finally {
+                exit(Stage.POST);
+            }
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            Trace.record(TraceEvent.ERROR, Trace.hash(notification.key), 0);
+            stages.onError(notification, e);
+        }
+    }
+
+    private void processBatch(List<IncomingNotification> batch) {
+        List<IncomingNotification> accepted = new ArrayList<>(batch.size());
+        List<D> decisions = new ArrayList<>(batch.size());
+        List<R> renders = new ArrayList<>(batch.size());
+        for (IncomingNotification notification : batch) {
+            try {
+                enter(Stage.CLASSIFY);
+                D decision;
+                try {
+                    decision = stages.classify(notification);
+                } finally {
+                    exit(Stage.CLASSIFY);
+                }
+
+                enter(Stage.RENDER);
+                R rendered;
+                try {
+                    rendered = stages.render(notification, decision);
+                } finally {
+                    exit(Stage.RENDER);
+                }
+                accepted.add(notification);
+                decisions.add(decision);
+                renders.add(rendered);
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+                Trace.record(TraceEvent.ERROR, Trace.hash(notification.key), 0);
+                stages.onError(notification, e);
+            }
+        }
+
+        depth[Stage.POST.ordinal()].addAndGet(accepted.size());
+        try {
+            stages.postBatch(accepted, decisions, renders);
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            Trace.record(TraceEvent.ERROR, 0, 0);
+            stages.onError(null, e);
+        } finally {
+            depth[Stage.POST.ordinal()].addAndGet(-accepted.size());
+            processed[Stage.POST.ordinal()].addAndGet(accepted.size());
+        }
+    }
+
+    private void enter(Stage stage) {
+        depth[stage.ordinal()].incrementAndGet();
+    }
+
+    private void exit(Stage stage) {
+        depth[stage.ordinal()].decrementAndGet();
+        processed[stage.ordinal()].incrementAndGet();
+    }
+
+    /** Number of notifications currently waiting in (INGEST) or executing (others) a stage. */
+    public int depth(Stage stage) {
+        return depth[stage.ordinal()].get();
+    }
+
+    /** Number of notifications that have passed through a stage. */
+    public long processed(Stage stage) {
+        return processed[stage.ordinal()].get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long coalesced() {
+        return coalesced.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link ContactSnapshot} behind an atomic reference.
+ * Readers on any thread see a consistent snapshot; the snapshot is only
+ * reloaded by {@link #refresh()}; the service keeps it current by feeding
+ * the contact store's changes to {@link #apply}, which swaps in an
+ * updated copy without reading the store.
+ */
+public final class PriorityContactCache {
+
+    /** Loads a fresh snapshot from persistent storage. */
+    public interface Source {
+        ContactSnapshot load();
+    }
+
+    private final Source source;
+    private final AtomicReference<ContactSnapshot> snapshot =
+            new AtomicReference<>(ContactSnapshot.EMPTY);
+
+    public PriorityContactCache(Source source) {
+        this.source = source;
+    }
+
+    public void refresh() {
+        snapshot.set(source.load());
+    }
+
+    /** Applies one store edit to the current snapshot; attributes other than sound and aliases are ignored. */
+    public void apply(ContactStore.Change change) {
+        switch (change.kind) {
+            case ADDED:
+                snapshot.updateAndGet(current -> current.withContact(change.name));
+                break;
+            case REMOVED:
+                snapshot.updateAndGet(current -> current.withoutContact(change.name));
+                break;
+            case ATTRIBUTE_SET:
+                if (ContactStore.SOUND.equals(change.attribute)) {
+                    snapshot.updateAndGet(current -> current.withSound(change.name, change.value));
+                } else if (ContactStore.ALIASES.equals(change.attribute)) {
+                    List<String> aliases = ContactStore.aliasList(change.value);
+                    snapshot.updateAndGet(current -> current.withAliases(change.name, aliases));
+                }
+                break;
+            case BULK:
+                refresh();
+                break;
+        }
+    }
+
+    public ContactSnapshot get() {
+        return snapshot.get();
+    }
+
+    /** The priority contact {@code name} refers to, by name or alias, or null. */
+    public String match(String name) {
+        return snapshot.get().match(name);
+    }
+
+    public boolean isPriority(String contactName) {
+        if (contactName == null || contactName.isEmpty()) {
+            return false;
+        }
+        return snapshot.get().contains(contactName);
+    }
+
+    public String soundFor(String contactName) {
+        return snapshot.get().soundFor(contactName);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.wechatnotificationfilter.core;
+
+/**
+ * Fixed-capacity LRU of recently seen notification fingerprints, used to
+ * drop redundant callbacks (the same post delivered again, repeat
+ * callbacks around our own cancel) before they reach the pipeline.
+ *
+ * <p>A fingerprint is a 64-bit FNV-1a hash of the notification key, post
+ * time, title and text, so a new message always changes it, even one
+ * repeating the last message's text in an app without an unread counter.
+ * A fingerprint recorded within {@code windowMillis} of a later post time
+ * is a duplicate. Checking and recording are separate, so the listener
+ * records a notification only once the pipeline accepted it. Everything
+ * lives in primitive arrays: an open-addressed index into entries linked
+ * in recency order, so lookups and inserts never allocate.
+ */
+public final class RecentFingerprints {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private final long windowMillis;
+    private final long[] fingerprints;
+    private final long[] postTimes;
+    private final int[] newer;
+    private final int[] older;
+    // Entry index + 1 per slot, 0 for empty; at most half full
+    private final int[] index;
+    private final int mask;
+    private int newest = NONE;
+    private int oldest = NONE;
+    private int size;
+
+    public RecentFingerprints(int capacity, long windowMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.windowMillis = windowMillis;
+        fingerprints = new long[capacity];
+        postTimes = new long[capacity];
+        newer = new int[capacity];
+        older = new int[capacity];
+        index = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+        mask = index.length - 1;
+    }
+
+    public static long fingerprint(String key, long postTimeMillis, CharSequence title, CharSequence text) {
+        long hash = FNV_OFFSET;
+        hash = mix(hash, key);
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash = (hash ^ ((postTimeMillis >>> shift) & 0xff)) * FNV_PRIME;
+        }
+        hash = mix(hash, title);
+        return mix(hash, text);
+    }
+
+    private static long mix(long hash, CharSequence s) {
+        if (s == null) {
+            return (hash ^ 0xffff) * FNV_PRIME;
+        }
+        for (int i = 0, n = s.length(); i < n; i++) {
+            hash = (hash ^ s.charAt(i)) * FNV_PRIME;
+        }
+        // Field separator, so ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0x1f) * FNV_PRIME;
+    }
+
+    /** Whether the fingerprint was recorded with a post time at most {@code windowMillis} apart. */
+    public synchronized boolean isDuplicate(long fingerprint, long postTimeMillis) {
+        int slot = find(fingerprint);
+        return index[slot] != 0 && Math.abs(postTimeMillis - postTimes[index[slot] - 1]) <= windowMillis;
+    }
+
+    /** Records the fingerprint as the most recently seen, with the given post time. */
+    public synchronized void record(long fingerprint, long postTimeMillis) {
+        int slot = find(fingerprint);
+        if (index[slot] != 0) {
+            int entry = index[slot] - 1;
+            postTimes[entry] = postTimeMillis;
+            moveToNewest(entry);
+            return;
+        }
+
+        int entry;
+        if (size < capacity) {
+            entry = size++;
+        } else {
+            entry = oldest;
+            unlink(entry);
+            remove(find(fingerprints[entry]));
+            slot = find(fingerprint);
+        }
+        fingerprints[entry] = fingerprint;
+        postTimes[entry] = postTimeMillis;
+        index[slot] = entry + 1;
+        linkNewest(entry);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Slot holding the fingerprint, or the empty slot where it would go
+    private int find(long fingerprint) {
+        int slot = spread(fingerprint) & mask;
+        while (index[slot] != 0 && fingerprints[index[slot] - 1] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int spread(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    // Backward-shift deletion keeps linear probing chains intact without tombstones
+    private void remove(int slot) {
+        index[slot] = 0;
+        int next = (slot + 1) & mask;
+        while (index[next] != 0) {
+            int home = spread(fingerprints[index[next] - 1]) & mask;
+            // Move the entry back if its home is not cyclically within (slot, next]
+            if ((next > slot && (home <= slot || home > next)) || (next < slot && home <= slot && home > next)) {
+                index[slot] = index[next];
+                index[next] = 0;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void moveToNewest(int entry) {
+        if (entry != newest) {
+            unlink(entry);
+            linkNewest(entry);
+        }
+    }
+
+    private void linkNewest(int entry) {
+        older[entry] = newest;
+        newer[entry] = NONE;
+        if (newest != NONE) {
+            newer[newest] = entry;
+        }
+        newest = entry;
+        if (oldest == NONE) {
+            oldest = entry;
+        }
+    }
+
+    private void unlink(int entry) {
+        if (older[entry] != NONE) {
+            newer[older[entry]] = newer[entry];
+        } else {
+            oldest = newer[entry];
+        }
+        if (newer[entry] != NONE) {
+            older[newer[entry]] = older[entry];
+        } else {
+            newest = older[entry];
+        }
+    }
+}
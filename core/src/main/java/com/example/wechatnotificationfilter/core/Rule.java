@@ -0,0 +1,59 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * One filter rule: an action plus conditions on the sender, the group,
+ * keywords in the body, the time of day and the day of week. Each
+ * condition left empty matches everything; within a condition any listed
+ * value matches, and all conditions must hold. Written in the rules text
+ * understood by {@link RuleParser}.
+ */
+public final class Rule {
+    public static final int ALL_DAYS = 0x7f;
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    public final RuleAction action;
+    /** Sound for {@link RuleAction#LOUD}; null for the default sound. */
+    public final String sound;
+    /** Sender names, matched loosely the way contact names are (see {@link ContactIndex}). */
+    public final Set<String> senders;
+    /** Group conversation titles, matched loosely too; a rule with groups never matches a direct chat. */
+    public final Set<String> groups;
+    public final Set<String> keywords;
+    /** First minute of the day the rule applies, or -1 for all day. */
+    public final int startMinute;
+    /** Minute the window ends (exclusive); before {@link #startMinute} when it spans midnight. */
+    public final int endMinute;
+    /** Bit 0 is Monday, bit 6 is Sunday. */
+    public final int days;
+
+    public Rule(RuleAction action, String sound, Set<String> senders, Set<String> groups,
+                Set<String> keywords, int startMinute, int endMinute, int days) {
+        this.action = action;
+        this.sound = sound;
+        this.senders = Collections.unmodifiableSet(new LinkedHashSet<>(senders));
+        this.groups = Collections.unmodifiableSet(new LinkedHashSet<>(groups));
+        this.keywords = Collections.unmodifiableSet(new LinkedHashSet<>(keywords));
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+        this.days = days;
+    }
+
+    public boolean coversMinute(int minuteOfDay) {
+        if (startMinute < 0) {
+            return true;
+        }
+        if (startMinute < endMinute) {
+            return minuteOfDay >= startMinute && minuteOfDay < endMinute;
+        }
+        return minuteOfDay >= startMinute || minuteOfDay < endMinute;
+    }
+
+    /** @param dayOfWeek 0 for Monday through 6 for Sunday */
+    public boolean coversDay(int dayOfWeek) {
+        return (days & (1 << dayOfWeek)) != 0;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.wechatnotificationfilter.core;
+
+/** What a matching {@link Rule} does with a message. */
+public enum RuleAction {
+    /** Repost audibly, with the rule's sound or the default one. */
+    LOUD,
+    /** Repost without sound or vibration. */
+    SILENT,
+    /** Cancel the original and do not repost it at all. */
+    DROP,
+    /** Collect into the single silent digest notification. */
+    DIGEST
+}
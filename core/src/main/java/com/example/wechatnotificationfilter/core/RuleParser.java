@@ -0,0 +1,245 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reads the rules text edited in the main screen. One rule per line, in
+ * precedence order, as an action followed by conditions:
+ *
+ * <pre>
+ * # comments and blank lines are ignored
+ * loud from=妈妈,爸爸 sound=content://media/internal/audio/media/12
+ * silent group="Weekend Hiking" time=22:00-07:30 days=mon-fri
+ * drop group=广告群
+ * digest keyword=红包,抢
+ * loud group=运维群 keyword=挂了,告警
+ * </pre>
+ *
+ * Actions are {@code loud}, {@code silent}, {@code drop} and
+ * {@code digest}. Conditions are {@code from}, {@code group},
+ * {@code keyword}, {@code time} and {@code days}; list values are
+ * comma-separated and may be double-quoted to include spaces or commas,
+ * but may not be blank.
+ * {@code sound} is only allowed on {@code loud}.
+ */
+public final class RuleParser {
+    private static final String[] DAY_NAMES = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+
+    private RuleParser() {
+    }
+
+    /** @throws IllegalArgumentException naming the line and problem of the first invalid rule */
+    public static List<Rule> parse(String text) {
+        List<Rule> rules = new ArrayList<>();
+        String[] lines = text.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                rules.add(parseRule(line));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return rules;
+    }
+
+    private static Rule parseRule(String line) {
+        Scanner in = new Scanner(line);
+        String actionName = in.word();
+        RuleAction action;
+        try {
+            action = RuleAction.valueOf(actionName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown action '" + actionName + "'");
+        }
+
+        String sound = null;
+        Set<String> senders = new LinkedHashSet<>();
+        Set<String> groups = new LinkedHashSet<>();
+        Set<String> keywords = new LinkedHashSet<>();
+        int startMinute = -1;
+        int endMinute = -1;
+        int days = Rule.ALL_DAYS;
+        while (in.skipSpaces()) {
+            String key = in.key();
+            List<String> values = in.values();
+            switch (key) {
+                case "from":
+                    senders.addAll(values);
+                    break;
+                case "group":
+                    groups.addAll(values);
+                    break;
+                case "keyword":
+                    keywords.addAll(values);
+                    break;
+                case "sound":
+                    if (action != RuleAction.LOUD || values.size() != 1) {
+                        throw new IllegalArgumentException("sound needs a loud rule and a single value");
+                    }
+                    sound = values.get(0);
+                    break;
+                case "time": {
+                    String[] range = single(key, values).split("-");
+                    if (range.length != 2) {
+                        throw new IllegalArgumentException("time must look like 22:00-07:30");
+                    }
+                    startMinute = minuteOf(range[0]);
+                    endMinute = minuteOf(range[1]);
+                    if (startMinute == endMinute) {
+                        throw new IllegalArgumentException("time window is empty");
+                    }
+                    break;
+                }
+                case "days":
+                    days = 0;
+                    for (String value : values) {
+                        days |= daysOf(value);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown condition '" + key + "'");
+            }
+        }
+        return new Rule(action, sound, senders, groups, keywords, startMinute, endMinute, days);
+    }
+
+    private static String single(String key, List<String> values) {
+        if (values.size() != 1) {
+            throw new IllegalArgumentException(key + " takes one value");
+        }
+        return values.get(0);
+    }
+
+    private static int minuteOf(String time) {
+        String[] parts = time.trim().split(":");
+        try {
+            int hour = Integer.parseInt(parts[0]);
+            int minute = parts.length == 2 ? Integer.parseInt(parts[1]) : -1;
+            if (parts.length == 2 && hour >= 0 && hour <= 24 && minute >= 0 && minute < 60
+                    && hour * 60 + minute <= Rule.MINUTES_PER_DAY) {
+                return (hour * 60 + minute) % Rule.MINUTES_PER_DAY;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("bad time '" + time + "'");
+    }
+
+    // "mon" or a range such as "mon-fri" or "fri-mon"
+    private static int daysOf(String value) {
+        String[] range = value.toLowerCase(Locale.ROOT).split("-");
+        int from = dayIndex(range[0]);
+        int to = range.length == 2 ? dayIndex(range[1]) : from;
+        if (range.length > 2) {
+            throw new IllegalArgumentException("bad days '" + value + "'");
+        }
+        int mask = 0;
+        for (int day = from; ; day = (day + 1) % 7) {
+            mask |= 1 << day;
+            if (day == to) {
+                return mask;
+            }
+        }
+    }
+
+    private static int dayIndex(String name) {
+        for (int i = 0; i < DAY_NAMES.length; i++) {
+            if (DAY_NAMES[i].equals(name.trim())) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unknown day '" + name + "'");
+    }
+
+    /** Walks one rule line: words, keys up to '=', and comma-separated, optionally quoted values. */
+    private static final class Scanner {
+        private final String line;
+        private int pos;
+
+        Scanner(String line) {
+            this.line = line;
+        }
+
+        /** Skips whitespace; false at the end of the line. */
+        boolean skipSpaces() {
+            while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+            return pos < line.length();
+        }
+
+        String word() {
+            skipSpaces();
+            int start = pos;
+            while (pos < line.length() && !Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+            return line.substring(start, pos);
+        }
+
+        String key() {
+            int start = pos;
+            while (pos < line.length() && line.charAt(pos) != '=' && !Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= line.length() || line.charAt(pos) != '=') {
+                throw new IllegalArgumentException("expected key=value at '" + line.substring(start, pos) + "'");
+            }
+            pos++;
+            return line.substring(start, pos - 1).toLowerCase(Locale.ROOT);
+        }
+
+        List<String> values() {
+            List<String> values = new ArrayList<>();
+            while (true) {
+                String value = pos < line.length() && line.charAt(pos) == '"' ? quoted() : bare();
+                // A quoted "" or " " would make a rule that can never match
+                if (isBlank(value)) {
+                    throw new IllegalArgumentException("empty value");
+                }
+                values.add(value);
+                if (pos < line.length() && line.charAt(pos) == ',') {
+                    pos++;
+                } else {
+                    return values;
+                }
+            }
+        }
+
+        // String.isBlank needs API 33; whitespace as the scanner itself splits on it
+        private static boolean isBlank(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (!Character.isWhitespace(value.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String quoted() {
+            int end = line.indexOf('"', pos + 1);
+            if (end < 0) {
+                throw new IllegalArgumentException("unterminated quote");
+            }
+            String value = line.substring(pos + 1, end);
+            pos = end + 1;
+            return value;
+        }
+
+        private String bare() {
+            int start = pos;
+            while (pos < line.length() && line.charAt(pos) != ',' && !Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+            return line.substring(start, pos);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A list of {@link Rule}s compiled into a decision table: every condition
+ * dimension maps its value to a bitset of the rules it allows, so
+ * evaluation is a few hash lookups, one keyword scan and an AND across
+ * {@code rules / 64} words. The lowest set bit is the first rule in
+ * precedence order that matches.
+ *
+ * <ul>
+ *   <li>sender and group: a {@link ContactIndex} of the names the rules list, so they match
+ *       the way contacts do (NFKC, case, spaces and emoji ignored), plus a bitset of rules
+ *       without the condition;</li>
+ *   <li>keywords: one {@link KeywordMatcher} over every rule's keywords, each keyword
+ *       carrying the bitset of rules that list it;</li>
+ *   <li>time of day: one bitset per stretch of minutes in which no rule starts or ends,
+ *       indexed by a 1440-entry minute table;</li>
+ *   <li>day of week: seven bitsets.</li>
+ * </ul>
+ *
+ * Immutable and shareable; {@link #evaluate} only writes to the caller's
+ * scratch array and never allocates.
+ */
+public final class RuleTable {
+    public static final RuleTable EMPTY = compile(Collections.<Rule>emptyList());
+
+    private final Rule[] rules;
+    private final int words;
+    private final NameMasks bySender;
+    private final long[] anySender;
+    private final NameMasks byGroup;
+    private final long[] anyGroup;
+    private final KeywordMatcher keywords;
+    private final long[][] keywordMasks;
+    private final long[] anyKeyword;
+    private final short[] minuteRow;
+    private final long[][] minuteMasks;
+    private final long[][] dayMasks;
+
+    private RuleTable(Rule[] rules, int words, NameMasks bySender, long[] anySender,
+                      NameMasks byGroup, long[] anyGroup, KeywordMatcher keywords,
+                      long[][] keywordMasks, long[] anyKeyword, short[] minuteRow, long[][] minuteMasks,
+                      long[][] dayMasks) {
+        this.rules = rules;
+        this.words = words;
+        this.bySender = bySender;
+        this.anySender = anySender;
+        this.byGroup = byGroup;
+        this.anyGroup = anyGroup;
+        this.keywords = keywords;
+        this.keywordMasks = keywordMasks;
+        this.anyKeyword = anyKeyword;
+        this.minuteRow = minuteRow;
+        this.minuteMasks = minuteMasks;
+        this.dayMasks = dayMasks;
+    }
+
+    public static RuleTable compile(List<Rule> ruleList) {
+        Rule[] rules = ruleList.toArray(new Rule[0]);
+        int words = Math.max(1, (rules.length + 63) >>> 6);
+
+        Map<String, long[]> bySender = new LinkedHashMap<>();
+        Map<String, long[]> byGroup = new LinkedHashMap<>();
+        long[] anySender = new long[words];
+        long[] anyGroup = new long[words];
+        long[] anyKeyword = new long[words];
+        Set<String> allKeywords = new LinkedHashSet<>();
+        for (int r = 0; r < rules.length; r++) {
+            Rule rule = rules[r];
+            index(rule.senders, r, words, bySender, anySender);
+            index(rule.groups, r, words, byGroup, anyGroup);
+            if (rule.keywords.isEmpty()) {
+                set(anyKeyword, r);
+            }
+            allKeywords.addAll(rule.keywords);
+        }
+
+        KeywordMatcher keywords = KeywordMatcher.compile(allKeywords);
+        long[][] keywordMasks = new long[keywords.size()][words];
+        for (int r = 0; r < rules.length; r++) {
+            for (String keyword : rules[r].keywords) {
+                int k = keywords.indexOf(keyword);
+                if (k >= 0) {
+                    set(keywordMasks[k], r);
+                }
+            }
+        }
+
+        // Consecutive minutes with the same set of active rules share a row
+        short[] minuteRow = new short[Rule.MINUTES_PER_DAY];
+        List<long[]> minuteMasks = new ArrayList<>();
+        long[] previous = null;
+        for (int minute = 0; minute < Rule.MINUTES_PER_DAY; minute++) {
+            long[] mask = new long[words];
+            for (int r = 0; r < rules.length; r++) {
+                if (rules[r].coversMinute(minute)) {
+                    set(mask, r);
+                }
+            }
+            if (previous == null || !Arrays.equals(previous, mask)) {
+                minuteMasks.add(mask);
+                previous = mask;
+            }
+            minuteRow[minute] = (short) (minuteMasks.size() - 1);
+        }
+
+        long[][] dayMasks = new long[7][words];
+        for (int day = 0; day < 7; day++) {
+            for (int r = 0; r < rules.length; r++) {
+                if (rules[r].coversDay(day)) {
+                    set(dayMasks[day], r);
+                }
+            }
+        }
+
+        return new RuleTable(rules, words, new NameMasks(bySender), anySender, new NameMasks(byGroup), anyGroup,
+                keywords, keywordMasks, anyKeyword, minuteRow, minuteMasks.toArray(new long[0][]), dayMasks);
+    }
+
+    // Names are merged under their normalized key, so "张三" and "张三 " in two rules share a mask
+    private static void index(Set<String> values, int rule, int words, Map<String, long[]> byValue, long[] any) {
+        if (values.isEmpty()) {
+            set(any, rule);
+            return;
+        }
+        for (String value : values) {
+            value = ContactIndex.normalize(value);
+            long[] mask = byValue.get(value);
+            if (mask == null) {
+                mask = new long[words];
+                byValue.put(value, mask);
+            }
+            set(mask, rule);
+        }
+    }
+
+    /** Rule bitsets by sender or group name, looked up through a {@link ContactIndex} without allocating. */
+    private static final class NameMasks {
+        final ContactIndex index;
+        final long[][] masks;
+
+        NameMasks(Map<String, long[]> byKey) {
+            index = ContactIndex.build(byKey.keySet(), Collections.<String, List<String>>emptyMap());
+            masks = byKey.values().toArray(new long[0][]);
+        }
+
+        long[] get(CharSequence name) {
+            int found = index.find(name);
+            return found >= 0 ? masks[found] : null;
+        }
+    }
+
+    private static void set(long[] mask, int bit) {
+        mask[bit >>> 6] |= 1L << bit;
+    }
+
+    /** Scratch space {@link #evaluate} needs; reuse it across calls. */
+    public long[] newScratch() {
+        return new long[2 * words];
+    }
+
+    public int scratchSize() {
+        return 2 * words;
+    }
+
+    /**
+     * Returns the index of the first rule matching the message, or -1.
+     *
+     * @param sender      message author; the conversation title for a direct chat
+     * @param title       conversation title
+     * @param group       whether the conversation is a group chat
+     * @param minuteOfDay local time, 0 to 1439
+     * @param dayOfWeek   0 for Monday through 6 for Sunday
+     * @param scratch     at least {@link #scratchSize()} longs, overwritten
+     */
+    public int evaluate(CharSequence sender, String title, boolean group, CharSequence body,
+                        int minuteOfDay, int dayOfWeek, long[] scratch) {
+        if (rules.length == 0) {
+            return -1;
+        }
+        long[] senderMask = bySender.get(sender);
+        long[] groupMask = group && title != null ? byGroup.get(title) : null;
+        long[] minuteMask = minuteMasks[minuteRow[minuteOfDay]];
+        long[] dayMask = dayMasks[dayOfWeek];
+
+        // Everything but keywords first; the body is only scanned if a keyword rule is still in play
+        boolean needsKeywords = false;
+        boolean any = false;
+        for (int w = 0; w < words; w++) {
+            long bits = (anySender[w] | (senderMask != null ? senderMask[w] : 0))
+                    & (anyGroup[w] | (groupMask != null ? groupMask[w] : 0))
+                    & minuteMask[w] & dayMask[w];
+            scratch[w] = bits;
+            any |= bits != 0;
+            needsKeywords |= (bits & ~anyKeyword[w]) != 0;
+        }
+        if (!any) {
+            return -1;
+        }
+
+        System.arraycopy(anyKeyword, 0, scratch, words, words);
+        if (needsKeywords) {
+            keywords.orMatchMasks(body, keywordMasks, scratch, words);
+        }
+        for (int w = 0; w < words; w++) {
+            long bits = scratch[w] & scratch[words + w];
+            if (bits != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    public Rule rule(int index) {
+        return rules[index];
+    }
+
+    public int size() {
+        return rules.length;
+    }
+}
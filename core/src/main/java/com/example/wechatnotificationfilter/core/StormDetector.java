@@ -0,0 +1,103 @@
+package com.example.wechatnotificationfilter.core;
+
+/**
+ * Tells when messages arrive too fast to repost one by one: a holiday
+ * greeting wave, a large group's announcement. Keeps an exponentially
+ * weighted moving average of the arrival rate, updated in O(1) on every
+ * message, and switches storm mode on above {@code enterPerMinute} and off
+ * again only once the rate has dropped below half of it, so the mode does
+ * not flap around the threshold.
+ *
+ * <p>In storm mode the service only counts and cancels non-priority
+ * messages; priority messages are still reposted at once. Transitions are
+ * counted in {@link FilterMetrics#GLOBAL} and recorded in the trace.
+ *
+ * <p>Messages are recorded on the listener thread and the mode is read on
+ * the pipeline worker, which also calls {@link #update} to notice a storm
+ * ending when no more messages arrive.
+ */
+public final class StormDetector {
+    private static final double NANOS_PER_MINUTE = 60e9;
+
+    private final double tauNanos;
+    private int enterPerMinute;
+    // Messages per minute, as of lastNanos
+    private double rate;
+    private long lastNanos;
+    private boolean started;
+    private volatile boolean storm;
+    private long stormStartedNanos;
+
+    /**
+     * @param enterPerMinute rate that turns storm mode on; 0 never does
+     * @param tauNanos       time constant of the average: how long a burst takes to count fully
+     */
+    public StormDetector(int enterPerMinute, long tauNanos) {
+        if (tauNanos <= 0) {
+            throw new IllegalArgumentException("tauNanos must be positive: " + tauNanos);
+        }
+        this.tauNanos = tauNanos;
+        setThreshold(enterPerMinute);
+    }
+
+    /** Counts one message; returns whether storm mode is on afterwards. */
+    public synchronized boolean onMessage(long nowNanos) {
+        decay(nowNanos);
+        // One event spread over the time constant, in events per minute
+        rate += NANOS_PER_MINUTE / tauNanos;
+        return transition(nowNanos);
+    }
+
+    /** Lets the average decay to {@code nowNanos} without a message; returns whether storm mode is on. */
+    public synchronized boolean update(long nowNanos) {
+        decay(nowNanos);
+        return transition(nowNanos);
+    }
+
+    private void decay(long nowNanos) {
+        if (started) {
+            long elapsed = nowNanos - lastNanos;
+            if (elapsed > 0) {
+                rate *= Math.exp(-elapsed / tauNanos);
+            }
+        }
+        started = true;
+        lastNanos = Math.max(lastNanos, nowNanos);
+    }
+
+    private boolean transition(long nowNanos) {
+        if (!storm && enterPerMinute > 0 && rate > enterPerMinute) {
+            storm = true;
+            stormStartedNanos = nowNanos;
+            FilterMetrics.GLOBAL.increment(FilterMetrics.Counter.STORM_ENTERED);
+            Trace.record(TraceEvent.STORM, 1, Math.round(rate));
+        } else if (storm && (enterPerMinute == 0 || rate < enterPerMinute / 2.0)) {
+            storm = false;
+            FilterMetrics.GLOBAL.recordLatency(FilterMetrics.Stage.STORM, nowNanos - stormStartedNanos);
+            Trace.record(TraceEvent.STORM, 0, Math.round(rate));
+        }
+        return storm;
+    }
+
+    /** Whether storm mode is on, as of the last message or update. */
+    public boolean isStorm() {
+        return storm;
+    }
+
+    /** Changes the rate that turns storm mode on; 0 turns it off at the next update. */
+    public synchronized void setThreshold(int enterPerMinute) {
+        if (enterPerMinute < 0) {
+            throw new IllegalArgumentException("enterPerMinute must not be negative: " + enterPerMinute);
+        }
+        this.enterPerMinute = enterPerMinute;
+    }
+
+    public synchronized int threshold() {
+        return enterPerMinute;
+    }
+
+    /** The average rate in messages per minute, as of the last message or update. */
+    public synchronized double ratePerMinute() {
+        return rate;
+    }
+}
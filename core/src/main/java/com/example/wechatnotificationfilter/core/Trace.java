@@ -0,0 +1,21 @@
+package com.example.wechatnotificationfilter.core;
+
+/**
+ * Process-wide trace ring. The service records into it from the hot path;
+ * the UI and dumpsys read it on demand.
+ */
+public final class Trace {
+    public static final TraceRing RING = new TraceRing(2048);
+
+    public static void record(int event, long a, long b) {
+        RING.record(event, a, b);
+    }
+
+    /** Stable, allocation-free hash used as a trace argument for strings. */
+    public static long hash(String value) {
+        return value != null ? value.hashCode() : 0;
+    }
+
+    private Trace() {
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.wechatnotificationfilter.core;
+
+/**
+ * Event ids recorded in {@link Trace#RING}, with what their two arguments
+ * hold.
+ */
+public final class TraceEvent {
+    /** a = notification key hash, b = post time (ms). */
+    public static final int INGEST = 1;
+    /**
+     * a = notification key hash, b = 0 silent, 1 priority, 2 escalated by a
+     * keyword or mention, 3 dropped by a rule, 4 sent to the digest.
+     */
+    public static final int CLASSIFY = 2;
+    /** a = notification key hash, b = 0. */
+    public static final int CANCEL_ORIGINAL = 3;
+    /**
+     * a = conversation key hash, or the notification id for a silenced chat
+     * or their summary; b = messages shown, negated if the post alerts.
+     */
+    public static final int POST = 4;
+    /** a = notification key hash of the dropped entry, b = queue capacity. */
+    public static final int QUEUE_DROP = 5;
+    /** a = notification key hash, b = queue capacity. */
+    public static final int QUEUE_COALESCE = 6;
+    /** a = contact hash, b = sound hash. */
+    public static final int CHANNEL_CREATE = 7;
+    /** a = contact hash, b = 0. */
+    public static final int CHANNEL_DELETE = 8;
+    /** a = notification key hash, or 0 for a tick failure; b = 0. */
+    public static final int ERROR = 9;
+    /** a = notification key hash, b = post time (ms). */
+    public static final int DUPLICATE = 10;
+    /** a = contact hash, b = conversation key hash of the update posted silently. */
+    public static final int THROTTLE = 11;
+    /** a = 1 entering storm mode, 0 leaving it; b = message rate per minute. */
+    public static final int STORM = 12;
+
+    private static final String[] NAMES = {
+            "?", "INGEST", "CLASSIFY", "CANCEL_ORIGINAL", "POST", "QUEUE_DROP", "QUEUE_COALESCE",
+            "CHANNEL_CREATE", "CHANNEL_DELETE", "ERROR", "DUPLICATE", "THROTTLE", "STORM"
+    };
+
+    public static String name(int event) {
+        return event > 0 && event < NAMES.length ? NAMES[event] : "EVENT_" + event;
+    }
+
+    private TraceEvent() {
+    }
+}
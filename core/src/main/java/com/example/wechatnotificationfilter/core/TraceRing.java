@@ -0,0 +1,121 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free ring of trace records. A record is an event id and
+ * two long arguments plus a timestamp, stored in primitive arrays, so
+ * recording never allocates or formats strings.
+ *
+ * <p>Writers claim a sequence number with one atomic increment, then the
+ * slot itself by swapping its sequence number for a busy mark, and publish
+ * the record by writing their own number to the slot last. Only the writer
+ * holding the mark writes the slot's fields, so two writers a whole ring
+ * apart never interleave; one that finds the slot busy, or already holding
+ * a newer record, drops its record and counts it instead of waiting.
+ * Readers skip any slot whose sequence number is not the one expected or
+ * changes while it is being read, so a dump taken during heavy writing may
+ * miss records but never shows a torn one. Once the ring is full the
+ * oldest records are overwritten.
+ */
+public final class TraceRing {
+
+    public interface Visitor {
+        void visit(long sequence, long timeNanos, int event, long a, long b);
+    }
+
+    // Slot sequence numbers: -1 before the first record, BUSY while a writer fills the slot
+    private static final long EMPTY = -1;
+    private static final long BUSY = -2;
+
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray times;
+    private final AtomicLongArray events;
+    private final AtomicLongArray argsA;
+    private final AtomicLongArray argsB;
+
+    /** @param capacity number of records kept; must be a power of two */
+    public TraceRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        times = new AtomicLongArray(capacity);
+        events = new AtomicLongArray(capacity);
+        argsA = new AtomicLongArray(capacity);
+        argsB = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, EMPTY);
+        }
+    }
+
+    public void record(int event, long a, long b) {
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        long current = sequences.get(slot);
+        if (current == BUSY || current > sequence || !sequences.compareAndSet(slot, current, BUSY)) {
+            // Another writer is filling the slot, or a newer record already did
+            dropped.incrementAndGet();
+            return;
+        }
+        times.set(slot, System.nanoTime());
+        events.set(slot, event);
+        argsA.set(slot, a);
+        argsB.set(slot, b);
+        sequences.set(slot, sequence);
+    }
+
+    /** Visits the retained records from oldest to newest; returns how many were visited. */
+    public int forEach(Visitor visitor) {
+        long end = cursor.get();
+        long start = Math.max(0, end - (mask + 1));
+        int visited = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask);
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            long time = times.get(slot);
+            int event = (int) events.get(slot);
+            long a = argsA.get(slot);
+            long b = argsB.get(slot);
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            visitor.visit(sequence, time, event, a, b);
+            visited++;
+        }
+        return visited;
+    }
+
+    /** Total number of records ever written, including overwritten and dropped ones. */
+    public long recorded() {
+        return cursor.get();
+    }
+
+    /** Records given up because another writer held their slot; only under heavy contention. */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /** Writes the retained records, with times relative to now, for dumpsys or the UI. */
+    public void dump(final PrintWriter out) {
+        final long now = System.nanoTime();
+        out.println("Trace (" + recorded() + " recorded, " + dropped() + " dropped, last " + capacity() + " kept):");
+        forEach((sequence, timeNanos, event, a, b) ->
+                out.println(String.format(Locale.US, "  #%d %+10.3fms %-18s a=%d b=%d",
+                        sequence, (timeNanos - now) / 1e6, TraceEvent.name(event), a, b)));
+        out.flush();
+    }
+}
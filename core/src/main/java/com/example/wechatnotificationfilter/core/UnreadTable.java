@@ -0,0 +1,334 @@
+package com.example.wechatnotificationfilter.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unread state of the conversations whose messages were silenced: how many
+ * are unread, the last one and when it arrived. Silent traffic is shown as
+ * one group of notifications under a single summary instead of one post
+ * per message, and this table is what that group is drawn from.
+ *
+ * <p>{@link #record} is O(1). Changes are handed out by {@link #refreshDue}
+ * at most once per refresh interval, so a busy group costs one update of
+ * its notification every few seconds however fast it talks. The table is
+ * small (a preview per conversation, not the messages) and is saved whole
+ * with {@link #save} after a refresh, so the counts survive the process
+ * being killed.
+ *
+ * <p>Past {@code maxConversations} the least recently updated
+ * conversation is forgotten; if it was unread, the next refresh lists it
+ * so its notification can be cancelled. Its id is not reused.
+ *
+ * <p>All methods are synchronized: messages are recorded on the pipeline
+ * worker, while removals arrive on the listener's main thread.
+ */
+public final class UnreadTable {
+    /** Notification ids of silent conversations start here, well clear of {@link ConversationAggregator}'s. */
+    public static final int FIRST_NOTIFICATION_ID = 1_000_000;
+    // Longest preview kept of the last message
+    static final int MAX_PREVIEW_CHARS = 200;
+    private static final int MAGIC = 0x57435554;
+
+    /** One conversation's state; a copy, safe to use outside the lock. */
+    public static final class Conversation {
+        public final String key;
+        public final int notificationId;
+        public final String title;
+        public final int unread;
+        public final String lastSender;
+        public final String lastText;
+        public final long lastTime;
+
+        Conversation(State e) {
+            this.key = e.key;
+            this.notificationId = e.notificationId;
+            this.title = e.title;
+            this.unread = e.unread;
+            this.lastSender = e.lastSender;
+            this.lastText = e.lastText;
+            this.lastTime = e.lastTime;
+        }
+    }
+
+    /** What to post on a refresh: the conversations that changed, and the totals for the summary. */
+    public static final class Refresh {
+        /** Conversations with new messages since the last refresh, to post again. */
+        public final List<Conversation> changed;
+        /** Unread conversations forgotten to make room since the last refresh, to cancel. */
+        public final List<Conversation> forgotten;
+        /** Unread conversations, most recent first, for the summary's lines. */
+        public final List<Conversation> recent;
+        public final int unreadMessages;
+        public final int unreadConversations;
+
+        Refresh(List<Conversation> changed, List<Conversation> forgotten, List<Conversation> recent,
+                int unreadMessages, int unreadConversations) {
+            this.changed = changed;
+            this.forgotten = forgotten;
+            this.recent = recent;
+            this.unreadMessages = unreadMessages;
+            this.unreadConversations = unreadConversations;
+        }
+    }
+
+    private static final class State {
+        final String key;
+        final int notificationId;
+        String title;
+        int unread;
+        String lastSender;
+        String lastText;
+        long lastTime;
+        boolean changed;
+
+        State(String key, int notificationId) {
+            this.key = key;
+            this.notificationId = notificationId;
+        }
+    }
+
+    private final long refreshIntervalMillis;
+    private final Map<String, State> entries;
+    // Evicted while their notification may still be showing, until the next refresh hands them out
+    private List<Conversation> forgotten = new ArrayList<>();
+    private int nextNotificationId = FIRST_NOTIFICATION_ID;
+    private int unreadMessages;
+    private int unreadConversations;
+    // Something changed since the last refresh; the summary's totals at least need redrawing
+    private boolean changed;
+    // Changed since the last save
+    private boolean unsaved;
+    private long lastRefreshAt = Long.MIN_VALUE / 2;
+
+    /**
+     * @param maxConversations conversations kept before the least recently updated is forgotten
+     * @param refreshIntervalMillis shortest time between two refreshes
+     */
+    public UnreadTable(final int maxConversations, long refreshIntervalMillis) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.entries = new LinkedHashMap<String, State>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, State> eldest) {
+                if (size() <= maxConversations) {
+                    return false;
+                }
+                forget(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /** Counts a silenced message against its conversation. */
+    public synchronized void record(String conversationKey, String title, String sender, String text,
+                                    long timeMillis) {
+        State e = entries.get(conversationKey);
+        if (e == null) {
+            e = new State(conversationKey, nextNotificationId++);
+            entries.put(conversationKey, e);
+        }
+        if (e.unread == 0) {
+            unreadConversations++;
+        }
+        e.unread++;
+        unreadMessages++;
+        e.title = title;
+        e.lastSender = sender;
+        e.lastText = text != null && text.length() > MAX_PREVIEW_CHARS ? text.substring(0, MAX_PREVIEW_CHARS) : text;
+        e.lastTime = timeMillis;
+        e.changed = true;
+        changed = true;
+        unsaved = true;
+    }
+
+    /**
+     * Marks a conversation read once its notification was dismissed or
+     * opened. The notification carries the conversation key as its tag.
+     *
+     * @return whether the key belonged to one of the table's conversations
+     */
+    public synchronized boolean markRead(String conversationKey) {
+        State e = entries.get(conversationKey);
+        if (e == null) {
+            return false;
+        }
+        clearUnread(e);
+        // Already gone from the shade; only the summary needs redrawing
+        e.changed = false;
+        return true;
+    }
+
+    /** Marks everything read, as when the whole group was dismissed. */
+    public synchronized void markAllRead() {
+        for (State e : entries.values()) {
+            clearUnread(e);
+            e.changed = false;
+        }
+    }
+
+    private void clearUnread(State e) {
+        if (e.unread > 0) {
+            unreadMessages -= e.unread;
+            unreadConversations--;
+            e.unread = 0;
+            changed = true;
+            unsaved = true;
+        }
+    }
+
+    private void forget(State e) {
+        if (e.unread > 0) {
+            unreadMessages -= e.unread;
+            unreadConversations--;
+            forgotten.add(new Conversation(e));
+        }
+        changed = true;
+        unsaved = true;
+    }
+
+    /**
+     * The changes to post, if something changed and the refresh interval
+     * has passed since the last refresh; null otherwise.
+     */
+    public synchronized Refresh refreshDue(long nowMillis) {
+        if (!changed || nowMillis - lastRefreshAt < refreshIntervalMillis) {
+            return null;
+        }
+        return refresh(nowMillis);
+    }
+
+    /** The changes to post now, regardless of the interval; null if nothing changed. */
+    public synchronized Refresh refreshNow(long nowMillis) {
+        return changed ? refresh(nowMillis) : null;
+    }
+
+    private Refresh refresh(long nowMillis) {
+        List<Conversation> changedConversations = new ArrayList<>();
+        List<Conversation> recent = new ArrayList<>(unreadConversations);
+        for (State e : entries.values()) {
+            if (e.changed) {
+                changedConversations.add(new Conversation(e));
+                e.changed = false;
+            }
+            if (e.unread > 0) {
+                recent.add(new Conversation(e));
+            }
+        }
+        // Only sorted once per refresh, not per message
+        recent.sort((a, b) -> Long.compare(b.lastTime, a.lastTime));
+        List<Conversation> forgottenConversations = forgotten;
+        forgotten = new ArrayList<>();
+        changed = false;
+        lastRefreshAt = nowMillis;
+        return new Refresh(changedConversations, forgottenConversations, Collections.unmodifiableList(recent),
+                unreadMessages, unreadConversations);
+    }
+
+    /** Milliseconds until the next refresh is due, 0 if one is due now, or -1 if nothing changed. */
+    public synchronized long nextRefreshDelay(long nowMillis) {
+        if (!changed) {
+            return -1;
+        }
+        return Math.max(0, lastRefreshAt + refreshIntervalMillis - nowMillis);
+    }
+
+    public synchronized int unreadMessages() {
+        return unreadMessages;
+    }
+
+    public synchronized int unreadConversations() {
+        return unreadConversations;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the table to {@code file} through a temporary file and a
+     * rename, if it changed since the last save.
+     */
+    public synchronized void save(File file) throws IOException {
+        if (!unsaved) {
+            return;
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(nextNotificationId);
+            out.writeInt(entries.size());
+            // Least recently updated first, so loading restores the order
+            for (State e : entries.values()) {
+                out.writeUTF(e.key);
+                out.writeInt(e.notificationId);
+                writeNullable(out, e.title);
+                out.writeInt(e.unread);
+                writeNullable(out, e.lastSender);
+                writeNullable(out, e.lastText);
+                out.writeLong(e.lastTime);
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Could not rename " + temporary + " to " + file);
+        }
+        unsaved = false;
+    }
+
+    /** Reads a table saved by {@link #save}; an empty one if the file does not exist. */
+    public static UnreadTable load(File file, int maxConversations, long refreshIntervalMillis) throws IOException {
+        UnreadTable table = new UnreadTable(maxConversations, refreshIntervalMillis);
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return table;
+        }
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an unread table: " + file);
+            }
+            int nextNotificationId = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                State e = new State(in.readUTF(), in.readInt());
+                e.title = readNullable(in);
+                e.unread = in.readInt();
+                e.lastSender = readNullable(in);
+                e.lastText = readNullable(in);
+                e.lastTime = in.readLong();
+                table.entries.put(e.key, e);
+                if (e.unread > 0) {
+                    table.unreadMessages += e.unread;
+                    table.unreadConversations++;
+                }
+            }
+            table.nextNotificationId = Math.max(nextNotificationId, FIRST_NOTIFICATION_ID);
+        } finally {
+            in.close();
+        }
+        return table;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AlertThrottleTest {
+    private long now = 1_000_000;
+    private final AlertThrottle throttle = new AlertThrottle(3, 60_000, () -> now);
+
+    @Test
+    public void burstThenSilentUntilRefill() {
+        assertTrue(throttle.tryAlert("妈妈"));
+        assertTrue(throttle.tryAlert("妈妈"));
+        assertTrue(throttle.tryAlert("妈妈"));
+        assertEquals(0, throttle.available("妈妈"));
+        for (int i = 0; i < 30; i++) {
+            assertFalse(throttle.tryAlert("妈妈"));
+        }
+
+        now += 59_999;
+        assertFalse(throttle.tryAlert("妈妈"));
+        now += 1;
+        assertTrue(throttle.tryAlert("妈妈"));
+        assertFalse(throttle.tryAlert("妈妈"));
+    }
+
+    @Test
+    public void contactsHaveSeparateBuckets() {
+        for (int i = 0; i < 3; i++) {
+            throttle.tryAlert("老王");
+        }
+        assertFalse(throttle.tryAlert("老王"));
+        assertTrue(throttle.tryAlert("老李"));
+        assertEquals(2, throttle.available("老李"));
+    }
+
+    @Test
+    public void refillsGraduallyAndCapsAtBurst() {
+        throttle.tryAlert("a");
+        throttle.tryAlert("a");
+        assertEquals(1, throttle.available("a"));
+        now += 30_000;
+        assertEquals(1, throttle.available("a"));
+        now += 30_000;
+        assertEquals(2, throttle.available("a"));
+        now += 3_600_000;
+        assertEquals(3, throttle.available("a"));
+    }
+
+    @Test
+    public void refilledBucketsAreEvicted() {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(throttle.tryAlert("contact" + i));
+            now += 1_000;
+        }
+        // Only contacts from the last refill period can still be short of tokens
+        assertTrue(throttle.tracked() < 200);
+
+        now += 10_000_000;
+        assertTrue(throttle.tryAlert("contact1"));
+        assertEquals(2, throttle.available("contact1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBurst() {
+        new AlertThrottle(0, 1_000, () -> now);
+    }
+}
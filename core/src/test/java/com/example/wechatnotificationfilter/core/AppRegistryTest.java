@@ -0,0 +1,78 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.junit.Test;
+
+public class AppRegistryTest {
+
+    @Test
+    public void dispatchesByPackage() {
+        AppRegistry apps = AppRegistry.DEFAULT;
+
+        assertSame(AppRegistry.WECHAT, apps.find("com.tencent.mm"));
+        assertSame(AppRegistry.QQ, apps.find("com.tencent.mobileqq"));
+        assertSame(AppRegistry.TELEGRAM, apps.find("org.telegram.messenger"));
+        assertEquals(1, apps.indexOf("com.tencent.wework"));
+        assertNull(apps.find("com.tencent.mmx"));
+        assertNull(apps.find("com.android.systemui"));
+        assertNull(apps.find(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicatePackages() {
+        new AppRegistry(Arrays.asList(AppRegistry.WECHAT, AppRegistry.WECHAT));
+    }
+
+    @Test
+    public void qqTitleCounterIsStripped() {
+        assertEquals("张三", AppRegistry.QQ.conversationTitle("张三 (3条新消息)"));
+        assertEquals("Team", AppRegistry.QQ.conversationTitle("Team (12 new messages)"));
+        assertEquals("张三 (同事)", AppRegistry.QQ.conversationTitle("张三 (同事)"));
+        assertEquals("(3条新消息)", AppRegistry.QQ.conversationTitle("(3条新消息)"));
+        // WeChat titles are left alone
+        assertEquals("张三 (3条新消息)", AppRegistry.WECHAT.conversationTitle("张三 (3条新消息)"));
+    }
+
+    @Test
+    public void conversationKeysKeepAppsApart() {
+        String wechat = AppRegistry.WECHAT.conversationKey("张三");
+        String qq = AppRegistry.QQ.conversationKey("张三");
+
+        assertTrue(!wechat.equals(qq));
+        assertSame(AppRegistry.WECHAT, AppRegistry.DEFAULT.forConversation(wechat));
+        assertSame(AppRegistry.QQ, AppRegistry.DEFAULT.forConversation(qq));
+        assertNull(AppRegistry.DEFAULT.forConversation("digest"));
+    }
+
+    @Test
+    public void classifiesWithTheAppsParserAndCountsPerApp() {
+        AppAdapter telegram = new AppAdapter("org.telegram.messenger", "Telegram",
+                Collections.singletonList(MessageFormats.TELEGRAM));
+        ContactSnapshot snapshot = new ContactSnapshot(new HashSet<>(Collections.singletonList("Alice")),
+                Collections.<String, String>emptyMap());
+        PriorityContactCache contacts = new PriorityContactCache(() -> snapshot);
+        contacts.refresh();
+        NotificationClassifier classifier = new NotificationClassifier(contacts, MessageTextParser.withDefaultFormats());
+
+        FilterDecision decision = classifier.classify(telegram, "Book Club", "Alice: chapter 3 tonight", 0);
+        assertEquals("Alice", classifier.lastParse().sender());
+        classifier.classify(telegram, "Book Club", "Bob: ok", 0);
+
+        assertTrue(decision.priority);
+        assertEquals(1, telegram.count(FilterMetrics.Counter.PRIORITY));
+        assertEquals(1, telegram.count(FilterMetrics.Counter.SILENT));
+
+        StringWriter out = new StringWriter();
+        new AppRegistry(Collections.singletonList(telegram)).dump(new PrintWriter(out));
+        assertTrue(out.toString().contains("Telegram"));
+    }
+}
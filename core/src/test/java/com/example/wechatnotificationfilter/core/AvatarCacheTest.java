@@ -0,0 +1,139 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class AvatarCacheTest {
+
+    // Sources are sizes in bytes; a downsampled avatar is a byte array of a tenth of that
+    private static class FakePlatform implements AvatarCache.Platform<Integer, byte[]> {
+        final Map<String, byte[]> disk = new HashMap<>();
+        int downsamples;
+
+        @Override
+        public byte[] downsample(Integer source) {
+            downsamples++;
+            return new byte[source / 10];
+        }
+
+        @Override
+        public int sizeOf(byte[] value) {
+            return value.length;
+        }
+
+        @Override
+        public byte[] load(String key) {
+            return disk.get(key);
+        }
+
+        @Override
+        public void store(String key, byte[] value) {
+            disk.put(key, value);
+        }
+    }
+
+    @Test
+    public void downsamplesOncePerConversation() throws Exception {
+        FakePlatform platform = new FakePlatform();
+        AvatarCache<Integer, byte[]> cache = new AvatarCache<>(platform, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            cache.offer("com.tencent.mm/项目组", 2000);
+            cache.get("com.tencent.mm/项目组");
+        }
+
+        assertEquals(1, platform.downsamples);
+        assertEquals(200, cache.get("com.tencent.mm/项目组").length);
+        assertEquals(200, cache.bytes());
+        assertEquals(101, cache.hits());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() throws Exception {
+        AvatarCache<Integer, byte[]> cache = new AvatarCache<>(new AvatarCache.Platform<Integer, byte[]>() {
+            @Override
+            public byte[] downsample(Integer source) {
+                return new byte[source];
+            }
+
+            @Override
+            public int sizeOf(byte[] value) {
+                return value.length;
+            }
+        }, 300);
+        cache.offer("a", 100);
+        cache.offer("b", 100);
+        cache.offer("c", 100);
+        cache.get("a");
+        cache.offer("d", 100);
+
+        assertNull(cache.get("b"));
+        assertEquals(100, cache.get("a").length);
+        assertEquals(3, cache.size());
+        assertEquals(300, cache.bytes());
+        assertEquals(1, cache.evictions());
+
+        // Too large to ever fit
+        cache.offer("e", 400);
+        assertNull(cache.get("e"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void diskTierRefillsMemory() throws Exception {
+        FakePlatform platform = new FakePlatform();
+        AvatarCache<Integer, byte[]> cache = new AvatarCache<>(platform, 1000);
+        cache.offer("com.tencent.mm/妈妈", 500);
+        byte[] stored = platform.disk.get("com.tencent.mm/妈妈");
+
+        cache.clear();
+        assertSame(stored, cache.get("com.tencent.mm/妈妈"));
+        assertSame(stored, cache.get("com.tencent.mm/妈妈"));
+        assertNull(cache.get("com.tencent.mm/张三"));
+
+        assertEquals(1, cache.diskHits());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(2 / 3.0, cache.hitRate(), 1e-9);
+    }
+
+    @Test
+    public void warmDiskSkipsDownsamplingAfterRestart() throws Exception {
+        FakePlatform platform = new FakePlatform();
+        AvatarCache<Integer, byte[]> before = new AvatarCache<>(platform, 1000);
+        before.offer("com.tencent.mm/妈妈", 500);
+        byte[] stored = platform.disk.get("com.tencent.mm/妈妈");
+        platform.downsamples = 0;
+
+        // A new process: memory is cold, the files are still there
+        AvatarCache<Integer, byte[]> after = new AvatarCache<>(platform, 1000);
+        after.offer("com.tencent.mm/妈妈", 500);
+        after.offer("com.tencent.mm/妈妈", 500);
+
+        assertEquals(0, platform.downsamples);
+        assertEquals(1, after.restored());
+        assertSame(stored, after.get("com.tencent.mm/妈妈"));
+        assertEquals(1, after.hits());
+        assertEquals(0, after.diskHits());
+    }
+
+    @Test
+    public void unreadableAvatarsAreSkipped() throws Exception {
+        AvatarCache<Integer, byte[]> cache = new AvatarCache<>(new FakePlatform() {
+            @Override
+            public byte[] downsample(Integer source) {
+                return null;
+            }
+        }, 1000);
+        cache.offer("a", 100);
+        cache.offer("b", null);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+}
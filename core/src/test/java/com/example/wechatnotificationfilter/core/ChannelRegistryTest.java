@@ -0,0 +1,97 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ChannelRegistryTest {
+
+    private static class CountingOps implements ChannelRegistry.ChannelOps {
+        final List<String> existing = new ArrayList<>();
+        final List<String> created = new ArrayList<>();
+        final List<String> deleted = new ArrayList<>();
+        int lists;
+
+        @Override
+        public List<String> listChannelIds() {
+            lists++;
+            return new ArrayList<>(existing);
+        }
+
+        @Override
+        public void createPriorityChannel(String channelId, String contactName, String soundUri) {
+            created.add(channelId);
+        }
+
+        @Override
+        public void createSilentChannel(String channelId) {
+            created.add(channelId);
+        }
+
+        @Override
+        public void deleteChannel(String channelId) {
+            deleted.add(channelId);
+        }
+    }
+
+    private static String channelId(String contact, String sound) {
+        return ChannelRegistry.PRIORITY_PREFIX + ChannelRegistry.contactHash(contact)
+                + "_" + ChannelRegistry.soundHash(sound);
+    }
+
+    @Test
+    public void steadyStateMakesNoChannelCalls() {
+        CountingOps ops = new CountingOps();
+        ChannelRegistry registry = new ChannelRegistry(ops);
+        registry.reconcile();
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(channelId("张三", "content://a"), registry.priorityChannel("张三", "content://a"));
+            assertEquals(ChannelRegistry.SILENT_CHANNEL_ID, registry.silentChannel());
+        }
+
+        assertEquals(1, ops.lists);
+        assertEquals(Arrays.asList(channelId("张三", "content://a"), ChannelRegistry.SILENT_CHANNEL_ID), ops.created);
+        assertEquals(0, ops.deleted.size());
+    }
+
+    @Test
+    public void reusesChannelsFoundAtReconcile() {
+        CountingOps ops = new CountingOps();
+        ops.existing.add(ChannelRegistry.SILENT_CHANNEL_ID);
+        ops.existing.add(channelId("张三", null));
+        ChannelRegistry registry = new ChannelRegistry(ops);
+        registry.reconcile();
+
+        registry.priorityChannel("张三", null);
+        registry.silentChannel();
+
+        assertEquals(0, ops.created.size());
+        assertEquals(0, ops.deleted.size());
+    }
+
+    @Test
+    public void soundChangeReplacesOnlyThatContactsChannel() {
+        CountingOps ops = new CountingOps();
+        ChannelRegistry registry = new ChannelRegistry(ops);
+        registry.reconcile();
+        registry.priorityChannel("张三", "content://a");
+        registry.priorityChannel("Bob", "content://a");
+
+        registry.priorityChannel("张三", "content://b");
+        registry.priorityChannel("张三", "content://b");
+
+        assertEquals(3, ops.created.size());
+        assertEquals(Arrays.asList(channelId("张三", "content://a")), ops.deleted);
+    }
+
+    @Test
+    public void contactHashPrefixesDoNotCollide() {
+        assertEquals("12", ChannelRegistry.contactKeyOf("priority_contact_12_default"));
+        assertEquals("-123", ChannelRegistry.contactKeyOf("priority_contact_-123_456"));
+        assertEquals(null, ChannelRegistry.contactKeyOf("silent_channel"));
+    }
+}
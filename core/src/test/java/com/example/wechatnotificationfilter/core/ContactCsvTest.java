@@ -0,0 +1,69 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class ContactCsvTest {
+    private static Map<String, String> attributes(String sound, String aliases) {
+        Map<String, String> attributes = new HashMap<>();
+        if (sound != null) {
+            attributes.put(ContactStore.SOUND, sound);
+        }
+        if (aliases != null) {
+            attributes.put(ContactStore.ALIASES, aliases);
+        }
+        return attributes;
+    }
+
+    @Test
+    public void roundTripsQuotedFields() throws IOException {
+        Map<String, Map<String, String>> contacts = new LinkedHashMap<>();
+        contacts.put("妈妈", attributes("content://media/internal/audio/media/12", null));
+        contacts.put("王建国", attributes(null, "老王\nWang, Jianguo"));
+        contacts.put("\"Bob\"", attributes(null, null));
+
+        StringWriter out = new StringWriter();
+        ContactCsv.write(out, contacts);
+        assertTrue(out.toString().startsWith("name,sound,aliases\n"));
+
+        Map<String, Map<String, String>> read = ContactCsv.read(new StringReader(out.toString()));
+        assertEquals(contacts, read);
+        assertEquals(Arrays.asList("妈妈", "王建国", "\"Bob\""), Arrays.asList(read.keySet().toArray()));
+    }
+
+    @Test
+    public void headerIsOptionalAndBlankRowsAreSkipped() throws IOException {
+        Map<String, Map<String, String>> read = ContactCsv.read(new StringReader(
+                "Alice,content://media/1\r\n\r\n  Bob  ,,\r\nAlice,content://media/2\r\n"));
+
+        assertEquals(Arrays.asList("Alice", "Bob"), Arrays.asList(read.keySet().toArray()));
+        assertEquals(attributes("content://media/2", null), read.get("Alice"));
+        assertEquals(attributes(null, null), read.get("Bob"));
+    }
+
+    @Test
+    public void errorsNameTheLine() throws IOException {
+        assertError("name,sound,aliases\nAlice\n\"Bob\nBobby\",x\n,content://media/1\n", "Line 5: empty name");
+        assertError("Alice,a,b,c\n", "Line 1: expected at most 3 fields, found 4");
+        assertError("Alice\nBob,,\"Bobby\n", "Line 2: unterminated quote");
+    }
+
+    private static void assertError(String csv, String message) throws IOException {
+        try {
+            ContactCsv.read(new StringReader(csv));
+            fail("Expected " + message);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class ContactIndexTest {
+    private static ContactSnapshot snapshot(Map<String, List<String>> aliases, String... contacts) {
+        return new ContactSnapshot(Arrays.asList(contacts), Collections.<String, String>emptyMap(), aliases);
+    }
+
+    @Test
+    public void ignoresWidthCaseWhitespaceAndEmoji() {
+        ContactSnapshot contacts = snapshot(Collections.<String, List<String>>emptyMap(), "张三", "Tom Lee", "🌸Lily🌸");
+
+        assertEquals("张三", contacts.match("张三 "));
+        assertEquals("张三", contacts.match("　张 三"));
+        assertEquals("Tom Lee", contacts.match("ｔｏｍ　ＬＥＥ"));
+        assertEquals("Tom Lee", contacts.match("TOMLEE"));
+        assertEquals("🌸Lily🌸", contacts.match("Lily"));
+        assertEquals("🌸Lily🌸", contacts.match("lily👍🏽"));
+        assertEquals("🌸Lily🌸", contacts.match("❤️Lily"));
+        assertNull(contacts.match("张四"));
+        assertNull(contacts.match("🌸"));
+        assertNull(contacts.match(""));
+        assertNull(contacts.match(null));
+    }
+
+    @Test
+    public void slowPathAgreesWithNormalizedKeys() {
+        ContactSnapshot contacts = snapshot(Collections.<String, List<String>>emptyMap(), "José", "ＡＢＣ", "①号");
+
+        // Decomposed accent, circled digit and non-breaking space all need full NFKC
+        assertEquals("José", contacts.match("José"));
+        assertEquals("José", contacts.match("JOSÉ "));
+        assertEquals("ＡＢＣ", contacts.match("abc"));
+        assertEquals("①号", contacts.match("1号"));
+        assertEquals("1号", ContactIndex.normalize("① 号"));
+    }
+
+    @Test
+    public void aliasesResolveToTheirContact() {
+        Map<String, List<String>> aliases = new HashMap<>();
+        aliases.put("王建国", Arrays.asList("老王", "Wang Jianguo"));
+        aliases.put("李雷", Collections.singletonList("老王"));
+        ContactSnapshot contacts = snapshot(aliases, "王建国", "李雷");
+
+        assertEquals("王建国", contacts.match("老王"));
+        assertEquals("王建国", contacts.match("wangjianguo"));
+        assertEquals("李雷", contacts.match("李雷"));
+
+        ContactSnapshot updated = contacts.withAliases("王建国", Collections.<String>emptyList());
+        // The shared alias now belongs to the other contact
+        assertEquals("李雷", updated.match("老王"));
+        assertNull(updated.match("Wang Jianguo"));
+        assertNull(updated.withoutContact("李雷").match("老王"));
+    }
+
+    @Test
+    public void findsEveryAliasAmongMany() {
+        List<String> names = new ArrayList<>();
+        Map<String, List<String>> aliases = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            names.add("联系人" + i);
+            aliases.put("联系人" + i, Arrays.asList("remark" + i, "Ｎｉｃｋ" + i, "🐱cat" + i));
+        }
+        ContactIndex index = ContactIndex.build(names, aliases);
+        assertEquals(40_000, index.keys());
+
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, index.find("联系人" + i));
+            assertEquals(i, index.find("REMARK" + i));
+            assertEquals(i, index.find("nick" + i));
+            assertEquals(i, index.find("cat" + i + " "));
+        }
+        assertEquals(-1, index.find("remark10000"));
+    }
+}
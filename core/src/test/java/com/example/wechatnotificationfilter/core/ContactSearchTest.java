@@ -0,0 +1,42 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class ContactSearchTest {
+    @Test
+    public void narrowsAsTheQueryGrows() {
+        ContactSearch search = new ContactSearch(Arrays.asList("Alice", "Alan", "Bob", "Alfred"),
+                Collections.<String, List<String>>emptyMap());
+
+        assertEquals(Arrays.asList("Alice", "Alan", "Bob", "Alfred"), search.filter(""));
+        assertEquals(Arrays.asList("Alice", "Alan", "Alfred"), search.filter("a"));
+        assertEquals(Arrays.asList("Alice", "Alan", "Alfred"), search.filter("al"));
+        assertEquals(Arrays.asList("Alice"), search.filter("ali"));
+        // Deleting a character searches everything again rather than the narrowed list
+        assertEquals(Arrays.asList("Alice", "Alan", "Alfred"), search.filter("al"));
+        assertEquals(Arrays.asList("Bob"), search.filter("o"));
+        assertEquals(Collections.emptyList(), search.filter("ox"));
+        assertEquals(4, search.size());
+    }
+
+    @Test
+    public void matchesAliasesAndNormalizedText() {
+        Map<String, List<String>> aliases = new HashMap<>();
+        aliases.put("王建国", Arrays.asList("老王", "Wang Jianguo"));
+        ContactSearch search = new ContactSearch(Arrays.asList("妈妈", "王建国", "🌸Lily🌸"), aliases);
+
+        assertEquals(Arrays.asList("王建国"), search.filter("老王"));
+        assertEquals(Arrays.asList("王建国"), search.filter("ｗａｎｇ ji"));
+        assertEquals(Arrays.asList("🌸Lily🌸"), search.filter("LILY"));
+        assertEquals(Arrays.asList("妈妈"), search.filter(" 妈"));
+        // The separator between names never matches
+        assertEquals(Collections.emptyList(), search.filter("王\n老"));
+    }
+}
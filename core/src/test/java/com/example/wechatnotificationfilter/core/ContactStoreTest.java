@@ -0,0 +1,201 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContactStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void changesSurviveReopen() throws IOException {
+        File file = new File(folder.getRoot(), "contacts.log");
+        try (ContactStore store = ContactStore.open(file)) {
+            assertTrue(store.add("妈妈"));
+            assertTrue(store.add("Alice"));
+            assertTrue(store.add("Bob"));
+            assertFalse(store.add("Alice"));
+            assertTrue(store.set("妈妈", ContactStore.SOUND, "content://media/1"));
+            assertTrue(store.set("Alice", ContactStore.SOUND, "content://media/2"));
+            assertTrue(store.set("Alice", ContactStore.SOUND, null));
+            assertFalse(store.set("Carol", ContactStore.SOUND, "content://media/3"));
+            assertTrue(store.remove("Bob"));
+        }
+
+        try (ContactStore store = ContactStore.open(file)) {
+            assertEquals(Arrays.asList("妈妈", "Alice"), store.names());
+            assertEquals("content://media/1", store.get("妈妈", ContactStore.SOUND));
+            assertNull(store.get("Alice", ContactStore.SOUND));
+            assertFalse(store.contains("Bob"));
+
+            ContactSnapshot snapshot = store.load();
+            assertEquals(2, snapshot.size());
+            assertEquals("content://media/1", snapshot.soundFor("妈妈"));
+            assertNull(snapshot.soundFor("Alice"));
+        }
+    }
+
+    @Test
+    public void tornTailIsDroppedOnOpen() throws IOException {
+        File file = new File(folder.getRoot(), "contacts.log");
+        try (ContactStore store = ContactStore.open(file)) {
+            store.add("Alice");
+            store.add("Bob");
+        }
+        long complete = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(complete - 3);
+        }
+
+        try (ContactStore store = ContactStore.open(file)) {
+            assertEquals(Arrays.asList("Alice"), store.names());
+            // Appends continue after the last good record
+            store.add("Carol");
+        }
+        try (ContactStore store = ContactStore.open(file)) {
+            assertEquals(Arrays.asList("Alice", "Carol"), store.names());
+        }
+    }
+
+    @Test
+    public void compactsWhenMostRecordsAreSuperseded() throws IOException {
+        File file = new File(folder.getRoot(), "contacts.log");
+        try (ContactStore store = ContactStore.open(file)) {
+            store.add("Alice");
+            for (int i = 0; i < 500; i++) {
+                store.set("Alice", ContactStore.SOUND, "content://media/" + i);
+            }
+            assertTrue(store.logRecords() < 100);
+            assertEquals("content://media/499", store.get("Alice", ContactStore.SOUND));
+        }
+
+        try (ContactStore store = ContactStore.open(file)) {
+            assertEquals(Arrays.asList("Alice"), store.names());
+            assertEquals("content://media/499", store.get("Alice", ContactStore.SOUND));
+        }
+    }
+
+    @Test
+    public void listenersSeeOnlyRealChanges() throws IOException {
+        AtomicInteger changes = new AtomicInteger();
+        try (ContactStore store = ContactStore.open(new File(folder.getRoot(), "contacts.log"))) {
+            store.addListener(change -> changes.incrementAndGet());
+            store.add("Alice");
+            store.add("Alice");
+            store.set("Alice", ContactStore.SOUND, "content://media/1");
+            store.set("Alice", ContactStore.SOUND, "content://media/1");
+            store.remove("Bob");
+        }
+        assertEquals(2, changes.get());
+    }
+
+    @Test
+    public void appliedChangesMatchReload() throws IOException {
+        try (ContactStore store = ContactStore.open(new File(folder.getRoot(), "contacts.log"))) {
+            store.add("Alice");
+            store.set("Alice", ContactStore.SOUND, "content://media/1");
+            PriorityContactCache cache = new PriorityContactCache(store);
+            cache.refresh();
+            store.addListener(cache::apply);
+
+            store.add("妈妈");
+            store.set("妈妈", ContactStore.SOUND, "content://media/2");
+            store.set("妈妈", "nickname", "Mom");
+            store.set("Alice", ContactStore.SOUND, null);
+            store.add("Bob");
+            store.set("Bob", ContactStore.SOUND, "content://media/3");
+            store.remove("Bob");
+
+            ContactSnapshot reloaded = store.load();
+            assertEquals(reloaded.contacts(), cache.get().contacts());
+            assertEquals(reloaded.sounds(), cache.get().sounds());
+            assertEquals("content://media/2", cache.soundFor("妈妈"));
+            assertNull(cache.soundFor("Alice"));
+            assertFalse(cache.isPriority("Bob"));
+        }
+    }
+
+    @Test
+    public void putAllIsOneChangeAndSurvivesReopen() throws IOException {
+        File file = new File(folder.getRoot(), "contacts.log");
+        List<ContactStore.Change> changes = new CopyOnWriteArrayList<>();
+        try (ContactStore store = ContactStore.open(file)) {
+            store.add("Alice");
+            store.set("Alice", ContactStore.SOUND, "content://media/1");
+            PriorityContactCache cache = new PriorityContactCache(store);
+            cache.refresh();
+            store.addListener(cache::apply);
+            store.addListener(changes::add);
+
+            Map<String, Map<String, String>> imported = new LinkedHashMap<>();
+            Map<String, String> alice = new HashMap<>();
+            alice.put(ContactStore.SOUND, "content://media/1");
+            imported.put("Alice", alice);
+            Map<String, String> wang = new HashMap<>();
+            wang.put(ContactStore.ALIASES, "老王\nWang Jianguo");
+            imported.put("王建国", wang);
+            imported.put("Bob", new HashMap<>());
+
+            assertEquals(2, store.putAll(imported));
+            assertEquals(0, store.putAll(imported));
+            assertEquals(1, changes.size());
+            assertEquals(ContactStore.Change.Kind.BULK, changes.get(0).kind);
+            assertEquals("王建国", cache.match("老王"));
+        }
+
+        try (ContactStore store = ContactStore.open(file)) {
+            assertEquals(Arrays.asList("Alice", "王建国", "Bob"), store.names());
+            assertEquals("content://media/1", store.get("Alice", ContactStore.SOUND));
+            assertEquals("老王\nWang Jianguo", store.get("王建国", ContactStore.ALIASES));
+            assertEquals(store.export().keySet(), store.load().contacts());
+        }
+    }
+
+    @Test
+    public void concurrentEditsReachListenersInOrder() throws Exception {
+        try (ContactStore store = ContactStore.open(new File(folder.getRoot(), "contacts.log"))) {
+            store.add("Alice");
+            List<String> delivered = new CopyOnWriteArrayList<>();
+            Thread[] second = new Thread[1];
+            store.addListener(change -> {
+                if ("content://a".equals(change.value) && second[0] == null) {
+                    // Another editor commits a newer value while this change is still being delivered
+                    second[0] = new Thread(() -> {
+                        try {
+                            store.set("Alice", ContactStore.SOUND, "content://b");
+                        } catch (IOException e) {
+                            throw new AssertionError(e);
+                        }
+                    });
+                    second[0].start();
+                    long deadline = System.nanoTime() + 5_000_000_000L;
+                    while (!"content://b".equals(store.get("Alice", ContactStore.SOUND))
+                            && System.nanoTime() < deadline) {
+                        Thread.yield();
+                    }
+                }
+                delivered.add(change.value);
+            });
+
+            store.set("Alice", ContactStore.SOUND, "content://a");
+            second[0].join();
+            assertEquals(Arrays.asList("content://a", "content://b"), delivered);
+        }
+    }
+}
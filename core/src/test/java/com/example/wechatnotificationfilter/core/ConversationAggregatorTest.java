@@ -0,0 +1,156 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+public class ConversationAggregatorTest {
+    private static final long DEBOUNCE = 250;
+    private static final long MAX_DELAY = 1000;
+
+    private final ConversationAggregator aggregator =
+            new ConversationAggregator(64, 20, DEBOUNCE, MAX_DELAY, 30_000);
+
+    private void add(String conversation, String sender, String contact, long now) {
+        aggregator.add(conversation, conversation,
+                new ConversationAggregator.Message(sender, "msg@" + now, now), contact, null, now);
+    }
+
+    // A message from the connect backlog, which already alerted when first posted
+    private void addBacklog(String conversation, String sender, String contact) {
+        aggregator.add(conversation, conversation, new ConversationAggregator.Message(sender, "old", 0), contact,
+                null, false, 0);
+    }
+
+    @Test
+    public void burstCollapsesIntoFewPostsAndOneAlert() {
+        int posts = 0;
+        int alerts = 0;
+        long now = 0;
+        for (int i = 0; i < 200; i++, now += 20) {
+            add("家庭群", "张三", "张三", now);
+            for (ConversationAggregator.Flush flush : aggregator.flushDue(now)) {
+                posts++;
+                alerts += flush.alert ? 1 : 0;
+            }
+        }
+        for (ConversationAggregator.Flush flush : aggregator.flushDue(now + DEBOUNCE)) {
+            posts++;
+            alerts += flush.alert ? 1 : 0;
+        }
+
+        // 4 seconds of messages every 20ms flush once per MAX_DELAY window
+        assertTrue("posts: " + posts, posts <= 5);
+        assertEquals(1, alerts);
+        assertEquals(200 - posts, aggregator.coalesced());
+    }
+
+    @Test
+    public void removalOnlyForgetsTheConversationItWasTaggedWith() {
+        add("Alice", "Alice", "Alice", 0);
+        add("Bob", "Bob", "Bob", 0);
+        List<ConversationAggregator.Flush> due = aggregator.flushDue(DEBOUNCE);
+        assertEquals("Alice", due.get(0).conversationKey);
+        assertEquals("Bob", due.get(1).conversationKey);
+
+        aggregator.onNotificationRemoved("Alice");
+        add("Alice", "Alice", "Alice", 1000);
+        add("Bob", "Bob", "Bob", 1000);
+        due = aggregator.flushDue(1000 + DEBOUNCE);
+        assertEquals(1, due.get(0).messages.size());
+        assertEquals(2, due.get(1).messages.size());
+    }
+
+    @Test
+    public void flushWaitsForDebounceWindow() {
+        add("Alice", "Alice", null, 0);
+        assertTrue(aggregator.flushDue(DEBOUNCE - 1).isEmpty());
+        assertEquals(1, aggregator.nextFlushDelay(DEBOUNCE - 1));
+
+        List<ConversationAggregator.Flush> due = aggregator.flushDue(DEBOUNCE);
+        assertEquals(1, due.size());
+        assertFalse(due.get(0).isPriority());
+        assertEquals(-1, aggregator.nextFlushDelay(DEBOUNCE));
+    }
+
+    @Test
+    public void flushPendingPostsBacklogNowWithoutAlert() {
+        addBacklog("Alice", "Alice", "Alice");
+        addBacklog("Alice", "Alice", "Alice");
+        addBacklog("Group", "Bob", null);
+
+        List<ConversationAggregator.Flush> flushed = aggregator.flushPending(List.of("Alice", "Group"));
+        assertEquals(2, flushed.size());
+        for (ConversationAggregator.Flush flush : flushed) {
+            assertFalse(flush.alert);
+        }
+        assertTrue(flushed.get(0).isPriority());
+        assertEquals(2, flushed.get(0).messages.size());
+        assertTrue(aggregator.flushDue(DEBOUNCE).isEmpty());
+        assertEquals(-1, aggregator.nextFlushDelay(0));
+    }
+
+    @Test
+    public void flushPendingLeavesLiveMessagesTheirAlert() {
+        // A live priority message is waiting out its debounce window when the listener reconnects
+        add("Alice", "Alice", "Alice", 0);
+        add("Carol", "Carol", "Carol", 0);
+        addBacklog("Alice", "Alice", "Alice");
+
+        List<ConversationAggregator.Flush> flushed = aggregator.flushPending(List.of("Alice"));
+        assertEquals(1, flushed.size());
+        assertTrue(flushed.get(0).alert);
+        assertEquals(2, flushed.get(0).messages.size());
+
+        // Carol was not in the backlog: still pending, flushed on time and with its sound
+        List<ConversationAggregator.Flush> due = aggregator.flushDue(DEBOUNCE);
+        assertEquals(1, due.size());
+        assertEquals("Carol", due.get(0).conversationKey);
+        assertTrue(due.get(0).alert);
+    }
+
+    @Test
+    public void evictedPendingConversationIsStillPosted() {
+        ConversationAggregator small = new ConversationAggregator(2, 20, DEBOUNCE, MAX_DELAY, 30_000);
+        small.add("Alice", "Alice", new ConversationAggregator.Message("Alice", "hi", 0), "Alice", null, 0);
+        small.add("Bob", "Bob", new ConversationAggregator.Message("Bob", "hi", 0), null, null, 0);
+        small.add("Carol", "Carol", new ConversationAggregator.Message("Carol", "hi", 0), null, null, 0);
+
+        // Alice was pushed out before her debounce window ended; she goes out at once, with her alert
+        assertEquals(0, small.nextFlushDelay(1));
+        List<ConversationAggregator.Flush> due = small.flushDue(1);
+        assertEquals(1, due.size());
+        assertEquals("Alice", due.get(0).conversationKey);
+        assertTrue(due.get(0).alert);
+        assertEquals(DEBOUNCE - 1, small.nextFlushDelay(1));
+        assertEquals(2, small.flushDue(DEBOUNCE).size());
+    }
+
+    @Test
+    public void bufferKeepsOnlyLatestMessages() {
+        for (int i = 0; i < 50; i++) {
+            add("Group", "S" + i, null, i);
+        }
+        List<ConversationAggregator.Flush> due = aggregator.flushDue(MAX_DELAY);
+        assertEquals(20, due.get(0).messages.size());
+        assertEquals("S49", due.get(0).messages.get(19).sender);
+    }
+
+    @Test
+    public void alertsAgainAfterNotificationRemoved() {
+        add("Alice", "Alice", "Alice", 0);
+        assertTrue(aggregator.flushDue(DEBOUNCE).get(0).alert);
+
+        add("Alice", "Alice", "Alice", 1000);
+        assertFalse(aggregator.flushDue(1000 + DEBOUNCE).get(0).alert);
+
+        aggregator.onNotificationRemoved("Alice");
+        add("Alice", "Alice", "Alice", 2000);
+        ConversationAggregator.Flush flush = aggregator.flushDue(2000 + DEBOUNCE).get(0);
+        assertTrue(flush.alert);
+        assertEquals(1, flush.messages.size());
+    }
+}
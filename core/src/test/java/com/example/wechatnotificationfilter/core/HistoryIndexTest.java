@@ -0,0 +1,104 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HistoryIndexTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(100 * DAY);
+
+    private NotificationHistory open() throws IOException {
+        return NotificationHistory.open(folder.getRoot(), 16 * 1024, 7 * DAY, now::get);
+    }
+
+    private static void add(NotificationHistory history, HistoryIndex index, long time, String title, String text)
+            throws IOException {
+        index.add(history.append(time, RuleAction.SILENT, false, title, null, text), title, text);
+    }
+
+    private static List<String> texts(HistoryIndex index, String query) {
+        List<String> texts = new ArrayList<>();
+        for (NotificationHistory.Entry entry : index.search(query, 10)) {
+            texts.add(entry.text);
+        }
+        return texts;
+    }
+
+    @Test
+    public void findsChineseSubstringsAndLatinWords() throws IOException {
+        try (NotificationHistory history = open()) {
+            HistoryIndex index = new HistoryIndex(history);
+            add(history, index, now.get(), "公司通知群", "明天上午十点开会");
+            add(history, index, now.get() + 1, "张三", "今天开会取消了");
+            add(history, index, now.get() + 2, "Alice", "Meeting moved to room 5");
+            add(history, index, now.get() + 3, "李四", "会开完了，开会纪要稍后发");
+
+            assertEquals(List.of("会开完了，开会纪要稍后发", "今天开会取消了", "明天上午十点开会"), texts(index, "开会"));
+            assertEquals(List.of("明天上午十点开会"), texts(index, "十点 上午"));
+            assertEquals(List.of("明天上午十点开会"), texts(index, "十"));
+            assertEquals(List.of("明天上午十点开会"), texts(index, "通知"));
+            assertEquals(List.of("Meeting moved to room 5"), texts(index, "ＭＥＥＴＩＮＧ"));
+            assertEquals(List.of("Meeting moved to room 5"), texts(index, "room 5"));
+            // Every pair of 开会开 occurs in the last message, but not the phrase itself
+            assertEquals(List.of(), texts(index, "开会开"));
+            // Words match whole
+            assertEquals(List.of(), texts(index, "meet"));
+            assertEquals(List.of(), texts(index, "会议"));
+            assertEquals(List.of(), texts(index, "  "));
+            assertEquals(4, index.documents());
+            assertTrue(index.postingBytes() > 0);
+        }
+    }
+
+    @Test
+    public void newestHitsFirstUpToTheLimit() throws IOException {
+        try (NotificationHistory history = open()) {
+            HistoryIndex index = new HistoryIndex(history);
+            for (int i = 0; i < 1000; i++) {
+                add(history, index, now.get() + i, "项目组", (i % 3 == 0 ? "收到 " : "晚上吃饭吗 ") + i);
+            }
+            List<NotificationHistory.Entry> hits = index.search("收到", 5);
+            assertEquals(5, hits.size());
+            assertEquals("收到 999", hits.get(0).text);
+            assertEquals("收到 987", hits.get(4).text);
+            assertEquals(List.of("晚上吃饭吗 500"), texts(index, "吃饭 500"));
+        }
+    }
+
+    @Test
+    public void buildReplaysTheHistoryAndSkipsExpiredRecords() throws IOException {
+        long base = now.get();
+        try (NotificationHistory history = open()) {
+            HistoryIndex index = new HistoryIndex(history);
+            for (int i = 0; i < 300; i++) {
+                add(history, index, base + i * DAY / 100, "家庭群", "晚上吃饭吗 " + i + " " + "x".repeat(200));
+            }
+        }
+
+        now.set(base + 8 * DAY);
+        try (NotificationHistory history = open()) {
+            HistoryIndex index = HistoryIndex.build(history);
+            // Appended before the build, added again by the service: indexed once
+            long cursor = history.append(now.get(), RuleAction.SILENT, false, "家庭群", null, "明天再吃饭");
+            index.add(cursor, "家庭群", "明天再吃饭");
+            index.add(cursor, "家庭群", "明天再吃饭");
+            List<NotificationHistory.Entry> hits = index.search("吃饭", 1000);
+            assertEquals(201, hits.size());
+            assertEquals("明天再吃饭", hits.get(0).text);
+            assertTrue(hits.get(200).text.startsWith("晚上吃饭吗 100 "));
+            assertTrue(index.documents() <= 301);
+        }
+    }
+}
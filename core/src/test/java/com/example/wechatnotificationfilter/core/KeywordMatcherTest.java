@@ -0,0 +1,68 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class KeywordMatcherTest {
+
+    @Test
+    public void findsCjkAndLatinKeywordsIgnoringCase() {
+        KeywordMatcher matcher = KeywordMatcher.compile(Arrays.asList("开会", "急", "Deadline", "  ", "急"));
+
+        assertEquals(3, matcher.size());
+        assertEquals("开会", matcher.keyword(matcher.find("明天 10:30 开会，别迟到")));
+        assertEquals("急", matcher.keyword(matcher.find("很急！")));
+        assertEquals("deadline", matcher.keyword(matcher.find("the DEADLINE is friday")));
+        assertEquals(-1, matcher.find("晚上吃饭吗"));
+        assertEquals(-1, matcher.find("开 会"));
+        assertEquals(-1, matcher.find(null));
+        assertEquals(-1, KeywordMatcher.EMPTY.find("开会"));
+    }
+
+    @Test
+    public void followsFailureLinksIntoOverlappingKeywords() {
+        KeywordMatcher matcher = KeywordMatcher.compile(Arrays.asList("he", "she", "his", "hers", "报告会议"));
+
+        assertEquals("she", matcher.keyword(matcher.find("ushers")));
+        assertEquals("his", matcher.keyword(matcher.find("ahis")));
+        // "报告会" fails at "x" and must not swallow the "he" that follows
+        assertEquals("he", matcher.keyword(matcher.find("报告会xhe")));
+    }
+
+    @Test
+    public void agreesWithNaiveContains() {
+        Random random = new Random(7);
+        String alphabet = "ab开会急";
+        for (int round = 0; round < 200; round++) {
+            List<String> keywords = new ArrayList<>();
+            for (int k = 0; k < 1 + random.nextInt(6); k++) {
+                keywords.add(randomString(random, alphabet, 1 + random.nextInt(3)));
+            }
+            KeywordMatcher matcher = KeywordMatcher.compile(keywords);
+            String text = randomString(random, alphabet, random.nextInt(12));
+
+            boolean naive = false;
+            for (String keyword : keywords) {
+                naive |= text.contains(keyword);
+            }
+            int found = matcher.find(text);
+            assertEquals(keywords + " in " + text, naive, found >= 0);
+            if (found >= 0) {
+                assertEquals(true, text.contains(matcher.keyword(found)));
+            }
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return s.toString();
+    }
+}
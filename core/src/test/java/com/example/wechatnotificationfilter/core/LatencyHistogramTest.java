@@ -0,0 +1,63 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverTheirValues() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            checkBucket(value);
+        }
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value *= 3) {
+            checkBucket(value);
+        }
+    }
+
+    private static void checkBucket(long value) {
+        int bucket = LatencyHistogram.bucketOf(value);
+        long upper = LatencyHistogram.upperBoundOf(bucket);
+        assertTrue(value + " above bucket bound " + upper, value <= upper);
+        // Within one sub-bucket: at most 12.5% over
+        assertTrue(value + " -> " + upper, upper - value <= value / 8 + 1);
+        if (bucket > 0) {
+            assertTrue(value > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        assertEquals(500_500, histogram.mean());
+        assertNear(500_000, histogram.percentile(50));
+        assertNear(990_000, histogram.percentile(99));
+        assertEquals(1_000_000, histogram.percentile(100));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, actual >= expected && actual <= expected + expected / 8);
+    }
+
+    @Test
+    public void emptyAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(99));
+        histogram.record(42);
+        histogram.record(-5);
+        assertEquals(2, histogram.count());
+        assertEquals(42, histogram.max());
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(50));
+    }
+}
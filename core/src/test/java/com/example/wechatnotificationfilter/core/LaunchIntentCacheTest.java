@@ -0,0 +1,74 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class LaunchIntentCacheTest {
+
+    private static class CountingResolver implements LaunchIntentCache.Resolver<String, String> {
+        int resolves;
+        int creates;
+        String target = "launch:com.tencent.mm";
+
+        @Override
+        public String resolve() {
+            resolves++;
+            return target;
+        }
+
+        @Override
+        public String create(String target, int slot) {
+            creates++;
+            return target + "#" + slot;
+        }
+    }
+
+    @Test
+    public void intentCountStaysConstantAcrossPosts() {
+        CountingResolver resolver = new CountingResolver();
+        LaunchIntentCache<String, String> cache = new LaunchIntentCache<>(resolver, 8);
+
+        for (int i = 0; i < 10_000; i++) {
+            // Mix of recurring conversations and one-off titles
+            String title = (i % 3 == 0) ? "Group " + (i % 50) : "Contact " + i;
+            cache.get(title.hashCode());
+        }
+
+        assertEquals(1, resolver.resolves);
+        assertEquals(8, resolver.creates);
+    }
+
+    @Test
+    public void sameConversationGetsSameIntent() {
+        LaunchIntentCache<String, String> cache = new LaunchIntentCache<>(new CountingResolver(), 8);
+        assertSame(cache.get("张三".hashCode()), cache.get("张三".hashCode()));
+    }
+
+    @Test
+    public void invalidateResolvesAgain() {
+        CountingResolver resolver = new CountingResolver();
+        LaunchIntentCache<String, String> cache = new LaunchIntentCache<>(resolver, 4);
+        cache.get(1);
+
+        resolver.target = "launch:com.tencent.mm/v2";
+        cache.invalidate();
+
+        assertEquals("launch:com.tencent.mm/v2#1", cache.get(1));
+        assertEquals(2, resolver.resolves);
+    }
+
+    @Test
+    public void missingAppIsResolvedOnlyOnce() {
+        CountingResolver resolver = new CountingResolver();
+        resolver.target = null;
+        LaunchIntentCache<String, String> cache = new LaunchIntentCache<>(resolver, 4);
+
+        assertNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(1, resolver.resolves);
+        assertEquals(0, resolver.creates);
+    }
+}
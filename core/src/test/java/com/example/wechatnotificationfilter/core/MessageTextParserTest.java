@@ -0,0 +1,78 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class MessageTextParserTest {
+
+    private final MessageTextParser parser = MessageTextParser.withDefaultFormats();
+
+    /** Rows of message_text_corpus.tsv: title, text, sender, body, unread, mentioned, group. */
+    private static List<String[]> corpus() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (InputStream in = MessageTextParserTest.class.getResourceAsStream("/message_text_corpus.tsv");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("#")) {
+                    rows.add(line.split("\t", -1));
+                }
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void parsesCorpus() throws IOException {
+        MessageTextParser.Result result = new MessageTextParser.Result();
+        List<String[]> rows = corpus();
+        assertFalse(rows.isEmpty());
+
+        for (String[] row : rows) {
+            String text = row[1];
+            parser.parse(row[0], text, result);
+            assertEquals("sender of " + text, row[2], result.sender());
+            assertEquals("body of " + text, row[3], result.body());
+            assertEquals("unread of " + text, Integer.parseInt(row[4]), result.unreadCount());
+            assertEquals("mentioned of " + text, Boolean.parseBoolean(row[5]), result.isMentioned());
+            assertEquals("group of " + text, Boolean.parseBoolean(row[6]), result.isGroup());
+        }
+    }
+
+    @Test
+    public void nullTextHasNoSender() {
+        MessageTextParser.Result result = new MessageTextParser.Result();
+        assertFalse(parser.parse("张三", null, result));
+        assertEquals("", result.sender());
+        assertEquals("", result.body());
+    }
+
+    @Test
+    public void senderEqualsComparesWithoutAllocating() {
+        MessageTextParser.Result result = new MessageTextParser.Result();
+        assertTrue(parser.parse("家庭群", "[2条]张三: hi", result));
+        assertTrue(result.senderEquals("张三"));
+        assertFalse(result.senderEquals("张"));
+        assertFalse(result.senderEquals("张三丰"));
+    }
+
+    @Test
+    public void resultIsResetBetweenParses() {
+        MessageTextParser.Result result = new MessageTextParser.Result();
+        parser.parse("项目群", "[3条][有人@我]王五: 开会", result);
+        parser.parse("Alice", "plain", result);
+        assertEquals(0, result.unreadCount());
+        assertFalse(result.isMentioned());
+        assertFalse(result.hasSender());
+    }
+}
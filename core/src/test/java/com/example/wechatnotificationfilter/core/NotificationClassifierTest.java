@@ -0,0 +1,168 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class NotificationClassifierTest {
+
+    private static NotificationClassifier classifier() {
+        ContactSnapshot snapshot = new ContactSnapshot(new HashSet<>(Arrays.asList("妈妈", "Alice")),
+                Collections.singletonMap("Alice", "content://media/1"));
+        PriorityContactCache contacts = new PriorityContactCache(() -> snapshot);
+        contacts.refresh();
+        NotificationClassifier classifier = new NotificationClassifier(contacts, MessageTextParser.withDefaultFormats());
+        classifier.setKeywords(KeywordMatcher.compile(Arrays.asList("服务器挂了", "urgent")));
+        return classifier;
+    }
+
+    @Test
+    public void priorityContactsKeepTheirSound() {
+        FilterDecision decision = classifier().classify("项目组", "Alice: hi");
+
+        assertTrue(decision.priority);
+        assertEquals("Alice", decision.contactName);
+        assertEquals("content://media/1", decision.soundUri);
+        assertNull(decision.escalatedBy);
+    }
+
+    @Test
+    public void keywordEscalatesUnderConversationTitle() {
+        NotificationClassifier classifier = classifier();
+        FilterDecision decision = classifier.classify("项目组", "[3条]老王：服务器挂了，快看");
+
+        assertTrue(decision.priority);
+        assertEquals("项目组", decision.contactName);
+        assertNull(decision.soundUri);
+        assertEquals("服务器挂了", decision.escalatedBy);
+        assertEquals("老王", classifier.lastParse().sender());
+    }
+
+    @Test
+    public void mentionEscalates() {
+        FilterDecision decision = classifier().classify("大学同学", "[有人@我]小李: 周末聚会来吗");
+
+        assertTrue(decision.priority);
+        assertEquals(FilterDecision.MENTION, decision.escalatedBy);
+    }
+
+    @Test
+    public void mentionOfEveryoneOnlyEscalatesAsKeyword() {
+        NotificationClassifier classifier = classifier();
+        assertFalse(classifier.classify("大学同学", "[@所有人]小李: @所有人 周末聚会").priority);
+        assertEquals("小李", classifier.lastParse().sender());
+
+        classifier.setKeywords(KeywordMatcher.compile(Collections.singletonList("@所有人")));
+        FilterDecision decision = classifier.classify("大学同学", "[@所有人]小李: @所有人 周末聚会");
+        assertTrue(decision.priority);
+        assertEquals("@所有人", decision.escalatedBy);
+    }
+
+    @Test
+    public void keywordsOnlySearchTheBody() {
+        NotificationClassifier classifier = classifier();
+
+        assertFalse(classifier.classify("Urgent Group", "Bob: lunch?").priority);
+        assertFalse(classifier.classify("项目组", "老王: 收到").priority);
+    }
+
+    @Test
+    public void rulesTakePrecedenceOverContacts() {
+        NotificationClassifier classifier = classifier();
+        classifier.setTimeZone(TimeZone.getTimeZone("UTC"));
+        classifier.setRules(RuleTable.compile(RuleParser.parse(
+                "silent from=Alice time=22:00-07:00\n"
+                        + "drop group=项目组 keyword=广告\n"
+                        + "loud group=项目组 sound=content://media/9")));
+        // Monday 2024-01-01 23:00 UTC, then Tuesday noon
+        long night = 1704150000000L;
+        long noon = night + 13 * 3600_000L;
+
+        FilterDecision quiet = classifier.classify("Alice", "hi", night);
+        assertEquals(RuleAction.SILENT, quiet.action);
+        assertEquals(0, quiet.rule);
+
+        FilterDecision daytime = classifier.classify("Alice", "hi", noon);
+        assertTrue(daytime.priority);
+        assertEquals(-1, daytime.rule);
+        assertEquals("content://media/1", daytime.soundUri);
+
+        assertEquals(RuleAction.DROP, classifier.classify("项目组", "老王: 广告广告", noon).action);
+
+        FilterDecision loud = classifier.classify("项目组", "老王: 收到", noon);
+        assertEquals(RuleAction.LOUD, loud.action);
+        assertEquals("项目组", loud.contactName);
+        assertEquals("content://media/9", loud.soundUri);
+    }
+
+    @Test
+    public void sharedDecisionsFollowContactChanges() {
+        AtomicReference<ContactSnapshot> snapshot = new AtomicReference<>(new ContactSnapshot(
+                new HashSet<>(Collections.singletonList("Alice")), Collections.singletonMap("Alice", "content://media/1")));
+        PriorityContactCache contacts = new PriorityContactCache(snapshot::get);
+        contacts.refresh();
+        NotificationClassifier classifier = new NotificationClassifier(contacts, MessageTextParser.withDefaultFormats());
+
+        assertSame(classifier.classify("Alice", "hi"), classifier.classify("Alice", "again"));
+
+        snapshot.set(snapshot.get().withSound("Alice", "content://media/2"));
+        contacts.refresh();
+        assertEquals("content://media/2", classifier.classify("Alice", "hi").soundUri);
+    }
+
+    // Budget per classification once warm; the steady state should allocate nothing at all
+    private static final long ALLOCATION_BUDGET_BYTES = 8;
+
+    @Test
+    public void steadyStateClassificationDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        NotificationClassifier classifier = classifier();
+        classifier.setTimeZone(TimeZone.getTimeZone("Asia/Shanghai"));
+        classifier.setRules(RuleTable.compile(RuleParser.parse(
+                "silent group=公司通知群 time=22:00-07:30\n"
+                        + "drop group=\"Ads Group\"\n"
+                        + "digest keyword=红包")));
+        String[][] messages = {
+                {"妈妈", "吃饭了吗"},
+                {"项目组", "[3条]Alice: 明天的会改到十点"},
+                {"大学同学", "小李: 周末聚会来吗"},
+                {"公司通知群", "行政: 本周五下午停电"},
+                {"Ads Group", "Shop: 50% off"},
+                {"家人群", "二姨: 发了一个红包"},
+                {"Bob", "lunch?"},
+        };
+        long time = 1704150000000L;
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < 50_000; i++) {
+            String[] message = messages[i % messages.length];
+            classifier.classify(message[0], message[1], time + i);
+        }
+        int rounds = 20_000;
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rounds; i++) {
+            String[] message = messages[i % messages.length];
+            classifier.classify(message[0], message[1], time + i);
+        }
+        long perClassification = (allocations.getThreadAllocatedBytes(threadId) - before) / rounds;
+
+        assertTrue("allocated " + perClassification + " bytes per classification",
+                perClassification <= ALLOCATION_BUDGET_BYTES);
+    }
+}
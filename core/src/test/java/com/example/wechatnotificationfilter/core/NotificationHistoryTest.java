@@ -0,0 +1,149 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NotificationHistoryTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final int SEGMENT = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(100 * DAY);
+
+    private NotificationHistory open() throws IOException {
+        return NotificationHistory.open(folder.getRoot(), SEGMENT, 7 * DAY, now::get);
+    }
+
+    private static List<String> texts(NotificationHistory history) {
+        List<String> texts = new ArrayList<>();
+        long cursor = NotificationHistory.NEWEST;
+        List<NotificationHistory.Entry> page;
+        while (!(page = history.page(cursor, 7)).isEmpty()) {
+            for (NotificationHistory.Entry entry : page) {
+                texts.add(entry.text);
+            }
+            cursor = page.get(page.size() - 1).cursor;
+        }
+        return texts;
+    }
+
+    @Test
+    public void pagesNewestFirstAcrossSegmentsAndReopen() throws IOException {
+        try (NotificationHistory history = open()) {
+            for (int i = 0; i < 500; i++) {
+                history.append(now.get() + i, i % 2 == 0 ? RuleAction.SILENT : RuleAction.LOUD, i % 2 == 1,
+                        "工作群", "张三", "message " + i + " 🌸 " + "x".repeat(i % 50));
+            }
+            assertTrue(history.segments() > 1);
+
+            List<NotificationHistory.Entry> newest = history.page(NotificationHistory.NEWEST, 2);
+            assertEquals(2, newest.size());
+            assertEquals(now.get() + 499, newest.get(0).time);
+            assertEquals(RuleAction.LOUD, newest.get(0).action);
+            assertTrue(newest.get(0).priority);
+            assertEquals("工作群", newest.get(0).title);
+            assertEquals("张三", newest.get(0).sender);
+            assertEquals("message 498 🌸 " + "x".repeat(48), newest.get(1).text);
+            assertFalse(newest.get(1).priority);
+        }
+
+        try (NotificationHistory history = open()) {
+            history.append(now.get() + 500, RuleAction.DROP, false, null, null, "message 500");
+            List<String> texts = texts(history);
+            assertEquals(501, texts.size());
+            for (int i = 0; i <= 500; i++) {
+                assertTrue(texts.get(500 - i).startsWith("message " + i));
+            }
+            NotificationHistory.Entry dropped = history.page(NotificationHistory.NEWEST, 1).get(0);
+            assertEquals(RuleAction.DROP, dropped.action);
+            assertNull(dropped.title);
+        }
+    }
+
+    @Test
+    public void longFieldsAreCut() throws IOException {
+        try (NotificationHistory history = open()) {
+            history.append(now.get(), RuleAction.SILENT, false, "t", "s", "长".repeat(5000));
+            assertEquals(1024, history.page(NotificationHistory.NEWEST, 1).get(0).text.length());
+        }
+    }
+
+    @Test
+    public void expiredRecordsAreDropped() throws IOException {
+        long base = now.get();
+        try (NotificationHistory history = open()) {
+            for (int i = 0; i < 300; i++) {
+                history.append(base + i * DAY / 100, RuleAction.SILENT, false, "t", "s", "m" + i + " " + "x".repeat(200));
+            }
+            int before = history.segments();
+            assertTrue(before > 2);
+
+            // Eight days on, records 0..99 are older than the seven days kept
+            now.set(base + 8 * DAY);
+            history.trim();
+            assertTrue(history.segments() < before);
+            assertFalse(new File(folder.getRoot(), "0.hist").exists());
+            List<String> texts = texts(history);
+            assertEquals(200, texts.size());
+            assertTrue(texts.get(texts.size() - 1).startsWith("m100 "));
+        }
+        try (NotificationHistory history = open()) {
+            assertEquals(200, texts(history).size());
+        }
+    }
+
+    @Test
+    public void quietHistoryExpiresWithinTheActiveSegment() throws IOException {
+        long base = now.get();
+        try (NotificationHistory history = open()) {
+            history.append(base, RuleAction.SILENT, false, "t", "s", "old");
+            history.append(base + 2 * DAY, RuleAction.SILENT, false, "t", "s", "new");
+            assertEquals(1, history.segments());
+
+            now.set(base + 8 * DAY);
+            history.trim();
+            assertEquals(1, history.segments());
+            assertEquals(List.of("new"), texts(history));
+        }
+    }
+
+    @Test
+    public void tornTailIsDroppedOnOpen() throws IOException {
+        try (NotificationHistory history = open()) {
+            history.append(now.get(), RuleAction.SILENT, false, "t", "s", "kept");
+            history.append(now.get() + 1, RuleAction.SILENT, false, "t", "s", "torn");
+        }
+        File segment = new File(folder.getRoot(), "0.hist");
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            // Corrupt the last byte of the second record's text
+            long pos = 8;
+            raf.seek(pos);
+            pos += 12 + raf.readInt();
+            raf.seek(pos);
+            int length = raf.readInt();
+            raf.seek(pos + 4 + length - 1);
+            raf.write('X');
+        }
+        try (NotificationHistory history = open()) {
+            history.append(now.get() + 2, RuleAction.SILENT, false, "t", "s", "after");
+            List<String> texts = texts(history);
+            assertEquals(2, texts.size());
+            assertEquals("after", texts.get(0));
+            assertEquals("kept", texts.get(1));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class NotificationPipelineTest {
+
+    /** Records posted titles; the first classify call can be held to back up the queue. */
+    private static class RecordingStages implements NotificationPipeline.Stages<String, String> {
+        final List<String> posted = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done;
+        volatile boolean holdFirst;
+        volatile String failOn;
+        int errors;
+
+        @Override
+        public String classify(IncomingNotification n) {
+            if (holdFirst) {
+                holdFirst = false;
+                entered.countDown();
+                await(release);
+            }
+            if (n.title.equals(failOn)) {
+                throw new IllegalStateException("boom");
+            }
+            return n.title.toUpperCase();
+        }
+
+        @Override
+        public String render(IncomingNotification n, String decision) {
+            return decision + ":" + n.text;
+        }
+
+        @Override
+        public void post(IncomingNotification n, String decision, String rendered) {
+            posted.add(rendered);
+            done.countDown();
+        }
+
+        @Override
+        public void postBatch(List<IncomingNotification> ns, List<String> decisions, List<String> rendered) {
+            batchSizes.add(ns.size());
+            NotificationPipeline.Stages.super.postBatch(ns, decisions, rendered);
+        }
+
+        @Override
+        public long onTick(long nowMillis) {
+            return -1;
+        }
+
+        @Override
+        public void onError(IncomingNotification n, RuntimeException e) {
+            errors++;
+            done.countDown();
+        }
+    }
+
+    private NotificationPipeline<String, String> pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    private static IncomingNotification notification(String key, String title, String text) {
+        return new IncomingNotification(key, "com.tencent.mm", title, text, 0L, System.nanoTime());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // Stage counters are updated just after the stage callback returns
+    private void awaitProcessed(NotificationPipeline.Stage stage, long count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pipeline.processed(stage) < count && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void runsAllStagesInOrder() {
+        RecordingStages stages = new RecordingStages();
+        stages.done = new CountDownLatch(3);
+        pipeline = new NotificationPipeline<>(stages, 8, NotificationPipeline.OverflowPolicy.DROP_OLDEST);
+        pipeline.start();
+
+        pipeline.offer(notification("k1", "a", "1"));
+        pipeline.offer(notification("k2", "b", "2"));
+        pipeline.offer(notification("k3", "c", "3"));
+        await(stages.done);
+
+        assertEquals(List.of("A:1", "B:2", "C:3"), stages.posted);
+        awaitProcessed(NotificationPipeline.Stage.POST, 3);
+        for (NotificationPipeline.Stage stage : NotificationPipeline.Stage.values()) {
+            assertEquals(3, pipeline.processed(stage));
+            assertEquals(0, pipeline.depth(stage));
+        }
+    }
+
+    @Test
+    public void batchSkipsCapacityAndPostsTogetherAheadOfQueue() {
+        RecordingStages stages = new RecordingStages();
+        stages.holdFirst = true;
+        stages.failOn = "b3";
+        stages.done = new CountDownLatch(7);
+        pipeline = new NotificationPipeline<>(stages, 2, NotificationPipeline.OverflowPolicy.DROP_OLDEST);
+        pipeline.start();
+
+        pipeline.offer(notification("k0", "busy", "0"));
+        await(stages.entered);
+        pipeline.offer(notification("k1", "single", "1"));
+        List<IncomingNotification> backlog = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            backlog.add(notification("b" + i, "b" + i, String.valueOf(i)));
+        }
+        pipeline.offerBatch(backlog);
+        assertEquals(6, pipeline.depth(NotificationPipeline.Stage.INGEST));
+        stages.release.countDown();
+        await(stages.done);
+
+        assertEquals(List.of("BUSY:0", "B1:1", "B2:2", "B4:4", "B5:5", "SINGLE:1"), stages.posted);
+        assertEquals(List.of(4), stages.batchSizes);
+        assertEquals(1, stages.errors);
+        assertEquals(0, pipeline.dropped());
+        awaitProcessed(NotificationPipeline.Stage.POST, 6);
+        assertEquals(6, pipeline.processed(NotificationPipeline.Stage.POST));
+        assertEquals(0, pipeline.depth(NotificationPipeline.Stage.INGEST));
+    }
+
+    @Test
+    public void dropsOldestWhenFull() {
+        RecordingStages stages = new RecordingStages();
+        stages.holdFirst = true;
+        stages.done = new CountDownLatch(3);
+        pipeline = new NotificationPipeline<>(stages, 2, NotificationPipeline.OverflowPolicy.DROP_OLDEST);
+        pipeline.start();
+
+        pipeline.offer(notification("k0", "busy", "0"));
+        await(stages.entered);
+        assertEquals(1, pipeline.depth(NotificationPipeline.Stage.CLASSIFY));
+
+        pipeline.offer(notification("k1", "a", "1"));
+        pipeline.offer(notification("k2", "b", "2"));
+        pipeline.offer(notification("k3", "c", "3"));
+        assertEquals(2, pipeline.depth(NotificationPipeline.Stage.INGEST));
+        assertEquals(1, pipeline.dropped());
+
+        stages.release.countDown();
+        await(stages.done);
+        assertEquals(List.of("BUSY:0", "B:2", "C:3"), stages.posted);
+    }
+
+    @Test
+    public void coalescesSameKeyWhenFull() {
+        RecordingStages stages = new RecordingStages();
+        stages.holdFirst = true;
+        stages.done = new CountDownLatch(3);
+        pipeline = new NotificationPipeline<>(stages, 2, NotificationPipeline.OverflowPolicy.COALESCE_BY_KEY);
+        pipeline.start();
+
+        pipeline.offer(notification("k0", "busy", "0"));
+        await(stages.entered);
+
+        pipeline.offer(notification("group", "g", "first"));
+        pipeline.offer(notification("k2", "b", "2"));
+        pipeline.offer(notification("group", "g", "second"));
+        assertEquals(1, pipeline.coalesced());
+        assertEquals(0, pipeline.dropped());
+
+        stages.release.countDown();
+        await(stages.done);
+        assertEquals(List.of("BUSY:0", "B:2", "G:second"), stages.posted);
+    }
+
+    @Test
+    public void stageFailureDoesNotStopWorker() {
+        RecordingStages stages = new RecordingStages();
+        stages.failOn = "bad";
+        stages.done = new CountDownLatch(2);
+        pipeline = new NotificationPipeline<>(stages, 4, NotificationPipeline.OverflowPolicy.DROP_OLDEST);
+        pipeline.start();
+
+        pipeline.offer(notification("k1", "bad", "1"));
+        pipeline.offer(notification("k2", "good", "2"));
+        await(stages.done);
+
+        assertEquals(1, stages.errors);
+        assertEquals(1, pipeline.errors());
+        assertEquals(List.of("GOOD:2"), stages.posted);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+public class PriorityContactCacheTest {
+
+    private static class CountingSource implements PriorityContactCache.Source {
+        int loads;
+        Set<String> contacts = new HashSet<>(Arrays.asList("张三", "Alice"));
+        Map<String, String> sounds = Collections.singletonMap("Alice", "content://sound/1");
+
+        @Override
+        public ContactSnapshot load() {
+            loads++;
+            return new ContactSnapshot(contacts, sounds);
+        }
+    }
+
+    @Test
+    public void lookupsNeverReloadAfterWarmUp() {
+        CountingSource source = new CountingSource();
+        PriorityContactCache cache = new PriorityContactCache(source);
+        cache.refresh();
+        assertEquals(1, source.loads);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(cache.isPriority("张三"));
+            assertFalse(cache.isPriority("Bob"));
+            assertEquals("content://sound/1", cache.soundFor("Alice"));
+        }
+
+        assertEquals(1, source.loads);
+    }
+
+    @Test
+    public void refreshPublishesNewSnapshot() {
+        CountingSource source = new CountingSource();
+        PriorityContactCache cache = new PriorityContactCache(source);
+        cache.refresh();
+        ContactSnapshot before = cache.get();
+
+        source.contacts = new HashSet<>(Collections.singletonList("Bob"));
+        cache.refresh();
+
+        assertEquals(2, source.loads);
+        assertTrue(cache.isPriority("Bob"));
+        assertFalse(cache.isPriority("张三"));
+        // Readers holding the old snapshot keep a consistent view
+        assertTrue(before.contains("张三"));
+    }
+
+    @Test
+    public void soundEditSharesTheIndex() {
+        ContactSnapshot snapshot = new ContactSnapshot(Arrays.asList("张三", "Alice"),
+                Collections.singletonMap("Alice", "content://sound/1"), Collections.emptyMap());
+
+        ContactSnapshot edited = snapshot.withSound("张三", "content://sound/2");
+        assertSame(snapshot.index(), edited.index());
+        assertEquals("content://sound/2", edited.soundFor("张三"));
+        assertNull(snapshot.soundFor("张三"));
+        assertSame(edited, edited.withSound("张三", "content://sound/2"));
+        assertSame(snapshot.index(), edited.withSound("Alice", null).index());
+
+        assertNotSame(snapshot.index(), snapshot.withContact("Bob").index());
+    }
+
+    @Test
+    public void emptyAndNullNamesAreNeverPriority() {
+        PriorityContactCache cache = new PriorityContactCache(new CountingSource());
+        assertFalse(cache.isPriority(null));
+        assertFalse(cache.isPriority(""));
+        assertNull(cache.soundFor(null));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class RecentFingerprintsTest {
+    private static final long WINDOW = 60_000;
+
+    // The listener's sequence for a notification it accepts: check, then record
+    private static boolean seen(RecentFingerprints recent, long fingerprint, long postTimeMillis) {
+        boolean duplicate = recent.isDuplicate(fingerprint, postTimeMillis);
+        recent.record(fingerprint, postTimeMillis);
+        return duplicate;
+    }
+
+    @Test
+    public void repeatWithinWindowIsDuplicate() {
+        RecentFingerprints recent = new RecentFingerprints(16, WINDOW);
+        long fp = RecentFingerprints.fingerprint("0|com.tencent.mm|1|null|10001", 1_000, "老王", "[2条]老王: 在吗");
+
+        assertFalse(seen(recent, fp, 1_000));
+        assertTrue(seen(recent, fp, 1_000));
+        assertTrue(seen(recent, fp, 1_000 + WINDOW));
+        // The entry's time moved to the last sighting, so a slow trickle stays suppressed
+        assertTrue(seen(recent, fp, 1_000 + 2 * WINDOW));
+        assertFalse(seen(recent, fp, 1_000 + 4 * WINDOW));
+    }
+
+    @Test
+    public void counterOrContentChangeIsNewMessage() {
+        String key = "0|com.tencent.mm|1|null|10001";
+        long two = RecentFingerprints.fingerprint(key, 0, "老王", "[2条]老王: 在吗");
+        long three = RecentFingerprints.fingerprint(key, 0, "老王", "[3条]老王: 在吗");
+
+        assertNotEquals(two, three);
+        assertNotEquals(RecentFingerprints.fingerprint(key, 0, "ab", "c"),
+                RecentFingerprints.fingerprint(key, 0, "a", "bc"));
+        assertNotEquals(RecentFingerprints.fingerprint(key, 0, null, "x"),
+                RecentFingerprints.fingerprint(key, 0, "", "x"));
+    }
+
+    @Test
+    public void sameTextPostedAgainIsNewMessage() {
+        // Telegram has no unread counter: "ok" twice in a chat is two messages
+        RecentFingerprints recent = new RecentFingerprints(16, WINDOW);
+        String key = "0|org.telegram.messenger|1|null|10001";
+        assertFalse(seen(recent, RecentFingerprints.fingerprint(key, 1_000, "Alice", "ok"), 1_000));
+        assertFalse(seen(recent, RecentFingerprints.fingerprint(key, 5_000, "Alice", "ok"), 5_000));
+        assertTrue(seen(recent, RecentFingerprints.fingerprint(key, 5_000, "Alice", "ok"), 5_000));
+    }
+
+    @Test
+    public void checkingDoesNotRecord() {
+        RecentFingerprints recent = new RecentFingerprints(16, WINDOW);
+        assertFalse(recent.isDuplicate(7, 0));
+        assertFalse(recent.isDuplicate(7, 0));
+        assertEquals(0, recent.size());
+        recent.record(7, 0);
+        assertTrue(recent.isDuplicate(7, 0));
+    }
+
+    @Test
+    public void evictsLeastRecentlySeen() {
+        RecentFingerprints recent = new RecentFingerprints(3, WINDOW);
+        seen(recent, 1, 0);
+        seen(recent, 2, 0);
+        seen(recent, 3, 0);
+        assertTrue(seen(recent, 1, 0));
+        seen(recent, 4, 0);
+
+        assertEquals(3, recent.size());
+        assertTrue(seen(recent, 1, 0));
+        assertTrue(seen(recent, 3, 0));
+        assertTrue(seen(recent, 4, 0));
+        assertFalse(seen(recent, 2, 0));
+    }
+
+    @Test
+    public void agreesWithLinkedHashMapLru() {
+        Random random = new Random(5);
+        int capacity = 50;
+        RecentFingerprints recent = new RecentFingerprints(capacity, Long.MAX_VALUE / 2);
+        Map<Long, Boolean> lru = new LinkedHashMap<Long, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+        for (int i = 0; i < 100_000; i++) {
+            // Few distinct values with colliding low bits exercise probing and backward shifts
+            long fp = (long) random.nextInt(120) << 40 | random.nextInt(4);
+            boolean expected = lru.containsKey(fp);
+            lru.put(fp, Boolean.TRUE);
+            assertEquals("step " + i, expected, seen(recent, fp, 0));
+        }
+    }
+}
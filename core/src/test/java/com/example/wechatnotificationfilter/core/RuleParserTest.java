@@ -0,0 +1,78 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class RuleParserTest {
+
+    @Test
+    public void parsesActionsAndConditions() {
+        List<Rule> rules = RuleParser.parse(
+                "# quiet hours\n"
+                        + "\n"
+                        + "loud from=妈妈,爸爸 sound=content://media/12\n"
+                        + "silent group=\"Weekend Hiking\",家庭群 time=22:00-07:30 days=mon-fri,sun\n"
+                        + "  DROP keyword=\"红包, 抢\",广告  \n");
+
+        assertEquals(3, rules.size());
+
+        Rule loud = rules.get(0);
+        assertEquals(RuleAction.LOUD, loud.action);
+        assertEquals("content://media/12", loud.sound);
+        assertEquals(Arrays.asList("妈妈", "爸爸"), Arrays.asList(loud.senders.toArray()));
+        assertEquals(-1, loud.startMinute);
+        assertEquals(Rule.ALL_DAYS, loud.days);
+
+        Rule silent = rules.get(1);
+        assertEquals(RuleAction.SILENT, silent.action);
+        assertNull(silent.sound);
+        assertTrue(silent.groups.contains("Weekend Hiking"));
+        assertTrue(silent.groups.contains("家庭群"));
+        assertEquals(22 * 60, silent.startMinute);
+        assertEquals(7 * 60 + 30, silent.endMinute);
+        assertEquals(0b1011111, silent.days);
+        assertTrue(silent.coversMinute(23 * 60));
+        assertTrue(silent.coversMinute(60));
+        assertTrue(!silent.coversMinute(12 * 60));
+
+        Rule drop = rules.get(2);
+        assertEquals(RuleAction.DROP, drop.action);
+        assertTrue(drop.keywords.contains("红包, 抢"));
+        assertTrue(drop.keywords.contains("广告"));
+    }
+
+    @Test
+    public void dayRangesWrapAroundTheWeek() {
+        assertEquals(0b1110001, RuleParser.parse("silent days=fri-mon").get(0).days);
+    }
+
+    @Test
+    public void reportsLineOfFirstError() {
+        assertError("loud from=a\nlound from=b", "Line 2: unknown action 'lound'");
+        assertError("silent sound=content://x", "Line 1: sound needs a loud rule and a single value");
+        assertError("silent time=25:00-07:00", "Line 1: bad time '25:00'");
+        assertError("silent time=07:00-07:00", "Line 1: time window is empty");
+        assertError("silent days=someday", "Line 1: unknown day 'someday'");
+        assertError("silent from", "Line 1: expected key=value at 'from'");
+        assertError("silent color=red", "Line 1: unknown condition 'color'");
+        assertError("silent group=\"open", "Line 1: unterminated quote");
+        assertError("loud keyword=\"\"", "Line 1: empty value");
+        assertError("loud keyword=挂了,\" \"", "Line 1: empty value");
+        assertError("silent from=\"\u3000\"", "Line 1: empty value");
+    }
+
+    private static void assertError(String text, String message) {
+        try {
+            RuleParser.parse(text);
+            fail("parsed " + text);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
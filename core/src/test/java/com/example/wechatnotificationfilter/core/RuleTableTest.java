@@ -0,0 +1,127 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class RuleTableTest {
+    private static final int NOON = 12 * 60;
+    private static final int MONDAY = 0;
+
+    @Test
+    public void firstMatchingRuleWins() {
+        RuleTable table = RuleTable.compile(RuleParser.parse(
+                "drop group=广告群\n"
+                        + "loud group=运维群 keyword=挂了,告警\n"
+                        + "silent group=运维群\n"
+                        + "loud from=老板\n"
+                        + "digest"));
+        long[] scratch = table.newScratch();
+
+        assertEquals(0, table.evaluate("老板", "广告群", true, "买买买", NOON, MONDAY, scratch));
+        assertEquals(1, table.evaluate("老王", "运维群", true, "服务器挂了", NOON, MONDAY, scratch));
+        assertEquals(2, table.evaluate("老王", "运维群", true, "收到", NOON, MONDAY, scratch));
+        assertEquals(3, table.evaluate("老板", "老板", false, "在吗", NOON, MONDAY, scratch));
+        assertEquals(4, table.evaluate("Alice", "Alice", false, "hi", NOON, MONDAY, scratch));
+        // A group condition never matches a direct chat with the same title
+        assertEquals(4, table.evaluate("广告群", "广告群", false, "hi", NOON, MONDAY, scratch));
+    }
+
+    @Test
+    public void namesMatchTheWayContactsDo() {
+        RuleTable table = RuleTable.compile(RuleParser.parse(
+                "loud from=Tom\n"
+                        + "drop group=\"Ads Group\"\n"
+                        + "silent from=\"Tom \"\n"));
+        long[] scratch = table.newScratch();
+
+        assertEquals(0, table.evaluate("ＴＯＭ", "x", false, "hi", NOON, MONDAY, scratch));
+        assertEquals(0, table.evaluate("🌸tom🌸", "x", false, "hi", NOON, MONDAY, scratch));
+        assertEquals(1, table.evaluate("Bob", "ads group", true, "hi", NOON, MONDAY, scratch));
+        assertEquals(-1, table.evaluate("Tim", "Ads", true, "hi", NOON, MONDAY, scratch));
+    }
+
+    @Test
+    public void timeWindowsAndDays() {
+        RuleTable table = RuleTable.compile(RuleParser.parse(
+                "silent time=22:00-07:00\n"
+                        + "drop days=sat,sun\n"));
+        long[] scratch = table.newScratch();
+
+        assertEquals(0, table.evaluate("a", "a", false, "x", 23 * 60, MONDAY, scratch));
+        assertEquals(0, table.evaluate("a", "a", false, "x", 6 * 60 + 59, MONDAY, scratch));
+        assertEquals(-1, table.evaluate("a", "a", false, "x", 7 * 60, MONDAY, scratch));
+        assertEquals(1, table.evaluate("a", "a", false, "x", NOON, 5, scratch));
+        assertEquals(0, table.evaluate("a", "a", false, "x", 23 * 60, 6, scratch));
+    }
+
+    @Test
+    public void emptyTableMatchesNothing() {
+        assertEquals(-1, RuleTable.EMPTY.evaluate("a", "b", true, "c", NOON, MONDAY, RuleTable.EMPTY.newScratch()));
+    }
+
+    @Test
+    public void agreesWithCheckingEachRuleInOrder() {
+        Random random = new Random(11);
+        String[] names = {"a", "b", "c", "d"};
+        String[] words = {"急", "开会", "ok", "会"};
+        for (int round = 0; round < 50; round++) {
+            List<Rule> rules = new ArrayList<>();
+            // Enough rules to span several bitset words
+            for (int r = 0, n = 1 + random.nextInt(200); r < n; r++) {
+                int start = random.nextBoolean() ? -1 : random.nextInt(Rule.MINUTES_PER_DAY);
+                int end = start < 0 ? -1 : (start + 1 + random.nextInt(Rule.MINUTES_PER_DAY - 1)) % Rule.MINUTES_PER_DAY;
+                rules.add(new Rule(RuleAction.values()[random.nextInt(4)], null,
+                        pick(random, names), pick(random, names), pick(random, words),
+                        start, end, random.nextInt(4) == 0 ? random.nextInt(128) : Rule.ALL_DAYS));
+            }
+            RuleTable table = RuleTable.compile(rules);
+            long[] scratch = table.newScratch();
+
+            for (int m = 0; m < 200; m++) {
+                String sender = names[random.nextInt(names.length)];
+                String title = names[random.nextInt(names.length)];
+                boolean group = random.nextBoolean();
+                String body = words[random.nextInt(words.length)] + words[random.nextInt(words.length)];
+                int minute = random.nextInt(Rule.MINUTES_PER_DAY);
+                int day = random.nextInt(7);
+
+                int expected = -1;
+                for (int r = 0; r < rules.size() && expected < 0; r++) {
+                    if (matches(rules.get(r), sender, title, group, body, minute, day)) {
+                        expected = r;
+                    }
+                }
+                assertEquals(expected, table.evaluate(sender, title, group, body, minute, day, scratch));
+            }
+        }
+    }
+
+    private static Set<String> pick(Random random, String[] values) {
+        if (random.nextInt(3) != 0) {
+            return Collections.emptySet();
+        }
+        Set<String> picked = new HashSet<>();
+        for (int i = 0, n = 1 + random.nextInt(2); i < n; i++) {
+            picked.add(values[random.nextInt(values.length)]);
+        }
+        return picked;
+    }
+
+    private static boolean matches(Rule rule, String sender, String title, boolean group, String body,
+                                   int minute, int day) {
+        boolean keyword = rule.keywords.isEmpty();
+        for (String k : rule.keywords) {
+            keyword |= body.contains(k);
+        }
+        return (rule.senders.isEmpty() || rule.senders.contains(sender))
+                && (rule.groups.isEmpty() || (group && rule.groups.contains(title)))
+                && keyword && rule.coversMinute(minute) && rule.coversDay(day);
+    }
+}
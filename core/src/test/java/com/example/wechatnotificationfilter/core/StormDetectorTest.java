@@ -0,0 +1,84 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class StormDetectorTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final long TAU = 10 * SECOND;
+
+    // Feeds messages at a steady rate for a while; returns the time reached
+    private static long feed(StormDetector detector, long start, int perMinute, long duration) {
+        long interval = 60 * SECOND / perMinute;
+        long now = start;
+        for (; now < start + duration; now += interval) {
+            detector.onMessage(now);
+        }
+        return now;
+    }
+
+    @Test
+    public void quietTrafficStaysOutOfStormMode() {
+        StormDetector detector = new StormDetector(120, TAU);
+        feed(detector, 0, 60, 120 * SECOND);
+
+        assertFalse(detector.isStorm());
+        assertEquals(60, detector.ratePerMinute(), 5);
+    }
+
+    @Test
+    public void burstEntersAndQuietLeavesWithHysteresis() {
+        long enteredBefore = FilterMetrics.GLOBAL.count(FilterMetrics.Counter.STORM_ENTERED);
+        long traceBefore = Trace.RING.recorded();
+        StormDetector detector = new StormDetector(120, TAU);
+
+        long now = feed(detector, 0, 600, 10 * SECOND);
+        assertTrue(detector.isStorm());
+
+        // Between half the threshold and the threshold the mode holds
+        now = feed(detector, now, 90, 60 * SECOND);
+        assertTrue(detector.isStorm());
+
+        // Once the rate falls below half, the next update ends it even without new messages
+        now = feed(detector, now, 30, 60 * SECOND);
+        assertFalse(detector.update(now));
+
+        assertEquals(1, FilterMetrics.GLOBAL.count(FilterMetrics.Counter.STORM_ENTERED) - enteredBefore);
+        List<Long> transitions = new ArrayList<>();
+        Trace.RING.forEach((sequence, time, event, a, b) -> {
+            if (event == TraceEvent.STORM && sequence >= traceBefore) {
+                transitions.add(a);
+            }
+        });
+        assertEquals(2, transitions.size());
+        assertEquals(Long.valueOf(1), transitions.get(0));
+        assertEquals(Long.valueOf(0), transitions.get(1));
+    }
+
+    @Test
+    public void silenceEndsTheStorm() {
+        StormDetector detector = new StormDetector(120, TAU);
+        long now = feed(detector, 0, 1200, 5 * SECOND);
+        assertTrue(detector.isStorm());
+
+        assertTrue(detector.update(now + SECOND));
+        assertFalse(detector.update(now + 60 * SECOND));
+    }
+
+    @Test
+    public void zeroThresholdTurnsStormModeOff() {
+        StormDetector detector = new StormDetector(120, TAU);
+        long now = feed(detector, 0, 1200, 5 * SECOND);
+        assertTrue(detector.isStorm());
+
+        detector.setThreshold(0);
+        assertFalse(detector.update(now));
+        feed(detector, now, 6000, 5 * SECOND);
+        assertFalse(detector.isStorm());
+    }
+}
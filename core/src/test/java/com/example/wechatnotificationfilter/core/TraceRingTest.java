@@ -0,0 +1,115 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class TraceRingTest {
+
+    @Test
+    public void keepsNewestRecordsInOrder() {
+        TraceRing ring = new TraceRing(8);
+        for (int i = 0; i < 20; i++) {
+            ring.record(TraceEvent.INGEST, i, -i);
+        }
+
+        List<Long> seen = new ArrayList<>();
+        int visited = ring.forEach((sequence, time, event, a, b) -> {
+            assertEquals(TraceEvent.INGEST, event);
+            assertEquals(-a, b);
+            seen.add(a);
+        });
+
+        assertEquals(8, visited);
+        assertEquals(20, ring.recorded());
+        assertEquals(Long.valueOf(12), seen.get(0));
+        assertEquals(Long.valueOf(19), seen.get(7));
+    }
+
+    @Test
+    public void concurrentWritersNeverProduceTornRecords() throws InterruptedException {
+        TraceRing ring = new TraceRing(64);
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            final long base = (w + 1) * 1_000_000_000L;
+            writers[w] = new Thread(() -> {
+                for (long i = 0; i < 200_000; i++) {
+                    ring.record(TraceEvent.POST, base + i, base + i);
+                }
+            });
+            writers[w].start();
+        }
+
+        int[] torn = new int[1];
+        while (writers[0].isAlive()) {
+            ring.forEach((sequence, time, event, a, b) -> {
+                if (a != b) {
+                    torn[0]++;
+                }
+            });
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(0, torn[0]);
+        assertEquals(800_000, ring.recorded());
+    }
+
+    @Test
+    public void writersLappingEachOtherOnOneSlotNeverTearIt() throws InterruptedException {
+        // Every writer is a whole ring apart from the others, all on the same few slots
+        TraceRing ring = new TraceRing(2);
+        Thread[] writers = new Thread[8];
+        for (int w = 0; w < writers.length; w++) {
+            final long base = (w + 1) * 1_000_000_000L;
+            writers[w] = new Thread(() -> {
+                for (long i = 0; i < 100_000; i++) {
+                    ring.record(TraceEvent.POST, base + i, base + i);
+                }
+            });
+            writers[w].start();
+        }
+
+        int[] torn = new int[1];
+        int[] seen = new int[1];
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread writer : writers) {
+                running |= writer.isAlive();
+            }
+            ring.forEach((sequence, time, event, a, b) -> {
+                seen[0]++;
+                if (a != b || event != TraceEvent.POST) {
+                    torn[0]++;
+                }
+            });
+        }
+
+        assertEquals(0, torn[0]);
+        assertTrue(seen[0] > 0);
+        assertEquals(800_000, ring.recorded());
+        assertTrue(ring.dropped() < ring.recorded());
+    }
+
+    @Test
+    public void dumpNamesEvents() {
+        TraceRing ring = new TraceRing(4);
+        ring.record(TraceEvent.QUEUE_DROP, 7, 64);
+        StringWriter out = new StringWriter();
+        ring.dump(new PrintWriter(out));
+        assertTrue(out.toString().contains("QUEUE_DROP"));
+        assertTrue(out.toString().contains("a=7 b=64"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePowerOfTwo() {
+        new TraceRing(100);
+    }
+}
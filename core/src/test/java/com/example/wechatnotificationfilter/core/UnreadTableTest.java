@@ -0,0 +1,144 @@
+package com.example.wechatnotificationfilter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UnreadTableTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void burstIsOneRefreshPerInterval() {
+        UnreadTable table = new UnreadTable(100, 5_000);
+        table.record("mm/大群", "大群", "甲", "1", 100);
+
+        UnreadTable.Refresh first = table.refreshDue(0);
+        assertNotNull(first);
+        assertEquals(1, first.changed.size());
+
+        for (int i = 0; i < 500; i++) {
+            table.record("mm/大群", "大群", "乙", "msg " + i, 200 + i);
+        }
+        assertNull(table.refreshDue(1_000));
+        assertEquals(4_000, table.nextRefreshDelay(1_000));
+
+        UnreadTable.Refresh second = table.refreshDue(5_000);
+        assertEquals(1, second.changed.size());
+        UnreadTable.Conversation conversation = second.changed.get(0);
+        assertEquals(501, conversation.unread);
+        assertEquals("乙", conversation.lastSender);
+        assertEquals("msg 499", conversation.lastText);
+        assertEquals(UnreadTable.FIRST_NOTIFICATION_ID, conversation.notificationId);
+        assertEquals(-1, table.nextRefreshDelay(5_000));
+    }
+
+    @Test
+    public void summaryListsUnreadChatsNewestFirst() {
+        UnreadTable table = new UnreadTable(100, 5_000);
+        table.record("mm/a", "a", "x", "1", 100);
+        table.record("mm/b", "b", "y", "2", 300);
+        table.record("mm/a", "a", "x", "3", 200);
+        table.refreshNow(0);
+        table.record("mm/c", "c", "z", "4", 400);
+
+        UnreadTable.Refresh refresh = table.refreshNow(1);
+        assertEquals(1, refresh.changed.size());
+        assertEquals("c", refresh.changed.get(0).title);
+        assertEquals(3, refresh.recent.size());
+        assertEquals("c", refresh.recent.get(0).title);
+        assertEquals("b", refresh.recent.get(1).title);
+        assertEquals(4, refresh.unreadMessages);
+        assertEquals(3, refresh.unreadConversations);
+    }
+
+    @Test
+    public void dismissingMarksRead() {
+        UnreadTable table = new UnreadTable(100, 5_000);
+        table.record("mm/a", "a", "x", "1", 100);
+        table.record("mm/b", "b", "y", "2", 200);
+        UnreadTable.Refresh refresh = table.refreshNow(0);
+        String a = refresh.recent.get(1).key;
+
+        assertTrue(table.markRead(a));
+        assertFalse(table.markRead("mm/unknown"));
+        assertFalse(table.markRead(null));
+        UnreadTable.Refresh afterRead = table.refreshNow(1);
+        assertEquals(0, afterRead.changed.size());
+        assertEquals(1, afterRead.unreadConversations);
+
+        table.markAllRead();
+        assertEquals(0, table.refreshNow(2).unreadConversations);
+        assertEquals(0, table.unreadMessages());
+
+        table.record("mm/a", "a", "x", "3", 300);
+        assertEquals(1, table.refreshNow(3).changed.get(0).unread);
+    }
+
+    @Test
+    public void leastRecentlyUpdatedIsForgotten() {
+        UnreadTable table = new UnreadTable(2, 5_000);
+        table.record("mm/a", "a", "x", "1", 100);
+        table.record("mm/b", "b", "y", "2", 200);
+        table.record("mm/c", "c", "z", "3", 300);
+
+        assertEquals(2, table.size());
+        assertEquals(2, table.unreadMessages());
+        assertEquals(2, table.unreadConversations());
+    }
+
+    @Test
+    public void forgottenChatIsHandedOutToCancel() {
+        UnreadTable table = new UnreadTable(2, 5_000);
+        table.record("mm/a", "a", "x", "1", 100);
+        table.record("mm/b", "b", "y", "2", 200);
+        assertTrue(table.refreshNow(0).forgotten.isEmpty());
+
+        table.record("mm/c", "c", "z", "3", 300);
+        UnreadTable.Refresh refresh = table.refreshNow(1_000);
+        assertEquals(1, refresh.forgotten.size());
+        assertEquals("mm/a", refresh.forgotten.get(0).key);
+        assertEquals(UnreadTable.FIRST_NOTIFICATION_ID, refresh.forgotten.get(0).notificationId);
+
+        // Read chats have no notification left to cancel
+        table.markAllRead();
+        table.record("mm/d", "d", "w", "4", 400);
+        assertTrue(table.refreshNow(2_000).forgotten.isEmpty());
+    }
+
+    @Test
+    public void countsSurviveReload() throws Exception {
+        File file = new File(folder.getRoot(), "unread.bin");
+        UnreadTable table = new UnreadTable(100, 5_000);
+        table.record("mm/a", "a", "x", "1", 100);
+        table.record("mm/b", "b", null, null, 200);
+        table.record("mm/a", "a", "x", "2", 300);
+        table.save(file);
+
+        UnreadTable reloaded = UnreadTable.load(file, 100, 5_000);
+        assertEquals(3, reloaded.unreadMessages());
+        assertEquals(2, reloaded.unreadConversations());
+        // Counts were restored as they were, so nothing is pending until the next message
+        assertNull(reloaded.refreshNow(0));
+
+        reloaded.record("mm/c", "c", "z", "3", 400);
+        UnreadTable.Refresh refresh = reloaded.refreshNow(0);
+        assertEquals(UnreadTable.FIRST_NOTIFICATION_ID + 2, refresh.changed.get(0).notificationId);
+        assertEquals("a", refresh.recent.get(1).title);
+        assertEquals("2", refresh.recent.get(1).lastText);
+        assertNull(refresh.recent.get(2).lastSender);
+    }
+
+    @Test
+    public void missingFileIsEmpty() throws Exception {
+        UnreadTable table = UnreadTable.load(new File(folder.getRoot(), "none.bin"), 100, 5_000);
+        assertEquals(0, table.size());
+    }
+}
@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "WeChatNotificationFilter"
 include(":app")
+include(":core")